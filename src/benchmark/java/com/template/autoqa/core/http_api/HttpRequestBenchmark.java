@@ -0,0 +1,83 @@
+package com.template.autoqa.core.http_api;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of building a request in {@link BaseHttpRequest} before it is sent: url stitching, header copying
+ * and form body encoding. No network calls are made
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequestBenchmark {
+    @Param({"0", "10", "100"})
+    int parametersCount;
+
+    private BaseHttpRequest request;
+    private List<String> parameters;
+    private Map<String, String> bodyParameters;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("accept", "text/json");
+        headers.put("user-agent", "autoqa");
+        headers.put("x-request-source", "benchmark");
+        request = new BaseHttpRequest("http://localhost:8080", headers);
+
+        parameters = new ArrayList<String>();
+        bodyParameters = new HashMap<String, String>();
+        for (int i = 0; i < parametersCount; i++) {
+            parameters.add("parameter" + i + "=value" + i);
+            bodyParameters.put("field" + i, "value " + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        request.close();
+    }
+
+    @Benchmark
+    public String stitchUrl() {
+        return request.stitchUrlAndParameters("/index.php", parameters);
+    }
+
+    @Benchmark
+    public HttpGet buildGet() {
+        HttpGet get = new HttpGet(request.stitchUrlAndParameters("/index.php", parameters));
+        request.copyHeaders(get);
+        return get;
+    }
+
+    @Benchmark
+    public HttpPost buildPost() throws IOException {
+        HttpPost post = request.createPost("/index.php", parameters, bodyParameters);
+        request.copyHeaders(post);
+        return post;
+    }
+}
@@ -0,0 +1,80 @@
+package com.template.autoqa.core.http_api;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of turning a received response into {@link BaseHttpResponse} and reading its body
+ * in the buffered and in the streaming mode
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpResponseBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    int bodySize;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("{\"data\": [");
+        for (int i = 0; builder.length() < bodySize; i++) {
+            builder.append(i == 0 ? "" : ",\n").append("{\"id\": ").append(i).append(", \"name\": \"item ").append(i).append("\"}");
+        }
+        body = builder.append("]}").toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    private BasicHttpResponse createResponse() {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+
+    @Benchmark
+    public String bufferedBody() throws IOException {
+        return BaseHttpRequest.toBaseHttpResponse(createResponse()).getResponseBody();
+    }
+
+    @Benchmark
+    public String streamedBody() {
+        BasicHttpResponse response = createResponse();
+        return new BaseHttpResponse(response.getStatusLine().getStatusCode(), response.getEntity(), null)
+                .getResponseBody();
+    }
+
+    @Benchmark
+    public int streamedLines() {
+        BasicHttpResponse response = createResponse();
+        BaseHttpResponse baseResponse =
+                new BaseHttpResponse(response.getStatusLine().getStatusCode(), response.getEntity(), null);
+        int length = 0;
+        for (Iterator<String> lines = baseResponse.getBodyLines(); lines.hasNext(); ) {
+            length += lines.next().length();
+        }
+        baseResponse.close();
+        return length;
+    }
+}
@@ -0,0 +1,84 @@
+package com.template.autoqa.core.web.elements;
+
+import com.template.autoqa.core.web.selenium.BaseWebDriver;
+import com.template.autoqa.utils.GeneralUtils;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Overhead of the element lookup done by {@link BaseWebElement} (synchronization, presence and visibility waits)
+ * compared with the plain WebDriver lookup. The page is a local file opened in the HtmlUnit driver
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BaseWebElementBenchmark {
+    private static final int ROWS_COUNT = 200;
+
+    private BaseWebDriver webDriver;
+    private File page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder html = new StringBuilder("<html><body><h1 id=\"title\">Benchmark</h1><table id=\"items\">");
+        for (int i = 0; i < ROWS_COUNT; i++) {
+            html.append("<tr><td class=\"name\">item ").append(i).append("</td><td class=\"value\">")
+                    .append(i * 2).append("</td></tr>");
+        }
+        html.append("</table></body></html>");
+        page = File.createTempFile("base-web-element-benchmark", ".html");
+        FileUtils.writeStringToFile(page, html.toString(), "UTF-8");
+
+        webDriver = new BaseWebDriver();
+        webDriver.startBrowser("htmlunit");
+        webDriver.get(page.toURI().toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        webDriver.releaseBrowser();
+        GeneralUtils.delete(page);
+    }
+
+    @Benchmark
+    public String webDriverLookup() {
+        return webDriver.getWebDriver().findElement(By.id("title")).getText();
+    }
+
+    @Benchmark
+    public String baseWebElementLookup() {
+        return webDriver.getWebElement(By.id("title")).getText();
+    }
+
+    @Benchmark
+    public String webDriverIndexedLookup() {
+        return webDriver.getWebDriver().findElement(By.id("items"))
+                .findElements(By.className("value")).get(ROWS_COUNT - 1).getText();
+    }
+
+    @Benchmark
+    public String baseWebElementIndexedLookup() {
+        BaseWebElement table = webDriver.getWebElement(By.id("items"));
+        return webDriver.getWebElement(By.className("value"), table, ROWS_COUNT - 1).getText();
+    }
+}
@@ -0,0 +1,38 @@
+package com.template.autoqa.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of reading the settings from {@link Config}, the calls are made on every request and page action
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+
+    @Benchmark
+    public String existingKey() {
+        return Config.getInstance().get("web_link");
+    }
+
+    @Benchmark
+    public String missingKey() {
+        return Config.getInstance().get("no_such_key");
+    }
+
+    @Benchmark
+    public int typedKey() {
+        return Config.getInstance().getInt("web_driver_max_uses", 0);
+    }
+}
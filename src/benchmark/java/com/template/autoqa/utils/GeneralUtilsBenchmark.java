@@ -0,0 +1,77 @@
+package com.template.autoqa.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Throughput of the stream and file helpers of {@link GeneralUtils} on a log-like text
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneralUtilsBenchmark {
+    private static final String LAST_LINE = "the line to search for";
+
+    @Param({"65536", "4194304"})
+    int dataSize;
+
+    private byte[] data;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < dataSize; i++) {
+            builder.append("2013-01-21 10:00:00,000 [main] INFO  request ").append(i).append(" has been processed\n");
+        }
+        builder.append(LAST_LINE).append('\n');
+        data = builder.toString().getBytes(Charset.forName("UTF-8"));
+        file = File.createTempFile("general-utils-benchmark", ".log");
+        FileUtils.writeByteArrayToFile(file, data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        GeneralUtils.delete(file);
+    }
+
+    @Benchmark
+    public String readInputStream() {
+        return GeneralUtils.readInputStream(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public int writeFromInputToOutputStream() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length);
+        GeneralUtils.writeFromInputToOutputStream(new ByteArrayInputStream(data), output);
+        return output.size();
+    }
+
+    @Benchmark
+    public String getMatchLineFromFile() {
+        // the matching line is the last one, so the whole file is scanned
+        return GeneralUtils.getMatchLineFromFile(file.getPath(), LAST_LINE);
+    }
+}
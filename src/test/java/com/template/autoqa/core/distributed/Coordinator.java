@@ -0,0 +1,458 @@
+package com.template.autoqa.core.distributed;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.reporting.ResultLog;
+import com.template.autoqa.core.reporting.ResultRecord;
+import com.template.autoqa.core.reporting.ResultReportRenderer;
+import com.template.autoqa.core.reporting.StreamingResultListener;
+import com.template.autoqa.core.scheduling.TestHistory;
+import com.template.autoqa.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.xml.Parser;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlInclude;
+import org.testng.xml.XmlPackage;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs the test classes of TestNG suites on several worker processes. The classes are sharded by their durations
+ * in the previous runs ({@link TestHistory}), the free workers steal the classes of the busy ones,
+ * see {@link ShardScheduler}. The {@link Worker}s are started as local processes with the classpath of the
+ * coordinator, and the workers of other hosts may connect to the coordinator port.
+ * <br/>The classes of {@code <classes>} and {@code <packages>} are run with their included and excluded methods
+ * and the included and excluded groups of their {@code <test>}; a suite with method selectors, bean shell
+ * expressions or meta groups can't be sharded and is rejected before the run.
+ * Every class runs in a TestNG suite of its own on the worker, so the {@code @BeforeSuite}, {@code @AfterSuite},
+ * {@code @BeforeTest} and {@code @AfterTest} methods run once per class rather than once per suite; keep them
+ * idempotent or move the shared setup to the state of the worker process.
+ * <br/>The results are streamed to {@code <output>/streaming/<suite>.jsonl} as the tests finish and rendered to
+ * the html and JUnit reports at the end, like the results of {@link StreamingResultListener}. The results of
+ * a class are written when the class finishes, a class of a lost worker is run again by another one up to
+ * {@code distributed_max_attempts} times. A worker which hasn't finished a class in
+ * {@code distributed_unit_timeout} is dropped (a local one is killed) and the class counts as lost with it.
+ * <br/>Usage: {@code java -cp <test classpath> com.template.autoqa.core.distributed.Coordinator
+ * [-workers <local workers>] [-port <port>] [-output <folder>] <suite.xml>...}, the exit code is 1 if some
+ * tests have failed
+ */
+public class Coordinator {
+    private static final Logger logger = LoggerFactory.getLogger(Coordinator.class);
+
+    private static final long DEFAULT_CLASS_MILLIS = 10000;
+    private static final long LIVENESS_CHECK_MILLIS = 1000;
+    private static final Duration DEFAULT_UNIT_TIMEOUT = Duration.ofHours(1);
+
+    private final List<XmlSuite> suites;
+    private final File outputDirectory;
+    private final TestHistory history;
+    private final int maxAttempts;
+    private final long unitTimeoutMillis;
+    private final Map<String, ResultLog> logs = new LinkedHashMap<String, ResultLog>();
+    private final Map<String, Process> localProcesses = new ConcurrentHashMap<String, Process>();
+    private final List<WorkerSession> sessions = Collections.synchronizedList(new ArrayList<WorkerSession>());
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private ShardScheduler scheduler;
+
+    /**
+     * @param suites          suites to run
+     * @param outputDirectory folder of the reports, e.g. {@code test-output}
+     */
+    public Coordinator(List<XmlSuite> suites, File outputDirectory) {
+        this.suites = suites;
+        this.outputDirectory = outputDirectory;
+        Config config = Config.getInstance();
+        history = TestHistory.getInstance();
+        maxAttempts = Math.max(config.getInt("distributed_max_attempts", 2), 1);
+        unitTimeoutMillis = config.getDuration("distributed_unit_timeout", TimeUnit.SECONDS, DEFAULT_UNIT_TIMEOUT)
+                .toMillis();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int port = 0;
+        File output = new File("test-output");
+        List<XmlSuite> suites = new ArrayList<XmlSuite>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-workers".equals(args[i]) && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if ("-port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("-output".equals(args[i]) && i + 1 < args.length) {
+                output = new File(args[++i]);
+            } else {
+                suites.addAll(new Parser(args[i]).parseToList());
+            }
+        }
+        if (suites.isEmpty()) {
+            System.err.println(
+                    "Usage: Coordinator [-workers <local workers>] [-port <port>] [-output <folder>] <suite.xml>...");
+            System.exit(2);
+        }
+        boolean isPassed = new Coordinator(suites, output).run(workers, port);
+        System.exit(isPassed ? 0 : 1);
+    }
+
+    /**
+     * Runs the suites and renders the reports
+     *
+     * @param localWorkers number of the worker processes to start on this host, also the number of the shards
+     * @param port         port the workers connect to, 0 for any free port
+     * @return true if no test has failed or been lost
+     */
+    public boolean run(int localWorkers, int port) {
+        List<WorkUnit> units = getUnits();
+        scheduler = new ShardScheduler(units, localWorkers, maxAttempts);
+        File folder = new File(outputDirectory, StreamingResultListener.FOLDER);
+        for (XmlSuite suite : suites) {
+            if (!logs.containsKey(suite.getName())) {
+                logs.put(suite.getName(), new ResultLog(new File(folder, suite.getName() + ResultLog.EXTENSION)));
+            }
+        }
+        long startMillis = System.currentTimeMillis();
+        List<Process> processes = new ArrayList<Process>();
+        try (ServerSocket server = new ServerSocket(port)) {
+            logger.info("Coordinator runs {} classes of {} on port {}", units.size(), logs.keySet(),
+                    server.getLocalPort());
+            startAccepting(server);
+            for (int i = 0; i < localWorkers; i++) {
+                String name = "worker-" + (i + 1);
+                Process process = startLocalWorker(server.getLocalPort(), name);
+                localProcesses.put(name, process);
+                processes.add(process);
+            }
+            waitForFinish(processes);
+        } catch (IOException e) {
+            throw new TestInterruptException("Coordinator cannot listen on port " + port, e);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            for (ResultLog log : logs.values()) {
+                log.close();
+            }
+        }
+        history.save();
+        for (ResultLog log : logs.values()) {
+            ResultReportRenderer.render(log.getFile());
+        }
+        return summarize(System.currentTimeMillis() - startMillis);
+    }
+
+    private List<WorkUnit> getUnits() {
+        List<WorkUnit> units = new ArrayList<WorkUnit>();
+        // the new classes are expected to take the average of the known ones
+        long unknownMillis = history.getAverageMillis() > 0 ? history.getAverageMillis() : DEFAULT_CLASS_MILLIS;
+        for (XmlSuite suite : suites) {
+            for (XmlTest test : suite.getTests()) {
+                checkShardable(suite, test);
+                Map<String, String> parameters = new LinkedHashMap<String, String>(suite.getParameters());
+                parameters.putAll(test.getParameters());
+                for (XmlClass xmlClass : getClasses(suite, test)) {
+                    List<String> methods = new ArrayList<String>();
+                    for (XmlInclude include : xmlClass.getIncludedMethods()) {
+                        methods.add(include.getName());
+                    }
+                    units.add(new WorkUnit(suite.getName(), test.getName(), xmlClass.getName(), methods,
+                            xmlClass.getExcludedMethods(), test.getIncludedGroups(), test.getExcludedGroups(),
+                            parameters, history.contains(xmlClass.getName())
+                                    ? history.getExpectedMillis(xmlClass.getName()) : unknownMillis));
+                }
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Rejects the tests whose selection of the methods isn't sent to the workers
+     */
+    private static void checkShardable(XmlSuite suite, XmlTest test) {
+        String feature = null;
+        if (!suite.getMethodSelectors().isEmpty() || !test.getMethodSelectors().isEmpty()) {
+            feature = "method selectors";
+        } else if (test.getExpression() != null && !test.getExpression().trim().isEmpty()) {
+            feature = "a bean shell expression";
+        } else if (!test.getMetaGroups().isEmpty()) {
+            feature = "meta groups";
+        }
+        if (feature != null) {
+            throw new TestInterruptException(String.format(
+                    "Test '%s' of suite '%s' has %s, it can't be run by the coordinator", test.getName(),
+                    suite.getName(), feature));
+        }
+    }
+
+    /**
+     * Returns the classes of the test and the classes of the packages of the test and its suite
+     */
+    private static List<XmlClass> getClasses(XmlSuite suite, XmlTest test) {
+        List<XmlClass> classes = new ArrayList<XmlClass>(test.getXmlClasses());
+        Map<String, XmlPackage> packages = new LinkedHashMap<String, XmlPackage>();
+        for (XmlPackage xmlPackage : suite.getXmlPackages()) {
+            packages.put(xmlPackage.getName(), xmlPackage);
+        }
+        for (XmlPackage xmlPackage : test.getXmlPackages()) {
+            packages.put(xmlPackage.getName(), xmlPackage);
+        }
+        for (XmlPackage xmlPackage : packages.values()) {
+            List<XmlClass> packageClasses = xmlPackage.getXmlClasses();
+            if (packageClasses.isEmpty()) {
+                logger.warn("Package '{}' of test '{}' has no test classes", xmlPackage.getName(), test.getName());
+            }
+            classes.addAll(packageClasses);
+        }
+        return classes;
+    }
+
+    private void startAccepting(final ServerSocket server) {
+        Thread acceptor = new Thread("coordinator-acceptor") {
+            @Override
+            public void run() {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        WorkerSession session = new WorkerSession(socket, sessionCount.getAndIncrement());
+                        sessions.add(session);
+                        session.start();
+                    } catch (SocketException e) {
+                        // the server is closed
+                        return;
+                    } catch (IOException e) {
+                        logger.warn("Worker connection cannot be accepted: {}", e.toString());
+                    }
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Starts a worker with the classpath, the system properties and the memory settings of this process.
+     * Its output goes to {@code <output>/distributed/<name>.log}
+     */
+    private Process startLocalWorker(int port, String name) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-D") || argument.startsWith("-X")) {
+                command.add(argument);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Worker.class.getName());
+        command.add("127.0.0.1");
+        command.add(String.valueOf(port));
+        command.add(name);
+        File logFile = new File(new File(outputDirectory, "distributed"), name + ".log");
+        if (!logFile.getParentFile().exists() && !logFile.getParentFile().mkdirs()) {
+            throw new IOException("Cannot create " + logFile.getParentFile());
+        }
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(logFile).start();
+    }
+
+    /**
+     * Waits until all the units are finished. If all the local workers have exited and no worker is connected,
+     * the units left are reported as failed
+     */
+    private void waitForFinish(List<Process> processes) {
+        while (!scheduler.isFinished()) {
+            try {
+                synchronized (scheduler) {
+                    scheduler.wait(LIVENESS_CHECK_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                throw new TestInterruptException("Waiting for the workers has been interrupted", e);
+            }
+            // without local workers the remote ones are waited for
+            boolean isWaitingForRemote = processes.isEmpty() && sessionCount.get() == 0;
+            if (scheduler.isFinished() || isWaitingForRemote || isAnyAlive(processes) || hasActiveSessions()) {
+                continue;
+            }
+            List<WorkUnit> lost = scheduler.drain();
+            logger.error("There are no workers left, {} classes aren't run", lost.size());
+            for (WorkUnit unit : lost) {
+                writeLost(unit, "there are no workers left");
+            }
+        }
+    }
+
+    private static boolean isAnyAlive(List<Process> processes) {
+        for (Process process : processes) {
+            if (process.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasActiveSessions() {
+        synchronized (sessions) {
+            for (WorkerSession session : sessions) {
+                if (session.isAlive()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private void writeLost(WorkUnit unit, String reason) {
+        long now = System.currentTimeMillis();
+        logs.get(unit.getSuiteName()).write(ResultLog.toJson(ResultRecord.FAIL, unit.getTestName(),
+                unit.getClassName(), "(class)", now, now, "coordinator", "The class hasn't been run: " + reason));
+    }
+
+    private boolean summarize(long elapsedMillis) {
+        final int[] counts = new int[3];
+        for (ResultLog log : logs.values()) {
+            ResultLog.read(log.getFile(), record -> counts[record.isFailed() ? 1 : record.isSkipped() ? 2 : 0]++);
+        }
+        StringBuilder summary = new StringBuilder(String.format(
+                "Distributed run has finished in %s ms: %s passed, %s failed, %s skipped, %s steals",
+                elapsedMillis, counts[0], counts[1], counts[2], scheduler.getStealCount()));
+        synchronized (sessions) {
+            for (WorkerSession session : sessions) {
+                summary.append(String.format("%n  %s", session));
+            }
+        }
+        logger.info(summary.toString());
+        return counts[1] == 0;
+    }
+
+    /**
+     * Connection to one worker, dispatches the units to it and collects the results
+     */
+    private class WorkerSession extends Thread {
+        private final Socket socket;
+        private final int shard;
+        private String workerName;
+        private int classCount;
+        private long busyMillis;
+
+        private WorkerSession(Socket socket, int shard) {
+            super("coordinator-session-" + shard);
+            setDaemon(true);
+            this.socket = socket;
+            this.shard = shard;
+        }
+
+        @Override
+        public void run() {
+            WorkUnit unit = null;
+            try {
+                socket.setTcpNoDelay(true);
+                BufferedReader reader = Protocol.openReader(socket);
+                Writer writer = Protocol.openWriter(socket);
+                List<String> hello = Protocol.receive(reader);
+                if (hello == null || !Protocol.HELLO.equals(hello.get(0))) {
+                    throw new IOException("Unexpected greeting " + hello);
+                }
+                workerName = hello.size() > 1 ? hello.get(1) : socket.getRemoteSocketAddress().toString();
+                logger.info("Worker '{}' has connected from {}", workerName, socket.getRemoteSocketAddress());
+                while ((unit = scheduler.next(shard)) != null) {
+                    long start = System.currentTimeMillis();
+                    Protocol.send(writer, unit.toRunMessage());
+                    List<String> results = receiveResults(reader, start + unitTimeoutMillis);
+                    long elapsed = System.currentTimeMillis() - start;
+                    ResultLog log = logs.get(unit.getSuiteName());
+                    for (String result : results) {
+                        log.write(result);
+                        recordDuration(result);
+                    }
+                    classCount++;
+                    busyMillis += elapsed;
+                    scheduler.complete(unit);
+                    unit = null;
+                }
+                Protocol.send(writer, Protocol.STOP);
+            } catch (SocketTimeoutException e) {
+                logger.warn("Worker '{}' hasn't finished {} in {} ms, it's dropped", workerName, unit,
+                        unitTimeoutMillis);
+                Process process = workerName == null ? null : localProcesses.get(workerName);
+                if (process != null) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                logger.warn("Worker '{}' is lost: {}", workerName, e.toString());
+            } catch (InterruptedException e) {
+                logger.warn("Session of worker '{}' has been interrupted", workerName);
+            } finally {
+                if (unit != null && !scheduler.giveBack(unit)) {
+                    writeLost(unit, "worker '" + workerName + "' has been lost " + unit.getAttempts() + " times");
+                }
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // do nothing
+                }
+            }
+        }
+
+        /**
+         * Adds the duration of the test method of the result to the history
+         */
+        private void recordDuration(String result) {
+            try {
+                ResultRecord record = ResultLog.parse(result);
+                history.record(record.getClassName(), record.getMethodName(), record.getDurationMillis(),
+                        record.isFailed());
+            } catch (IOException e) {
+                logger.debug("Duration of the result of worker '{}' cannot be read: {}", workerName, e.toString());
+            }
+        }
+
+        /**
+         * Reads the results of the running class until it's done. The results are kept until then, so a class
+         * of a lost worker isn't reported twice
+         *
+         * @param finishTime time the class must be done by
+         * @throws SocketTimeoutException if the class isn't done in time
+         */
+        private List<String> receiveResults(BufferedReader reader, long finishTime) throws IOException {
+            List<String> results = new ArrayList<String>();
+            while (true) {
+                long remaining = finishTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Class hasn't finished in time");
+                }
+                socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+                List<String> message = Protocol.receive(reader);
+                if (message == null) {
+                    throw new IOException("Connection is closed");
+                }
+                if (Protocol.RESULT.equals(message.get(0)) && message.size() > 1) {
+                    results.add(message.get(1));
+                } else if (Protocol.DONE.equals(message.get(0))) {
+                    return results;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s classes, busy %s ms", workerName, classCount, busyMillis);
+        }
+    }
+}
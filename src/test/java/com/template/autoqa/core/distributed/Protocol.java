@@ -0,0 +1,121 @@
+package com.template.autoqa.core.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Line protocol between {@link Coordinator} and {@link Worker}. A message is one UTF-8 line of tab separated
+ * fields, the tabs, line breaks and backslashes inside the fields are escaped.
+ * <pre>
+ * worker -> coordinator: HELLO  name             the worker is ready
+ *                        RESULT json             a test of the running class has finished, see ResultLog
+ *                        DONE   class            the class has finished, the worker is ready again
+ * coordinator -> worker: RUN    suite test class methods excluded-methods groups excluded-groups [key value]...
+ *                                                 run the class, the lists are comma separated, empty methods
+ *                                                 and groups for all
+ *                        STOP                    there is no work left
+ * </pre>
+ */
+final class Protocol {
+    static final String HELLO = "HELLO";
+    static final String RESULT = "RESULT";
+    static final String DONE = "DONE";
+    static final String RUN = "RUN";
+    static final String STOP = "STOP";
+
+    private Protocol() {
+        // do nothing
+    }
+
+    static BufferedReader openReader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    static Writer openWriter(Socket socket) throws IOException {
+        return new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes and flushes the message
+     */
+    static void send(Writer writer, List<String> fields) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append('\t');
+            }
+            escape(field == null ? "" : field, line);
+        }
+        line.append('\n');
+        synchronized (writer) {
+            writer.write(line.toString());
+            writer.flush();
+        }
+    }
+
+    static void send(Writer writer, String... fields) throws IOException {
+        List<String> list = new ArrayList<String>(fields.length);
+        for (String field : fields) {
+            list.add(field);
+        }
+        send(writer, list);
+    }
+
+    /**
+     * Reads the next message
+     *
+     * @return the fields or null if the connection is closed
+     */
+    static List<String> receive(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                field.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void escape(String field, StringBuilder line) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            switch (c) {
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.template.autoqa.core.distributed;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+
+/**
+ * Hands the work units out to the workers. The units are split into one shard per expected worker by their
+ * expected durations, the longest first (LPT), so the shards take about the same time. A worker takes
+ * the units of its own shard, the longest first; when its shard is empty it steals the longest unit of the shard
+ * with the most expected work left, so a straggler's queue is drained by the workers which are already free.
+ * Workers above the number of shards only steal.
+ */
+class ShardScheduler {
+    private final List<Deque<WorkUnit>> shards = new ArrayList<Deque<WorkUnit>>();
+    private final long[] remainingMillis;
+    private final int maxAttempts;
+    private int inFlight;
+    private int pending;
+    private int steals;
+
+    /**
+     * @param units       all the units of the run
+     * @param shardCount  number of shards, usually the number of the local workers
+     * @param maxAttempts number of the times a unit is sent to a worker before it's given up
+     */
+    ShardScheduler(List<WorkUnit> units, int shardCount, int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        int count = Math.max(shardCount, 1);
+        remainingMillis = new long[count];
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayDeque<WorkUnit>());
+        }
+        List<WorkUnit> sorted = new ArrayList<WorkUnit>(units);
+        Collections.sort(sorted, new Comparator<WorkUnit>() {
+            public int compare(WorkUnit first, WorkUnit second) {
+                return Long.compare(second.getExpectedMillis(), first.getExpectedMillis());
+            }
+        });
+        for (WorkUnit unit : sorted) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (remainingMillis[i] < remainingMillis[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).addLast(unit);
+            remainingMillis[lightest] += unit.getExpectedMillis();
+        }
+        pending = sorted.size();
+    }
+
+    /**
+     * Returns the next unit for the worker, waits while there is no free unit but some are still running
+     * (they are given back if their workers are lost)
+     *
+     * @param shard shard of the worker
+     * @return the unit or null if all the units are finished
+     */
+    synchronized WorkUnit next(int shard) throws InterruptedException {
+        while (true) {
+            WorkUnit unit = null;
+            if (shard < shards.size() && !shards.get(shard).isEmpty()) {
+                unit = take(shard);
+            } else {
+                int victim = -1;
+                for (int i = 0; i < shards.size(); i++) {
+                    if (!shards.get(i).isEmpty() && (victim < 0 || remainingMillis[i] > remainingMillis[victim])) {
+                        victim = i;
+                    }
+                }
+                if (victim >= 0) {
+                    unit = take(victim);
+                    steals++;
+                }
+            }
+            if (unit != null) {
+                unit.addAttempt();
+                inFlight++;
+                return unit;
+            }
+            if (inFlight == 0) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    private WorkUnit take(int shard) {
+        WorkUnit unit = shards.get(shard).pollFirst();
+        remainingMillis[shard] -= unit.getExpectedMillis();
+        return unit;
+    }
+
+    /**
+     * Marks the unit finished
+     */
+    synchronized void complete(WorkUnit unit) {
+        inFlight--;
+        pending--;
+        notifyAll();
+    }
+
+    /**
+     * Gives the unit of a lost worker back to be run by another one
+     *
+     * @return false if the unit has been tried {@code maxAttempts} times and is given up, it's finished then
+     */
+    synchronized boolean giveBack(WorkUnit unit) {
+        inFlight--;
+        if (unit.getAttempts() >= maxAttempts) {
+            pending--;
+            notifyAll();
+            return false;
+        }
+        // the shard of the unit isn't tracked, any worker may take it
+        shards.get(0).addFirst(unit);
+        remainingMillis[0] += unit.getExpectedMillis();
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes all the units which haven't been started, e.g. when there are no workers left
+     */
+    synchronized List<WorkUnit> drain() {
+        List<WorkUnit> units = new ArrayList<WorkUnit>();
+        for (int i = 0; i < shards.size(); i++) {
+            units.addAll(shards.get(i));
+            pending -= shards.get(i).size();
+            shards.get(i).clear();
+            remainingMillis[i] = 0;
+        }
+        notifyAll();
+        return units;
+    }
+
+    synchronized boolean isFinished() {
+        return pending == 0;
+    }
+
+    synchronized int getPendingCount() {
+        return pending;
+    }
+
+    synchronized int getStealCount() {
+        return steals;
+    }
+}
@@ -0,0 +1,89 @@
+package com.template.autoqa.core.distributed;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Test class of a suite, the unit of work sent to a {@link Worker}
+ */
+class WorkUnit {
+    private final String suiteName;
+    private final String testName;
+    private final String className;
+    private final List<String> methods;
+    private final List<String> excludedMethods;
+    private final List<String> includedGroups;
+    private final List<String> excludedGroups;
+    private final Map<String, String> parameters;
+    private final long expectedMillis;
+    private int attempts;
+
+    WorkUnit(String suiteName, String testName, String className, List<String> methods, List<String> excludedMethods,
+             List<String> includedGroups, List<String> excludedGroups, Map<String, String> parameters,
+             long expectedMillis) {
+        this.suiteName = suiteName;
+        this.testName = testName;
+        this.className = className;
+        this.methods = new ArrayList<String>(methods);
+        this.excludedMethods = new ArrayList<String>(excludedMethods);
+        this.includedGroups = new ArrayList<String>(includedGroups);
+        this.excludedGroups = new ArrayList<String>(excludedGroups);
+        this.parameters = new LinkedHashMap<String, String>(parameters);
+        this.expectedMillis = expectedMillis;
+    }
+
+    String getSuiteName() {
+        return suiteName;
+    }
+
+    String getTestName() {
+        return testName;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    long getExpectedMillis() {
+        return expectedMillis;
+    }
+
+    /**
+     * Returns the number of the times the unit has been sent to a worker
+     */
+    int getAttempts() {
+        return attempts;
+    }
+
+    void addAttempt() {
+        attempts++;
+    }
+
+    /**
+     * Returns the fields of {@link Protocol#RUN} message
+     */
+    List<String> toRunMessage() {
+        List<String> fields = new ArrayList<String>();
+        fields.add(Protocol.RUN);
+        fields.add(suiteName);
+        fields.add(testName);
+        fields.add(className);
+        fields.add(String.join(",", methods));
+        fields.add(String.join(",", excludedMethods));
+        fields.add(String.join(",", includedGroups));
+        fields.add(String.join(",", excludedGroups));
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            fields.add(parameter.getKey());
+            fields.add(parameter.getValue());
+        }
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return className;
+    }
+}
@@ -0,0 +1,189 @@
+package com.template.autoqa.core.distributed;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.reporting.ResultLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+import org.testng.TestNG;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlInclude;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Process running the test classes sent by {@link Coordinator}. Every class is run by TestNG in this process
+ * one at a time, as a suite of its own (so the suite and test level configuration methods run for every class),
+ * the results are sent back as soon as the tests finish. The browsers and connection pools
+ * of the framework are kept between the classes.
+ * <br/>Usage: {@code java -cp <test classpath> com.template.autoqa.core.distributed.Worker <host> <port> [name]}
+ */
+public class Worker {
+    private static final Logger logger = LoggerFactory.getLogger(Worker.class);
+
+    private final String name;
+    private final File outputDirectory;
+
+    /**
+     * @param name            name of the worker in the reports
+     * @param outputDirectory folder of the TestNG output of the worker
+     */
+    public Worker(String name, File outputDirectory) {
+        this.name = name;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: Worker <host> <port> [name]");
+            System.exit(2);
+        }
+        String name = args.length > 2 ? args[2] : ManagementFactory.getRuntimeMXBean().getName();
+        int status = 0;
+        try {
+            new Worker(name, new File(System.getProperty("java.io.tmpdir"), "worker-" + name.replaceAll("\\W", "_")))
+                    .run(args[0], Integer.parseInt(args[1]));
+        } catch (RuntimeException e) {
+            logger.error("Worker '" + name + "' has failed", e);
+            status = 1;
+        }
+        // the browser pools and TestNG may leave non-daemon threads
+        System.exit(status);
+    }
+
+    /**
+     * Connects to the coordinator and runs the classes until there is no work left
+     *
+     * @param host coordinator host
+     * @param port coordinator port
+     */
+    public void run(String host, int port) {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = Protocol.openReader(socket);
+            Writer writer = Protocol.openWriter(socket);
+            Protocol.send(writer, Protocol.HELLO, name);
+            logger.info("Worker '{}' is connected to {}:{}", name, host, port);
+            List<String> message;
+            while ((message = Protocol.receive(reader)) != null) {
+                if (Protocol.STOP.equals(message.get(0))) {
+                    break;
+                }
+                if (Protocol.RUN.equals(message.get(0))) {
+                    runClass(message, writer);
+                    Protocol.send(writer, Protocol.DONE, message.get(3));
+                }
+            }
+            logger.info("Worker '{}' has finished", name);
+        } catch (IOException e) {
+            throw new TestInterruptException(
+                    String.format("Connection of worker '%s' to %s:%s is lost", name, host, port), e);
+        }
+    }
+
+    private void runClass(List<String> message, final Writer writer) {
+        String className = message.get(3);
+        XmlSuite suite = new XmlSuite();
+        suite.setName(message.get(1));
+        XmlTest test = new XmlTest(suite);
+        test.setName(message.get(2));
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (int i = 8; i + 1 < message.size(); i += 2) {
+            parameters.put(message.get(i), message.get(i + 1));
+        }
+        test.setParameters(parameters);
+        test.setIncludedGroups(split(message.get(6)));
+        test.setExcludedGroups(split(message.get(7)));
+        XmlClass xmlClass = new XmlClass(className, false);
+        List<XmlInclude> includes = new ArrayList<XmlInclude>();
+        for (String method : split(message.get(4))) {
+            includes.add(new XmlInclude(method));
+        }
+        xmlClass.setIncludedMethods(includes);
+        xmlClass.setExcludedMethods(split(message.get(5)));
+        test.setXmlClasses(Collections.singletonList(xmlClass));
+
+        TestNG testng = new TestNG();
+        testng.setUseDefaultListeners(false);
+        testng.setVerbose(0);
+        testng.setOutputDirectory(outputDirectory.getPath());
+        testng.setXmlSuites(Collections.singletonList(suite));
+        testng.addListener((ITestListener) new ResultSender(writer));
+        // the thread name is written to the results, so the report shows the worker
+        String threadName = Thread.currentThread().getName();
+        Thread.currentThread().setName(name);
+        try {
+            logger.info("Worker '{}' runs {}", name, className);
+            testng.run();
+        } finally {
+            Thread.currentThread().setName(threadName);
+        }
+    }
+
+    private static List<String> split(String list) {
+        return list.isEmpty() ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(list.split(",")));
+    }
+
+    /**
+     * Sends every finished test to the coordinator
+     */
+    private class ResultSender implements ITestListener {
+        private final Writer writer;
+
+        private ResultSender(Writer writer) {
+            this.writer = writer;
+        }
+
+        private void send(ITestResult result) {
+            try {
+                Protocol.send(writer, Protocol.RESULT, ResultLog.toJson(result));
+            } catch (IOException e) {
+                throw new TestInterruptException("Result of " + result.getName() + " cannot be sent", e);
+            }
+        }
+
+        public void onTestSuccess(ITestResult result) {
+            send(result);
+        }
+
+        public void onTestFailure(ITestResult result) {
+            send(result);
+        }
+
+        public void onTestSkipped(ITestResult result) {
+            send(result);
+        }
+
+        public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+            send(result);
+        }
+
+        public void onTestStart(ITestResult result) {
+            // do nothing
+        }
+
+        public void onStart(ITestContext context) {
+            // do nothing
+        }
+
+        public void onFinish(ITestContext context) {
+            // do nothing
+        }
+    }
+}
@@ -2,32 +2,42 @@ package com.template.autoqa.core.http_api;
 
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.template.autoqa.core.metrics.Operation;
+import com.template.autoqa.core.metrics.OperationMetrics;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.eclipse.jetty.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 
+public class BaseHttpRequest implements Closeable {
+     private static final Logger logger = LoggerFactory.getLogger(BaseHttpRequest.class);
 
-public class BaseHttpRequest {
      String baseUrl;
      HashMap<String, String> requestHeaders;
      Object requestBody;
+     HttpConnectionPool connectionPool;
+     boolean streaming;
 
     private BaseHttpRequest() {
         //do nothing
@@ -41,34 +51,127 @@ public class BaseHttpRequest {
         else{
             this.requestHeaders=new HashMap<String, String>();
         }
+        this.connectionPool=HttpConnectionPool.acquire(baseUrl);
+    }
+
+    /**
+     * Returns the connection pool used by this request object
+     *
+     * @return connection pool
+     */
+    public HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Switches the streaming mode. In this mode the responses aren't read into memory: the body is available
+     * through {@link BaseHttpResponse#getBodyStream()} and {@link BaseHttpResponse#getBodyLines()}
+     * and the status code is returned as is. Every streamed response must be read completely or closed
+     * to return its connection to the pool
+     *
+     * @param streaming true to stream the response bodies
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Releases the connection pool. The object can't be used after this call
+     */
+    public void close() {
+        if (connectionPool != null) {
+            connectionPool.release();
+            connectionPool = null;
+        }
     }
 
 
     public BaseHttpResponse doGet(String resourceUrl, List<String> urlParameters){
         String fullUrl=stitchUrlAndParameters(resourceUrl, urlParameters);
-        System.out.println(fullUrl);
-        HttpClient client = new DefaultHttpClient();
+        logger.debug(fullUrl);
         HttpGet request = new HttpGet(fullUrl);
-        for (Map.Entry<String, String> header : requestHeaders.entrySet())
-            request.setHeader(header.getKey(), header.getValue());
+        return execute(Operation.HTTP_GET, resourceUrl, request);
+    }
+
+    /**
+     * Sends GET request without blocking the current thread
+     *
+     * @return the future that is completed with the response
+     */
+    public CompletableFuture<BaseHttpResponse> doGetAsync(String resourceUrl, List<String> urlParameters){
+        HttpGet request = new HttpGet(stitchUrlAndParameters(resourceUrl, urlParameters));
+        return executeAsync(Operation.HTTP_GET, resourceUrl, request);
+    }
+
+    /**
+     * Executes the request, its time is recorded in {@link OperationMetrics} by the resource url without parameters
+     */
+    private BaseHttpResponse execute(Operation operation, String resourceUrl, HttpRequestBase request){
+        copyHeaders(request);
+        boolean isReleaseNeeded = true;
+        long start = OperationMetrics.start();
+        boolean isFailed = true;
         try {
-            HttpResponse response = client.execute(request);
-            ResponseHandler<String> responseHandler = new BasicResponseHandler();
-            String responseBody = responseHandler.handleResponse(response);
-            int response_code=response.getStatusLine().getStatusCode();
-            return new BaseHttpResponse(response_code, responseBody);
+            HttpResponse response = connectionPool.execute(request);
+            isFailed = false;
+            if (streaming) {
+                // the connection is released by the response once the body is read
+                isReleaseNeeded = false;
+                return new BaseHttpResponse(response.getStatusLine().getStatusCode(), response.getEntity(), request);
+            }
+            return toBaseHttpResponse(response);
             }
         catch (IOException e) {
+            isFailed = true;
             e.printStackTrace();
             return new BaseHttpResponse(-1, "Error executing request");
         }
         finally {
-              request.releaseConnection();
+            if (isReleaseNeeded) {
+                request.releaseConnection();
+            }
+            OperationMetrics.record(operation, resourceUrl, start, isFailed);
         }
     }
 
-    private String stitchUrlAndParameters(String resourceUrl, List<String> urlParameters){
+    private CompletableFuture<BaseHttpResponse> executeAsync(Operation operation, String resourceUrl, HttpRequestBase request){
+        copyHeaders(request);
+        long start = OperationMetrics.start();
+        return connectionPool.executeAsync(request).handle((response, failure) -> {
+            OperationMetrics.record(operation, resourceUrl, start, failure != null);
+            if (failure == null) {
+                try {
+                    if (streaming) {
+                        // asynchronous responses are already buffered, only the string conversion is deferred
+                        return new BaseHttpResponse(response.getStatusLine().getStatusCode(), response.getEntity(), null);
+                    }
+                    return toBaseHttpResponse(response);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            logger.warn("Asynchronous request to '{}' has failed", resourceUrl, failure);
+            return new BaseHttpResponse(-1, "Error executing request");
+        });
+    }
+
+    void copyHeaders(HttpRequestBase request){
+        for (Map.Entry<String, String> header : requestHeaders.entrySet())
+            request.setHeader(header.getKey(), header.getValue());
+    }
+
+    static BaseHttpResponse toBaseHttpResponse(HttpResponse response) throws IOException {
+        ResponseHandler<String> responseHandler = new BasicResponseHandler();
+        String responseBody = responseHandler.handleResponse(response);
+        int response_code=response.getStatusLine().getStatusCode();
+        return new BaseHttpResponse(response_code, responseBody);
+    }
+
+    String stitchUrlAndParameters(String resourceUrl, List<String> urlParameters){
         StringBuilder paramsString = new StringBuilder();
         for (int i=0; i<urlParameters.size();i++){
             if (i<urlParameters.size()-1)   {
@@ -91,54 +194,70 @@ public class BaseHttpRequest {
     }
 
     public BaseHttpResponse doPost(String resourceUrl, List<String> urlParameters, Map<String, String> bodyParameters){
-        String fullUrl=stitchUrlAndParameters(resourceUrl, urlParameters);
-        HttpClient client = new DefaultHttpClient();
-        HttpPost request = new HttpPost(fullUrl);
-        for (Map.Entry<String, String> header : requestHeaders.entrySet())
-            request.setHeader(header.getKey(), header.getValue());
-
         try {
-            List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>(1);
-            for (Map.Entry<String, String> parameter : bodyParameters.entrySet())
-                nameValuePairs.add(new BasicNameValuePair(parameter.getKey(), parameter.getValue()));
-            request.setEntity(new UrlEncodedFormEntity(nameValuePairs));
-            HttpResponse response = client.execute(request);
-            ResponseHandler<String> responseHandler = new BasicResponseHandler();
-            String responseBody = responseHandler.handleResponse(response);
-            int response_code=response.getStatusLine().getStatusCode();
-            return new BaseHttpResponse(response_code, responseBody);
+            return execute(Operation.HTTP_POST, resourceUrl, createPost(resourceUrl, urlParameters, bodyParameters));
         }
         catch (IOException e) {
             e.printStackTrace();
             return new BaseHttpResponse(-1, "Error executing request");
         }
-        finally {
-            request.releaseConnection();
+    }
+
+    /**
+     * Sends POST request with form parameters without blocking the current thread
+     *
+     * @return the future that is completed with the response
+     */
+    public CompletableFuture<BaseHttpResponse> doPostAsync(String resourceUrl, List<String> urlParameters, Map<String, String> bodyParameters){
+        try {
+            return executeAsync(Operation.HTTP_POST, resourceUrl, createPost(resourceUrl, urlParameters, bodyParameters));
+        }
+        catch (IOException e) {
+            logger.warn("Asynchronous request to '{}' cannot be created", resourceUrl, e);
+            return CompletableFuture.completedFuture(new BaseHttpResponse(-1, "Error executing request"));
         }
     }
 
-    public BaseHttpResponse doPostWithArbitraryBody(String resourceUrl, List<String> urlParameters, Object requestBody){
+    HttpPost createPost(String resourceUrl, List<String> urlParameters, Map<String, String> bodyParameters) throws IOException {
         String fullUrl=stitchUrlAndParameters(resourceUrl, urlParameters);
-        HttpClient client = new DefaultHttpClient();
         HttpPost request = new HttpPost(fullUrl);
-        for (Map.Entry<String, String> header : requestHeaders.entrySet())
-            request.setHeader(header.getKey(), header.getValue());
+        List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>(1);
+        for (Map.Entry<String, String> parameter : bodyParameters.entrySet())
+            nameValuePairs.add(new BasicNameValuePair(parameter.getKey(), parameter.getValue()));
+        request.setEntity(new UrlEncodedFormEntity(nameValuePairs));
+        return request;
+    }
 
+    public BaseHttpResponse doPostWithArbitraryBody(String resourceUrl, List<String> urlParameters, Object requestBody){
         try {
-            request.setEntity(new StringEntity(requestBody.toString()));
-            HttpResponse response = client.execute(request);
-            ResponseHandler<String> responseHandler = new BasicResponseHandler();
-            String responseBody = responseHandler.handleResponse(response);
-            int response_code=response.getStatusLine().getStatusCode();
-            return new BaseHttpResponse(response_code, responseBody);
+            return execute(Operation.HTTP_POST, resourceUrl, createPostWithArbitraryBody(resourceUrl, urlParameters, requestBody));
         }
         catch (IOException e) {
             e.printStackTrace();
             return new BaseHttpResponse(-1, "Error executing request");
         }
-        finally {
-            request.releaseConnection();
+    }
+
+    /**
+     * Sends POST request with arbitrary body without blocking the current thread
+     *
+     * @return the future that is completed with the response
+     */
+    public CompletableFuture<BaseHttpResponse> doPostWithArbitraryBodyAsync(String resourceUrl, List<String> urlParameters, Object requestBody){
+        try {
+            return executeAsync(Operation.HTTP_POST, resourceUrl, createPostWithArbitraryBody(resourceUrl, urlParameters, requestBody));
         }
+        catch (IOException e) {
+            logger.warn("Asynchronous request to '{}' cannot be created", resourceUrl, e);
+            return CompletableFuture.completedFuture(new BaseHttpResponse(-1, "Error executing request"));
+        }
+    }
+
+    private HttpPost createPostWithArbitraryBody(String resourceUrl, List<String> urlParameters, Object requestBody) throws IOException {
+        String fullUrl=stitchUrlAndParameters(resourceUrl, urlParameters);
+        HttpPost request = new HttpPost(fullUrl);
+        request.setEntity(new StringEntity(requestBody.toString()));
+        return request;
     }
 
 }
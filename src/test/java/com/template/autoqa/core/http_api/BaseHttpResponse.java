@@ -1,18 +1,177 @@
 package com.velti.template.core.http_api;
 
-public class BaseHttpResponse {
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.GeneralUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+public class BaseHttpResponse implements Closeable {
+    private static final int LINE_BUFFER_SIZE = 8192;
+
     int statusCode;
     String responseBody;
 
+    private HttpEntity entity;
+    private HttpRequestBase request;
+    private boolean streamConsumed;
+
     public BaseHttpResponse(int statusCode, String responseBody) {
         this.statusCode = statusCode;
         this.responseBody = responseBody;
     }
 
+    /**
+     * Creates a response which body is read from the entity on demand.
+     * The connection of the request is held until the body is read completely or the response is closed
+     *
+     * @param statusCode status code
+     * @param entity     response entity
+     * @param request    the request to release the connection of, may be null if the entity is already buffered
+     */
+    public BaseHttpResponse(int statusCode, HttpEntity entity, HttpRequestBase request) {
+        this.statusCode = statusCode;
+        this.entity = entity;
+        this.request = request;
+    }
+
+    /**
+     * Returns the whole response body as a string.
+     * For a streamed response the body is read and cached on the first call
+     *
+     * @return response body
+     */
     public String getResponseBody() {
+        if (responseBody == null && entity != null) {
+            if (streamConsumed) {
+                throw new TestInterruptException("The response body has been already consumed as a stream");
+            }
+            try {
+                responseBody = EntityUtils.toString(entity);
+            } catch (IOException e) {
+                throw new TestInterruptException("Cannot read the response body", e);
+            } finally {
+                close();
+            }
+        }
         return responseBody;
     }
 
+    /**
+     * Returns true if the body is read from the connection on demand rather than held in memory
+     *
+     * @return true for a streamed response
+     */
+    public boolean isStreaming() {
+        return entity != null && responseBody == null;
+    }
+
+    /**
+     * Returns the response body as a stream. The stream can be consumed only once,
+     * closing the stream releases the connection
+     *
+     * @return response body stream
+     */
+    public InputStream getBodyStream() {
+        if (!isStreaming()) {
+            return new ByteArrayInputStream(
+                    responseBody == null ? new byte[0] : responseBody.getBytes(getCharset()));
+        }
+        if (streamConsumed) {
+            throw new TestInterruptException("The response body has been already consumed as a stream");
+        }
+        streamConsumed = true;
+        try {
+            return entity.getContent();
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot read the response body", e);
+        }
+    }
+
+    /**
+     * Returns the response body as a channel. The channel can be consumed only once
+     *
+     * @return response body channel
+     */
+    public ReadableByteChannel getBodyChannel() {
+        return Channels.newChannel(getBodyStream());
+    }
+
+    /**
+     * Returns the iterator over the lines of response body. Only one line is held in memory at a time
+     *
+     * @return iterator over the body lines
+     */
+    public Iterator<String> getBodyLines() {
+        return new LineIterator(new BufferedReader(new InputStreamReader(getBodyStream(), getCharset()), LINE_BUFFER_SIZE));
+    }
+
+    /**
+     * Returns the set of expectations about JSON body of the response. The expectations are checked
+     * in one pass over the body without loading it into memory
+     *
+     * @return empty set of expectations
+     */
+    public JsonExpectations expectJson() {
+        return new JsonExpectations(this);
+    }
+
+    /**
+     * Returns the charset of the response body. ISO-8859-1 is used if the server hasn't specified any,
+     * UTF-8 is used for the responses created from a string
+     *
+     * @return body charset
+     */
+    public Charset getCharset() {
+        if (entity == null) {
+            return Consts.UTF_8;
+        }
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        return charset != null ? charset : Consts.ISO_8859_1;
+    }
+
+    /**
+     * Releases the connection of streamed response. The unread part of the body is skipped
+     */
+    public void close() {
+        if (entity != null && responseBody == null) {
+            try {
+                GeneralUtils.closeStream(entity.getContent());
+            } catch (IOException e) {
+                // the connection is released below anyway
+            }
+        }
+        if (request != null) {
+            request.releaseConnection();
+            request = null;
+        }
+    }
+
+    /**
+     * Releases the connection of streamed response without reading the rest of the body.
+     * The connection is closed and isn't returned to the pool
+     */
+    public void abort() {
+        if (request != null) {
+            request.abort();
+            request = null;
+        }
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
@@ -0,0 +1,382 @@
+package com.template.autoqa.core.http_api;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.Config;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Pooled keep-alive HTTP client shared by all {@link BaseHttpRequest} objects created for the same base url.
+ * Pools are reference counted: every request object acquires the pool on creation and releases it on close,
+ * the last release shuts the connection manager down.
+ * <br/>Asynchronous requests go through a separate non-blocking client that is started on the first use.
+ */
+public class HttpConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    private static final String MAX_TOTAL_KEY = "http_pool_max_total";
+    private static final String MAX_PER_ROUTE_KEY = "http_pool_max_per_route";
+    private static final String IDLE_TIMEOUT_KEY = "http_pool_idle_timeout";
+    private static final String EVICTION_INTERVAL_KEY = "http_pool_eviction_interval";
+    private static final String ASYNC_MAX_IN_FLIGHT_KEY = "http_async_max_in_flight";
+    private static final String ASYNC_IO_THREADS_KEY = "http_async_io_threads";
+
+    private static final int DEFAULT_MAX_TOTAL = 200;
+    private static final int DEFAULT_MAX_PER_ROUTE = 50;
+    private static final int DEFAULT_IDLE_TIMEOUT = 30;
+    private static final int DEFAULT_EVICTION_INTERVAL = 5;
+    private static final int DEFAULT_ASYNC_MAX_IN_FLIGHT = 200;
+
+    private static final Map<String, HttpConnectionPool> pools = new HashMap<String, HttpConnectionPool>();
+
+    private final String baseUrl;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong newConnectionCount = new AtomicLong();
+    private final AtomicLong asyncRequestCount = new AtomicLong();
+    private final PoolingClientConnectionManager connectionManager;
+    private final DefaultHttpClient httpClient;
+    private final IdleConnectionEvictor evictor;
+    private final Semaphore asyncPermits;
+    private PoolingClientAsyncConnectionManager asyncConnectionManager;
+    private DefaultHttpAsyncClient asyncClient;
+    private int references;
+    private final Runnable configListener = new Runnable() {
+        public void run() {
+            applyPoolSize();
+        }
+    };
+
+    private HttpConnectionPool(String baseUrl) {
+        this.baseUrl = baseUrl;
+        Config config = Config.getInstance();
+        connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault()) {
+            @Override
+            protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemeRegistry) {
+                return new CountingConnectionOperator(schemeRegistry);
+            }
+        };
+        applyPoolSize();
+        config.addChangeListener(configListener);
+        httpClient = new DefaultHttpClient(connectionManager);
+        asyncPermits = new Semaphore(config.getInt(ASYNC_MAX_IN_FLIGHT_KEY, DEFAULT_ASYNC_MAX_IN_FLIGHT));
+        evictor = new IdleConnectionEvictor(
+                config.getInt(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT),
+                config.getInt(EVICTION_INTERVAL_KEY, DEFAULT_EVICTION_INTERVAL));
+        evictor.start();
+        logger.debug("Connection pool for '{}' has been created (max total: {}, max per route: {})",
+                baseUrl, connectionManager.getMaxTotal(), connectionManager.getDefaultMaxPerRoute());
+    }
+
+    /**
+     * Returns the pool for specified base url creating it if necessary.
+     * Every call must be paired with {@link #release()}
+     *
+     * @param baseUrl base url of the requests
+     * @return the pool for specified base url
+     */
+    public static HttpConnectionPool acquire(String baseUrl) {
+        synchronized (pools) {
+            HttpConnectionPool pool = pools.get(baseUrl);
+            if (pool == null) {
+                pool = new HttpConnectionPool(baseUrl);
+                pools.put(baseUrl, pool);
+            }
+            pool.references++;
+            return pool;
+        }
+    }
+
+    /**
+     * Releases the pool. The connections are closed when there are no more users of the pool
+     */
+    public void release() {
+        synchronized (pools) {
+            if (references == 0) {
+                return;
+            }
+            references--;
+            if (references == 0) {
+                pools.remove(baseUrl);
+                shutdown();
+            }
+        }
+    }
+
+    /**
+     * Shuts down all the pools regardless of the number of their users
+     */
+    public static void closeAll() {
+        synchronized (pools) {
+            for (HttpConnectionPool pool : pools.values()) {
+                pool.references = 0;
+                pool.shutdown();
+            }
+            pools.clear();
+        }
+    }
+
+    /**
+     * Reads the pool size settings, they are applied again when the config is reloaded
+     */
+    private synchronized void applyPoolSize() {
+        Config config = Config.getInstance();
+        connectionManager.setMaxTotal(config.getInt(MAX_TOTAL_KEY, DEFAULT_MAX_TOTAL));
+        connectionManager.setDefaultMaxPerRoute(config.getInt(MAX_PER_ROUTE_KEY, DEFAULT_MAX_PER_ROUTE));
+        if (asyncConnectionManager != null) {
+            asyncConnectionManager.setMaxTotal(connectionManager.getMaxTotal());
+            asyncConnectionManager.setDefaultMaxPerRoute(connectionManager.getDefaultMaxPerRoute());
+        }
+    }
+
+    private void shutdown() {
+        Config.getInstance().removeChangeListener(configListener);
+        evictor.shutdown();
+        connectionManager.shutdown();
+        synchronized (this) {
+            if (asyncClient != null) {
+                try {
+                    asyncClient.shutdown();
+                } catch (InterruptedException e) {
+                    logger.warn("Asynchronous client for '{}' hasn't been shut down gracefully", baseUrl);
+                }
+                asyncClient = null;
+                asyncConnectionManager = null;
+            }
+        }
+        logger.debug("Connection pool for '{}' has been closed ({})", baseUrl, this);
+    }
+
+    private void evictIdleConnections(long idleTimeoutSeconds) {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS);
+        synchronized (this) {
+            if (asyncConnectionManager != null) {
+                asyncConnectionManager.closeExpiredConnections();
+                asyncConnectionManager.closeIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Executes the request using one of the pooled connections
+     *
+     * @param request request to execute
+     * @return the response
+     * @throws IOException
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        requestCount.incrementAndGet();
+        return httpClient.execute(request);
+    }
+
+    /**
+     * Executes the request through the non-blocking client. If the limit of in-flight asynchronous requests has been
+     * reached the method blocks until one of them finishes
+     *
+     * @param request request to execute
+     * @return the future that is completed with the response once it has been fully received
+     */
+    public CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+        try {
+            asyncPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new TestInterruptException("Interrupted while waiting for a free asynchronous request slot", e);
+        }
+        asyncRequestCount.incrementAndGet();
+        try {
+            getAsyncClient().execute(request, new FutureCallback<HttpResponse>() {
+                public void completed(HttpResponse response) {
+                    asyncPermits.release();
+                    future.complete(response);
+                }
+
+                public void failed(Exception e) {
+                    asyncPermits.release();
+                    future.completeExceptionally(e);
+                }
+
+                public void cancelled() {
+                    asyncPermits.release();
+                    future.cancel(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            asyncPermits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private synchronized DefaultHttpAsyncClient getAsyncClient() {
+        if (asyncClient != null) {
+            return asyncClient;
+        }
+        Config config = Config.getInstance();
+        IOReactorConfig reactorConfig = new IOReactorConfig();
+        reactorConfig.setIoThreadCount(config.getInt(ASYNC_IO_THREADS_KEY,
+                Runtime.getRuntime().availableProcessors()));
+        reactorConfig.setTcpNoDelay(true);
+        try {
+            asyncConnectionManager = new PoolingClientAsyncConnectionManager(
+                    new DefaultConnectingIOReactor(reactorConfig));
+        } catch (IOReactorException e) {
+            throw new TestInterruptException("Cannot start the I/O reactor of asynchronous client", e);
+        }
+        asyncConnectionManager.setMaxTotal(connectionManager.getMaxTotal());
+        asyncConnectionManager.setDefaultMaxPerRoute(connectionManager.getDefaultMaxPerRoute());
+        asyncClient = new DefaultHttpAsyncClient(asyncConnectionManager);
+        asyncClient.start();
+        logger.debug("Asynchronous client for '{}' has been started", baseUrl);
+        return asyncClient;
+    }
+
+    /**
+     * Returns the number of asynchronous requests that can be started right now without blocking
+     *
+     * @return number of free asynchronous request slots
+     */
+    public int getAvailableAsyncSlots() {
+        return asyncPermits.availablePermits();
+    }
+
+    /**
+     * Returns the client that works on top of the pooled connections
+     *
+     * @return the pooled client
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the number of requests executed through the pool
+     *
+     * @return number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests executed through the non-blocking client
+     *
+     * @return number of asynchronous requests
+     */
+    public long getAsyncRequestCount() {
+        return asyncRequestCount.get();
+    }
+
+    /**
+     * Returns the number of new connections opened by the pool
+     *
+     * @return number of new connections
+     */
+    public long getNewConnectionCount() {
+        return newConnectionCount.get();
+    }
+
+    /**
+     * Returns the number of requests that have been executed on a reused keep-alive connection
+     *
+     * @return number of pool hits
+     */
+    public long getPoolHitCount() {
+        return Math.max(0, requestCount.get() - newConnectionCount.get());
+    }
+
+    /**
+     * Returns current state of the pool: leased, available and pending connections
+     *
+     * @return pool statistics
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests: %s, new connections: %s, pool hits: %s, async requests: %s, %s",
+                getRequestCount(), getNewConnectionCount(), getPoolHitCount(), getAsyncRequestCount(), getPoolStats());
+    }
+
+    /**
+     * Connection operator that counts the sockets actually opened by the pool
+     */
+    private class CountingConnectionOperator extends DefaultClientConnectionOperator {
+
+        CountingConnectionOperator(SchemeRegistry schemeRegistry) {
+            super(schemeRegistry);
+        }
+
+        @Override
+        public void openConnection(OperatedClientConnection connection, HttpHost target, InetAddress local,
+                                   HttpContext context, HttpParams params) throws IOException {
+            newConnectionCount.incrementAndGet();
+            super.openConnection(connection, target, local, context, params);
+        }
+    }
+
+    /**
+     * Background thread that closes expired connections and connections that have been idle for too long
+     */
+    private class IdleConnectionEvictor extends Thread {
+        private final long idleTimeout;
+        private final long interval;
+        private volatile boolean stopped;
+
+        IdleConnectionEvictor(long idleTimeoutSeconds, long intervalSeconds) {
+            super("http-pool-evictor");
+            setDaemon(true);
+            this.idleTimeout = idleTimeoutSeconds;
+            this.interval = Math.max(1, intervalSeconds) * 1000;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                evictIdleConnections(idleTimeout);
+            }
+        }
+
+        void shutdown() {
+            stopped = true;
+            interrupt();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.template.autoqa.core.http_api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.GeneralUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Predicate;
+
+
+/**
+ * Set of expectations about JSON response body that are checked in one pass over the token stream.
+ * The body is never held in memory: the parser descends only into the parts of document that can match
+ * one of registered paths and skips the rest. The check stops on the first failed expectation.
+ * <p/>
+ * Usage:
+ * <pre>
+ *     response.expectJson()
+ *             .fieldEquals("$.result", "success")
+ *             .arraySize("$.data", 50)
+ *             .allMatch("$.data[*].visits", value -> ((Number) value).intValue() >= 0)
+ *             .verify();
+ * </pre>
+ * The values passed to predicates are {@link String}, {@link Number}, {@link Boolean} or null
+ */
+public class JsonExpectations {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final BaseHttpResponse response;
+    private final List<Expectation> expectations = new ArrayList<Expectation>();
+
+    JsonExpectations(BaseHttpResponse response) {
+        this.response = response;
+    }
+
+    /**
+     * Expects that the value by specified path exists
+     *
+     * @param path JSONPath-like expression
+     * @return this object
+     */
+    public JsonExpectations exists(String path) {
+        expectations.add(new Expectation(Kind.EXISTS, path, "exists " + path, null, 0, null));
+        return this;
+    }
+
+    /**
+     * Expects that the value by specified path exists and equals to expected one.
+     * If the path contains wildcards, all matched values must be equal to expected one.
+     * The numbers are compared by their value, a string is compared to a textual representation of any scalar value
+     *
+     * @param path          JSONPath-like expression
+     * @param expectedValue expected value
+     * @return this object
+     */
+    public JsonExpectations fieldEquals(String path, Object expectedValue) {
+        expectations.add(new Expectation(Kind.EQUALS, path, path + " == " + expectedValue, expectedValue, 0, null));
+        return this;
+    }
+
+    /**
+     * Expects that the value by specified path is an array of specified size
+     *
+     * @param path         JSONPath-like expression
+     * @param expectedSize expected number of elements
+     * @return this object
+     */
+    public JsonExpectations arraySize(String path, int expectedSize) {
+        expectations.add(new Expectation(Kind.ARRAY_SIZE, path, "size of " + path + " == " + expectedSize, null,
+                expectedSize, null));
+        return this;
+    }
+
+    /**
+     * Expects that all scalar values matched by specified path satisfy the predicate
+     *
+     * @param path      JSONPath-like expression, usually with a wildcard
+     * @param predicate the condition
+     * @return this object
+     */
+    public JsonExpectations allMatch(String path, Predicate<Object> predicate) {
+        return allMatch(path, "predicate", predicate);
+    }
+
+    /**
+     * Expects that all scalar values matched by specified path satisfy the predicate
+     *
+     * @param path        JSONPath-like expression, usually with a wildcard
+     * @param description description of the condition used in failure message
+     * @param predicate   the condition
+     * @return this object
+     */
+    public JsonExpectations allMatch(String path, String description, Predicate<Object> predicate) {
+        expectations.add(new Expectation(Kind.ALL_MATCH, path, "all " + path + " match " + description, null, 0,
+                predicate));
+        return this;
+    }
+
+    /**
+     * Checks all the expectations and throws {@link AssertionError} describing the first failed one
+     */
+    public void verify() {
+        JsonMismatch mismatch = evaluate();
+        if (mismatch != null) {
+            throw new AssertionError(mismatch.toString());
+        }
+    }
+
+    /**
+     * Checks all the expectations reading the response body
+     *
+     * @return the first failed expectation or null if all the expectations have been met
+     */
+    public JsonMismatch evaluate() {
+        JsonParser parser = null;
+        JsonMismatch mismatch = null;
+        try {
+            parser = jsonFactory.createParser(response.getBodyStream());
+            mismatch = evaluate(parser);
+            return mismatch;
+        } catch (JsonParseException e) {
+            mismatch = new JsonMismatch("well-formed JSON", "$", getOffset(e.getLocation()), e.getOriginalMessage());
+            return mismatch;
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot read the response body", e);
+        } finally {
+            GeneralUtils.closeStream(parser);
+            if (mismatch != null) {
+                // don't download the rest of the body
+                response.abort();
+            } else {
+                response.close();
+            }
+        }
+    }
+
+    private JsonMismatch evaluate(JsonParser parser) throws IOException {
+        boolean[] found = new boolean[expectations.size()];
+        List<Object> path = new ArrayList<Object>();
+        Deque<Frame> frames = new ArrayDeque<Frame>();
+        JsonToken token;
+        long lastTokenOffset = 0;
+        while ((token = parser.nextToken()) != null) {
+            lastTokenOffset = getOffset(parser.getTokenLocation());
+            if (token == JsonToken.FIELD_NAME) {
+                path.set(path.size() - 1, parser.getCurrentName());
+                continue;
+            }
+            if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                Frame frame = frames.pop();
+                path.remove(path.size() - 1);
+                for (Expectation sizeCheck : frame.sizeChecks) {
+                    if (frame.count < sizeCheck.expectedSize) {
+                        return new JsonMismatch(sizeCheck.description, JsonPath.format(path),
+                                getOffset(parser.getTokenLocation()),
+                                String.format("array has %s elements", frame.count));
+                    }
+                }
+                continue;
+            }
+
+            Frame parent = frames.peek();
+            if (parent != null && parent.isArray) {
+                path.set(path.size() - 1, parent.count);
+                parent.count++;
+                for (Expectation sizeCheck : parent.sizeChecks) {
+                    if (parent.count > sizeCheck.expectedSize) {
+                        path.remove(path.size() - 1);
+                        return new JsonMismatch(sizeCheck.description, JsonPath.format(path),
+                                getOffset(parser.getTokenLocation()),
+                                String.format("array has more than %s elements", sizeCheck.expectedSize));
+                    }
+                }
+            }
+
+            List<Expectation> sizeChecks = null;
+            for (int i = 0; i < expectations.size(); i++) {
+                Expectation expectation = expectations.get(i);
+                if (!expectation.path.matches(path)) {
+                    continue;
+                }
+                found[i] = true;
+                String failure = null;
+                if (expectation.kind == Kind.ARRAY_SIZE) {
+                    if (token == JsonToken.START_ARRAY) {
+                        if (sizeChecks == null) {
+                            sizeChecks = new ArrayList<Expectation>(1);
+                        }
+                        sizeChecks.add(expectation);
+                    } else {
+                        failure = String.format("expected an array, but found %s", token);
+                    }
+                } else if (expectation.kind != Kind.EXISTS) {
+                    failure = checkScalar(expectation, token, parser);
+                }
+                if (failure != null) {
+                    return new JsonMismatch(expectation.description, JsonPath.format(path),
+                            getOffset(parser.getTokenLocation()), failure);
+                }
+            }
+
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                if (sizeChecks != null || isDescentNeeded(path)) {
+                    frames.push(new Frame(token == JsonToken.START_ARRAY, sizeChecks));
+                    path.add(null);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        for (int i = 0; i < expectations.size(); i++) {
+            Expectation expectation = expectations.get(i);
+            if (!found[i] && expectation.kind != Kind.ALL_MATCH) {
+                return new JsonMismatch(expectation.description, expectation.path.toString(),
+                        lastTokenOffset, "there is no such value");
+            }
+        }
+        return null;
+    }
+
+    private static long getOffset(JsonLocation location) {
+        // the byte-based parser reports the offset in bytes as a character offset
+        return location.getByteOffset() >= 0 ? location.getByteOffset() : location.getCharOffset();
+    }
+
+    private boolean isDescentNeeded(List<Object> path) {
+        for (Expectation expectation : expectations) {
+            if (expectation.path.length() > path.size() && expectation.path.matchesPrefix(path, path.size())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String checkScalar(Expectation expectation, JsonToken token, JsonParser parser) throws IOException {
+        if (!token.isScalarValue()) {
+            return String.format("expected a scalar value, but found %s", token);
+        }
+        Object value = getValue(token, parser);
+        if (expectation.kind == Kind.ALL_MATCH) {
+            return expectation.predicate.test(value) ? null : String.format("'%s' doesn't match", value);
+        }
+        return isEqual(expectation.expectedValue, token, parser)
+                ? null
+                : String.format("expected '%s', but found '%s'", expectation.expectedValue, value);
+    }
+
+    private static Object getValue(JsonToken token, JsonParser parser) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.getText();
+        }
+    }
+
+    private static boolean isEqual(Object expectedValue, JsonToken token, JsonParser parser) throws IOException {
+        if (expectedValue == null) {
+            return token == JsonToken.VALUE_NULL;
+        }
+        if (expectedValue instanceof Number) {
+            return token.isNumeric()
+                    && new BigDecimal(parser.getText()).compareTo(new BigDecimal(expectedValue.toString())) == 0;
+        }
+        if (expectedValue instanceof Boolean) {
+            return token == ((Boolean) expectedValue ? JsonToken.VALUE_TRUE : JsonToken.VALUE_FALSE);
+        }
+        return token != JsonToken.VALUE_NULL && expectedValue.toString().equals(parser.getText());
+    }
+
+    private enum Kind {
+        EXISTS, EQUALS, ARRAY_SIZE, ALL_MATCH
+    }
+
+    private static class Expectation {
+        final Kind kind;
+        final JsonPath path;
+        final String description;
+        final Object expectedValue;
+        final int expectedSize;
+        final Predicate<Object> predicate;
+
+        Expectation(Kind kind, String path, String description, Object expectedValue, int expectedSize,
+                    Predicate<Object> predicate) {
+            this.kind = kind;
+            this.path = JsonPath.compile(path);
+            this.description = description;
+            this.expectedValue = expectedValue;
+            this.expectedSize = expectedSize;
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * An object or array the parser is currently inside
+     */
+    private static class Frame {
+        final boolean isArray;
+        final List<Expectation> sizeChecks;
+        int count;
+
+        Frame(boolean isArray, List<Expectation> sizeChecks) {
+            this.isArray = isArray;
+            this.sizeChecks = sizeChecks != null ? sizeChecks : Collections.<Expectation>emptyList();
+        }
+    }
+}
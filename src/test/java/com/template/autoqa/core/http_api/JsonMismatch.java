@@ -0,0 +1,60 @@
+package com.template.autoqa.core.http_api;
+
+
+/**
+ * Describes the first JSON expectation that hasn't been met
+ */
+public class JsonMismatch {
+    private final String expectation;
+    private final String path;
+    private final long byteOffset;
+    private final String message;
+
+    JsonMismatch(String expectation, String path, long byteOffset, String message) {
+        this.expectation = expectation;
+        this.path = path;
+        this.byteOffset = byteOffset;
+        this.message = message;
+    }
+
+    /**
+     * Returns the description of failed expectation
+     *
+     * @return expectation description
+     */
+    public String getExpectation() {
+        return expectation;
+    }
+
+    /**
+     * Returns the concrete path of offending value, e.g. {@code $.data[42].id}
+     *
+     * @return path of the value
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the offset of offending value from the beginning of response body
+     *
+     * @return offset in bytes
+     */
+    public long getByteOffset() {
+        return byteOffset;
+    }
+
+    /**
+     * Returns the reason of the failure
+     *
+     * @return failure message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Expectation '%s' failed at '%s' (byte offset %s): %s", expectation, path, byteOffset, message);
+    }
+}
@@ -0,0 +1,147 @@
+package com.template.autoqa.core.http_api;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Compiled JSONPath-like expression. Supported syntax is a subset of JSONPath:
+ * <ul>
+ * <li>{@code $} - the root element</li>
+ * <li>{@code .name} or {@code ['name']} - the field of an object</li>
+ * <li>{@code [3]} - the element of an array</li>
+ * <li>{@code [*]} or {@code .*} - any element of an array or any field of an object</li>
+ * </ul>
+ * Example: {@code $.data[*].visits}
+ */
+class JsonPath {
+    static final Object WILDCARD = new Object();
+
+    private final String expression;
+    private final Object[] segments;
+
+    private JsonPath(String expression, Object[] segments) {
+        this.expression = expression;
+        this.segments = segments;
+    }
+
+    /**
+     * Parses the expression
+     *
+     * @param expression JSONPath-like expression
+     * @return compiled path
+     */
+    static JsonPath compile(String expression) {
+        if (expression == null || !expression.startsWith("$")) {
+            throw new TestInterruptException(String.format("'%s' JSON path must start with '$'", expression));
+        }
+        List<Object> segments = new ArrayList<Object>();
+        int i = 1;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (c == '.') {
+                int end = i + 1;
+                while (end < expression.length() && expression.charAt(end) != '.' && expression.charAt(end) != '[') {
+                    end++;
+                }
+                String name = expression.substring(i + 1, end);
+                if (name.isEmpty()) {
+                    throw wrongPath(expression, i);
+                }
+                segments.add("*".equals(name) ? WILDCARD : name);
+                i = end;
+            } else if (c == '[') {
+                int end = expression.indexOf(']', i);
+                if (end < 0) {
+                    throw wrongPath(expression, i);
+                }
+                String selector = expression.substring(i + 1, end).trim();
+                if ("*".equals(selector)) {
+                    segments.add(WILDCARD);
+                } else if (selector.length() >= 2 && (selector.startsWith("'") && selector.endsWith("'")
+                        || selector.startsWith("\"") && selector.endsWith("\""))) {
+                    segments.add(selector.substring(1, selector.length() - 1));
+                } else {
+                    try {
+                        segments.add(Integer.valueOf(selector));
+                    } catch (NumberFormatException e) {
+                        throw wrongPath(expression, i);
+                    }
+                }
+                i = end + 1;
+            } else {
+                throw wrongPath(expression, i);
+            }
+        }
+        return new JsonPath(expression, segments.toArray());
+    }
+
+    private static TestInterruptException wrongPath(String expression, int position) {
+        return new TestInterruptException(
+                String.format("'%s' is a wrong JSON path, unexpected symbol at position %s", expression, position));
+    }
+
+    /**
+     * Returns the number of segments (the root isn't counted)
+     *
+     * @return number of segments
+     */
+    int length() {
+        return segments.length;
+    }
+
+    /**
+     * Returns true if the first {@code depth} segments of the concrete path match this expression
+     *
+     * @param path  concrete path: field names and array indexes
+     * @param depth number of segments to check
+     * @return true if the path matches
+     */
+    boolean matchesPrefix(List<Object> path, int depth) {
+        if (depth > segments.length) {
+            return false;
+        }
+        for (int i = 0; i < depth; i++) {
+            Object segment = segments[i];
+            if (segment != WILDCARD && !segment.equals(path.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the concrete path matches this expression exactly
+     *
+     * @param path concrete path: field names and array indexes
+     * @return true if the path matches
+     */
+    boolean matches(List<Object> path) {
+        return path.size() == segments.length && matchesPrefix(path, segments.length);
+    }
+
+    /**
+     * Formats the concrete path as JSONPath expression
+     *
+     * @param path concrete path: field names and array indexes
+     * @return JSONPath expression
+     */
+    static String format(List<Object> path) {
+        StringBuilder builder = new StringBuilder("$");
+        for (Object segment : path) {
+            if (segment instanceof Integer) {
+                builder.append('[').append(segment).append(']');
+            } else {
+                builder.append('.').append(segment);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,504 @@
+package com.template.autoqa.core.http_api.stub;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.http_api.HttpConnectionPool;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.nio.DefaultHttpServerIODispatch;
+import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.BasicAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncExchange;
+import org.apache.http.nio.protocol.HttpAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandlerRegistry;
+import org.apache.http.nio.protocol.HttpAsyncResponseProducer;
+import org.apache.http.nio.protocol.HttpAsyncService;
+import org.apache.http.nio.reactor.ListenerEndpoint;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.protocol.ResponseDate;
+import org.apache.http.protocol.ResponseServer;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * In-process HTTP server built on the non-blocking I/O reactor of HttpCore. It listens on an ephemeral
+ * loopback port and works in one of two modes:
+ * <ul>
+ * <li>{@link Mode#RECORD} - every request is forwarded to the real server, the response is saved
+ * to the fixtures folder and returned to the client</li>
+ * <li>{@link Mode#REPLAY} - the responses are served from the fixtures folder, the requests are mapped
+ * to fixtures by {@link RequestMatcher}. Unmatched requests get 404</li>
+ * </ul>
+ * Optionally the server delays every response and limits the bandwidth of the response bodies.
+ */
+public class HttpStubServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(HttpStubServer.class);
+
+    private static final int SOCKET_TIMEOUT = 30 * 1000;
+    private static final int SOCKET_BUFFER_SIZE = 16 * 1024;
+    private static final long SHUTDOWN_GRACE_PERIOD = 1000;
+    private static final long THROTTLE_PAUSE_MILLIS = 10;
+    private static final int RECORD_THREADS = 8;
+    private static final int RECORD_QUEUE_SIZE = 100;
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList(
+            HTTP.CONTENT_LEN.toLowerCase(), HTTP.TRANSFER_ENCODING.toLowerCase(), HTTP.CONN_DIRECTIVE.toLowerCase(),
+            HTTP.CONN_KEEP_ALIVE.toLowerCase(), HTTP.TARGET_HOST.toLowerCase(), HTTP.DATE_HEADER.toLowerCase(),
+            HTTP.SERVER_HEADER.toLowerCase()));
+
+    public enum Mode {
+        RECORD, REPLAY
+    }
+
+    private final Mode mode;
+    private final String targetUrl;
+    private final File fixturesFolder;
+    private final Map<String, StubFixture> fixtures = new ConcurrentHashMap<String, StubFixture>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong unmatchedCount = new AtomicLong();
+    private RequestMatcher matcher = new QueryRequestMatcher();
+    private long latencyMillis;
+    private long bytesPerSecond;
+
+    private DefaultListeningIOReactor ioReactor;
+    private ScheduledExecutorService scheduler;
+    private ThreadPoolExecutor recordExecutor;
+    private HttpConnectionPool targetPool;
+    private int port;
+
+    /**
+     * Creates the server
+     *
+     * @param mode           record or replay mode
+     * @param targetUrl      base url of the real server, used in record mode only
+     * @param fixturesFolder folder to save the fixtures to or to load them from
+     */
+    public HttpStubServer(Mode mode, String targetUrl, File fixturesFolder) {
+        this.mode = mode;
+        this.targetUrl = targetUrl;
+        this.fixturesFolder = fixturesFolder;
+    }
+
+    /**
+     * Sets the matcher of requests to fixtures. Should be called before the server is started
+     *
+     * @param matcher request matcher
+     */
+    public void setRequestMatcher(RequestMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Sets the delay of every response
+     *
+     * @param latencyMillis delay in milliseconds, 0 means no delay
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Sets the maximum rate the body of each response is sent with
+     *
+     * @param bytesPerSecond bandwidth per connection, 0 means unlimited
+     */
+    public void setBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Adds the fixture to be served in replay mode
+     *
+     * @param fixture fixture
+     */
+    public void addFixture(StubFixture fixture) {
+        fixtures.put(fixture.getKey(), fixture);
+    }
+
+    /**
+     * Starts the server on an ephemeral port
+     */
+    public void start() {
+        if (mode == Mode.REPLAY) {
+            loadFixtures();
+        } else {
+            targetPool = HttpConnectionPool.acquire(targetUrl);
+            // the pool blocks when too many requests are in flight, that mustn't stop the I/O reactor,
+            // so the requests over the queue are rejected rather than run by the caller
+            recordExecutor = new ThreadPoolExecutor(RECORD_THREADS, RECORD_THREADS, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(RECORD_QUEUE_SIZE), new ThreadFactory() {
+                private final AtomicInteger number = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "stub-record-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+            recordExecutor.allowCoreThreadTimeOut(true);
+        }
+        scheduler = Executors.newScheduledThreadPool(2);
+
+        HttpParams params = new BasicHttpParams();
+        params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, SOCKET_TIMEOUT);
+        params.setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, SOCKET_BUFFER_SIZE);
+        params.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, true);
+        params.setParameter(CoreProtocolPNames.ORIGIN_SERVER, "autoqa-stub");
+
+        HttpAsyncRequestHandlerRegistry registry = new HttpAsyncRequestHandlerRegistry();
+        registry.register("*", new StubRequestHandler());
+        HttpAsyncService service = new HttpAsyncService(
+                new ImmutableHttpProcessor(new HttpResponseInterceptor[]{
+                        new ResponseDate(), new ResponseServer(), new ResponseContent(), new ResponseConnControl()}),
+                new DefaultConnectionReuseStrategy(), registry, params);
+        final DefaultHttpServerIODispatch dispatch = new DefaultHttpServerIODispatch(service, params);
+
+        IOReactorConfig reactorConfig = new IOReactorConfig();
+        reactorConfig.setIoThreadCount(Runtime.getRuntime().availableProcessors());
+        reactorConfig.setTcpNoDelay(true);
+        reactorConfig.setSoReuseAddress(true);
+        try {
+            ioReactor = new DefaultListeningIOReactor(reactorConfig);
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot create the I/O reactor of stub server", e);
+        }
+        ListenerEndpoint endpoint = ioReactor.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread reactorThread = new Thread("http-stub-server") {
+            @Override
+            public void run() {
+                try {
+                    ioReactor.execute(dispatch);
+                } catch (IOException e) {
+                    logger.error("Stub server has stopped with an error", e);
+                }
+            }
+        };
+        reactorThread.setDaemon(true);
+        reactorThread.start();
+        try {
+            endpoint.waitFor();
+        } catch (InterruptedException e) {
+            throw new TestInterruptException("Interrupted while starting the stub server", e);
+        }
+        if (endpoint.getException() != null) {
+            throw new TestInterruptException("Cannot start the stub server", endpoint.getException());
+        }
+        port = ((InetSocketAddress) endpoint.getAddress()).getPort();
+        logger.info("Stub server has started on port {} in {} mode ({} fixtures)", port, mode, fixtures.size());
+    }
+
+    /**
+     * Stops the server
+     */
+    public void stop() {
+        if (ioReactor == null) {
+            return;
+        }
+        try {
+            ioReactor.shutdown(SHUTDOWN_GRACE_PERIOD);
+        } catch (IOException e) {
+            logger.warn("Stub server hasn't been shut down gracefully", e);
+        }
+        scheduler.shutdownNow();
+        if (recordExecutor != null) {
+            recordExecutor.shutdownNow();
+            recordExecutor = null;
+        }
+        if (targetPool != null) {
+            targetPool.release();
+            targetPool = null;
+        }
+        ioReactor = null;
+        logger.info("Stub server has stopped (requests: {}, unmatched: {})", getRequestCount(), getUnmatchedCount());
+    }
+
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Returns the url to pass to {@link com.template.autoqa.core.http_api.BaseHttpRequest} instead of the real one
+     *
+     * @return base url of the server without tailing slash
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + port;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests there have been no fixtures for in replay mode
+     *
+     * @return number of unmatched requests
+     */
+    public long getUnmatchedCount() {
+        return unmatchedCount.get();
+    }
+
+    private void loadFixtures() {
+        File[] files = fixturesFolder.listFiles();
+        if (files == null) {
+            logger.warn("There is no '{}' fixtures folder", fixturesFolder);
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(StubFixture.PROPERTIES_EXTENSION)) {
+                addFixture(StubFixture.load(file));
+            }
+        }
+    }
+
+    private void respond(final HttpAsyncExchange exchange, StubFixture fixture) {
+        final FixtureResponseProducer producer = new FixtureResponseProducer(fixture, bytesPerSecond);
+        if (latencyMillis > 0) {
+            scheduler.schedule(new Runnable() {
+                public void run() {
+                    exchange.submitResponse(producer);
+                }
+            }, latencyMillis, TimeUnit.MILLISECONDS);
+        } else {
+            exchange.submitResponse(producer);
+        }
+    }
+
+    private void record(final HttpRequest request, final String key, final HttpAsyncExchange exchange) {
+        ForwardedRequest forwardedRequest = new ForwardedRequest(request.getRequestLine().getMethod(),
+                targetUrl + request.getRequestLine().getUri());
+        for (Header header : request.getAllHeaders()) {
+            if (!HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase())) {
+                forwardedRequest.addHeader(header);
+            }
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            forwardedRequest.setEntity(((HttpEntityEnclosingRequest) request).getEntity());
+        }
+        try {
+            recordExecutor.execute(() -> forward(forwardedRequest, key, exchange));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Too many requests are being recorded, '{}' is rejected", key);
+            respond(exchange, createTextFixture(key, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable",
+                    "Too many requests are being recorded"));
+        }
+    }
+
+    /**
+     * Sends the request to the real server and records the response, runs outside of the I/O reactor threads
+     */
+    private void forward(ForwardedRequest forwardedRequest, final String key, final HttpAsyncExchange exchange) {
+        targetPool.executeAsync(forwardedRequest).whenComplete((response, failure) -> {
+            if (failure != null) {
+                logger.warn("Cannot forward '{}' to the target server", key, failure);
+                respond(exchange, createTextFixture(key, HttpStatus.SC_BAD_GATEWAY, "Bad Gateway",
+                        "Cannot forward the request: " + failure));
+                return;
+            }
+            StubFixture fixture;
+            try {
+                HttpEntity entity = response.getEntity();
+                fixture = new StubFixture(key, response.getStatusLine().getStatusCode(),
+                        response.getStatusLine().getReasonPhrase(), Arrays.asList(response.getAllHeaders()),
+                        entity != null ? EntityUtils.toByteArray(entity) : null);
+                fixture.save(fixturesFolder, DigestUtils.shaHex(key));
+                addFixture(fixture);
+                logger.debug("Fixture has been recorded: {}", fixture);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Cannot record the response for '{}'", key, e);
+                fixture = createTextFixture(key, HttpStatus.SC_BAD_GATEWAY, "Bad Gateway",
+                        "Cannot record the response: " + e);
+            }
+            respond(exchange, fixture);
+        });
+    }
+
+    private static StubFixture createTextFixture(String key, int statusCode, String reasonPhrase, String text) {
+        List<Header> headers = new ArrayList<Header>();
+        headers.add(new BasicHeader(HTTP.CONTENT_TYPE, "text/plain; charset=UTF-8"));
+        return new StubFixture(key, statusCode, reasonPhrase, headers, text.getBytes(Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Handles all the incoming requests
+     */
+    private class StubRequestHandler implements HttpAsyncRequestHandler<HttpRequest> {
+
+        public HttpAsyncRequestConsumer<HttpRequest> processRequest(HttpRequest request, HttpContext context) {
+            return new BasicAsyncRequestConsumer();
+        }
+
+        public void handle(HttpRequest request, HttpAsyncExchange exchange, HttpContext context)
+                throws HttpException, IOException {
+            requestCount.incrementAndGet();
+            if (request instanceof HttpEntityEnclosingRequest) {
+                // make the body repeatable: it's read by the matcher and forwarded in record mode
+                HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+                if (entityRequest.getEntity() != null) {
+                    entityRequest.setEntity(new ByteArrayEntity(EntityUtils.toByteArray(entityRequest.getEntity())));
+                }
+            }
+            String key = matcher.getKey(request);
+            if (mode == Mode.RECORD) {
+                record(request, key, exchange);
+                return;
+            }
+            StubFixture fixture = fixtures.get(key);
+            if (fixture == null) {
+                unmatchedCount.incrementAndGet();
+                logger.warn("There is no fixture for '{}'", key);
+                fixture = createTextFixture(key, HttpStatus.SC_NOT_FOUND, "Not Found", "There is no fixture for " + key);
+            }
+            respond(exchange, fixture);
+        }
+    }
+
+    /**
+     * Request with arbitrary method sent to the real server in record mode
+     */
+    private static class ForwardedRequest extends HttpEntityEnclosingRequestBase {
+        private final String method;
+
+        ForwardedRequest(String method, String uri) {
+            this.method = method;
+            setURI(URI.create(uri));
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * Sends the fixture as a response. The body is sent directly from the fixture buffer,
+     * optionally no faster than specified rate
+     */
+    private class FixtureResponseProducer implements HttpAsyncResponseProducer {
+        private final StubFixture fixture;
+        private final ByteBuffer buffer;
+        private final long bytesPerSecond;
+        private long startNanos = -1;
+        private long sentBytes;
+
+        FixtureResponseProducer(StubFixture fixture, long bytesPerSecond) {
+            this.fixture = fixture;
+            this.buffer = ByteBuffer.wrap(fixture.getBody());
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public HttpResponse generateResponse() {
+            HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, fixture.getStatusCode(),
+                    fixture.getReasonPhrase());
+            for (Header header : fixture.getHeaders()) {
+                if (!HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase())) {
+                    response.addHeader(header);
+                }
+            }
+            int status = fixture.getStatusCode();
+            if (status != HttpStatus.SC_NO_CONTENT && status != HttpStatus.SC_NOT_MODIFIED) {
+                BasicHttpEntity entity = new BasicHttpEntity();
+                entity.setContentLength(fixture.getBody().length);
+                response.setEntity(entity);
+            }
+            return response;
+        }
+
+        public void produceContent(ContentEncoder encoder, final IOControl ioControl) throws IOException {
+            if (bytesPerSecond <= 0) {
+                encoder.write(buffer);
+            } else {
+                long now = System.nanoTime();
+                if (startNanos < 0) {
+                    startNanos = now;
+                }
+                // the budget grows with the elapsed time, a small burst lets the first chunk go immediately
+                long allowed = (now - startNanos) * bytesPerSecond / 1000000000L
+                        + Math.max(1, bytesPerSecond * THROTTLE_PAUSE_MILLIS / 1000) - sentBytes;
+                if (allowed <= 0) {
+                    ioControl.suspendOutput();
+                    scheduler.schedule(new Runnable() {
+                        public void run() {
+                            ioControl.requestOutput();
+                        }
+                    }, THROTTLE_PAUSE_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + (int) Math.min(allowed, buffer.remaining()));
+                sentBytes += encoder.write(buffer);
+                buffer.limit(limit);
+            }
+            if (!buffer.hasRemaining()) {
+                encoder.complete();
+            }
+        }
+
+        public void responseCompleted(HttpContext context) {
+            // do nothing
+        }
+
+        public void failed(Exception e) {
+            // do nothing
+        }
+
+        public void close() {
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.template.autoqa.core.http_api.stub;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Default matcher: the requests match if they have the same method, path, set of url parameters
+ * (in any order) and body. The parameters that change from run to run (tokens, timestamps) may be ignored
+ */
+public class QueryRequestMatcher implements RequestMatcher {
+    private final Set<String> ignoredParameters;
+
+    /**
+     * Creates the matcher
+     *
+     * @param ignoredParameters names of url parameters that don't take part in matching
+     */
+    public QueryRequestMatcher(String... ignoredParameters) {
+        this.ignoredParameters = new HashSet<String>(Arrays.asList(ignoredParameters));
+    }
+
+    public String getKey(HttpRequest request) {
+        String uri = request.getRequestLine().getUri();
+        int queryIndex = uri.indexOf('?');
+        String path = queryIndex < 0 ? uri : uri.substring(0, queryIndex);
+        List<String> parameters = new ArrayList<String>();
+        if (queryIndex >= 0) {
+            for (String parameter : uri.substring(queryIndex + 1).split("&")) {
+                int nameEnd = parameter.indexOf('=');
+                String name = nameEnd < 0 ? parameter : parameter.substring(0, nameEnd);
+                if (!parameter.isEmpty() && !ignoredParameters.contains(name)) {
+                    parameters.add(parameter);
+                }
+            }
+            Collections.sort(parameters);
+        }
+
+        StringBuilder key = new StringBuilder(request.getRequestLine().getMethod()).append(' ').append(path);
+        for (int i = 0; i < parameters.size(); i++) {
+            key.append(i == 0 ? '?' : '&').append(parameters.get(i));
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                try {
+                    key.append(" body:").append(DigestUtils.shaHex(EntityUtils.toByteArray(entity)));
+                } catch (IOException e) {
+                    throw new TestInterruptException("Cannot read the request body", e);
+                }
+            }
+        }
+        return key.toString();
+    }
+}
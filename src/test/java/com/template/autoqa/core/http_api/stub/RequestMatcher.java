@@ -0,0 +1,19 @@
+package com.template.autoqa.core.http_api.stub;
+
+import org.apache.http.HttpRequest;
+
+
+/**
+ * Maps the incoming request to the key of a recorded fixture. Two requests with the same key are served
+ * with the same fixture
+ */
+public interface RequestMatcher {
+
+    /**
+     * Returns the key of the request
+     *
+     * @param request incoming request, the entity of entity enclosing request is repeatable
+     * @return the key of the fixture that should be served for the request
+     */
+    String getKey(HttpRequest request);
+}
@@ -0,0 +1,149 @@
+package com.template.autoqa.core.http_api.stub;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.GeneralUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * Recorded response. On disk a fixture is a pair of files: {@code <name>.properties} with the status line
+ * and headers and {@code <name>.body} with raw body bytes
+ */
+public class StubFixture {
+    static final String PROPERTIES_EXTENSION = ".properties";
+    private static final String BODY_EXTENSION = ".body";
+
+    private static final String KEY = "request.key";
+    private static final String STATUS = "response.status";
+    private static final String REASON = "response.reason";
+    private static final String HEADER = "response.header.";
+
+    private final String key;
+    private final int statusCode;
+    private final String reasonPhrase;
+    private final List<Header> headers;
+    private final byte[] body;
+
+    /**
+     * Creates the fixture
+     *
+     * @param key          key of the request built by {@link RequestMatcher}
+     * @param statusCode   response status code
+     * @param reasonPhrase response reason phrase
+     * @param headers      response headers
+     * @param body         response body
+     */
+    public StubFixture(String key, int statusCode, String reasonPhrase, List<Header> headers, byte[] body) {
+        this.key = key;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.headers = Collections.unmodifiableList(new ArrayList<Header>(headers));
+        this.body = body != null ? body : new byte[0];
+    }
+
+    /**
+     * Loads the fixture from the properties file and the body file next to it
+     *
+     * @param propertiesFile fixture properties file
+     * @return loaded fixture
+     */
+    static StubFixture load(File propertiesFile) {
+        Properties properties = new Properties();
+        InputStream input = null;
+        try {
+            input = new FileInputStream(propertiesFile);
+            properties.load(input);
+            List<Header> headers = new ArrayList<Header>();
+            for (int i = 0; properties.containsKey(HEADER + i); i++) {
+                String header = properties.getProperty(HEADER + i);
+                int separator = header.indexOf(':');
+                headers.add(new BasicHeader(header.substring(0, separator), header.substring(separator + 1).trim()));
+            }
+            File bodyFile = getBodyFile(propertiesFile);
+            byte[] body = bodyFile.exists() ? FileUtils.readFileToByteArray(bodyFile) : new byte[0];
+            return new StubFixture(properties.getProperty(KEY), Integer.parseInt(properties.getProperty(STATUS)),
+                    properties.getProperty(REASON, ""), headers, body);
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot load the fixture " + propertiesFile, e);
+        } catch (RuntimeException e) {
+            throw new TestInterruptException("Fixture " + propertiesFile + " is corrupted", e);
+        } finally {
+            GeneralUtils.closeStream(input);
+        }
+    }
+
+    /**
+     * Saves the fixture to specified folder
+     *
+     * @param folder fixtures folder
+     * @param name   fixture name without extension
+     */
+    void save(File folder, String name) {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new TestInterruptException("Cannot create " + folder + " folder");
+        }
+        Properties properties = new Properties();
+        properties.setProperty(KEY, key);
+        properties.setProperty(STATUS, String.valueOf(statusCode));
+        properties.setProperty(REASON, reasonPhrase);
+        for (int i = 0; i < headers.size(); i++) {
+            properties.setProperty(HEADER + i, headers.get(i).getName() + ": " + headers.get(i).getValue());
+        }
+        File propertiesFile = new File(folder, name + PROPERTIES_EXTENSION);
+        OutputStream output = null;
+        try {
+            // the body is written first so a fixture is never visible without its body
+            FileUtils.writeByteArrayToFile(getBodyFile(propertiesFile), body);
+            output = new FileOutputStream(propertiesFile);
+            properties.store(output, key);
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot save the fixture " + propertiesFile, e);
+        } finally {
+            GeneralUtils.closeStream(output);
+        }
+    }
+
+    private static File getBodyFile(File propertiesFile) {
+        String name = propertiesFile.getName();
+        return new File(propertiesFile.getParentFile(),
+                name.substring(0, name.length() - PROPERTIES_EXTENSION.length()) + BODY_EXTENSION);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("'%s' -> %s (%s bytes)", key, statusCode, body.length);
+    }
+}
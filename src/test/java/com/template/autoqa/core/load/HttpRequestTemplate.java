@@ -0,0 +1,131 @@
+package com.template.autoqa.core.load;
+
+import com.template.autoqa.core.http_api.BaseHttpRequest;
+import com.template.autoqa.core.http_api.BaseHttpResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Describes one API call that can be sent through {@link BaseHttpRequest} many times.
+ * The same template is used by functional tests and by {@link LoadRunner}
+ */
+public class HttpRequestTemplate {
+    private enum Method {
+        GET, POST, POST_WITH_ARBITRARY_BODY
+    }
+
+    private final String name;
+    private final Method method;
+    private final String resourceUrl;
+    private final List<String> urlParameters;
+    private final Map<String, String> bodyParameters;
+    private final Object requestBody;
+
+    private HttpRequestTemplate(String name, Method method, String resourceUrl, List<String> urlParameters,
+                                Map<String, String> bodyParameters, Object requestBody) {
+        this.name = name;
+        this.method = method;
+        this.resourceUrl = resourceUrl;
+        this.urlParameters = urlParameters != null
+                ? new ArrayList<String>(urlParameters)
+                : new ArrayList<String>();
+        this.bodyParameters = bodyParameters != null
+                ? new HashMap<String, String>(bodyParameters)
+                : new HashMap<String, String>();
+        this.requestBody = requestBody;
+    }
+
+    /**
+     * Creates a template of GET request
+     *
+     * @param name          endpoint name used in the reports
+     * @param resourceUrl   resource url relative to the base url of the request
+     * @param urlParameters url parameters in 'name=value' format
+     * @return the template
+     */
+    public static HttpRequestTemplate get(String name, String resourceUrl, List<String> urlParameters) {
+        return new HttpRequestTemplate(name, Method.GET, resourceUrl, urlParameters, null, null);
+    }
+
+    /**
+     * Creates a template of POST request with form parameters
+     *
+     * @param name           endpoint name used in the reports
+     * @param resourceUrl    resource url relative to the base url of the request
+     * @param urlParameters  url parameters in 'name=value' format
+     * @param bodyParameters form parameters
+     * @return the template
+     */
+    public static HttpRequestTemplate post(String name, String resourceUrl, List<String> urlParameters,
+                                           Map<String, String> bodyParameters) {
+        return new HttpRequestTemplate(name, Method.POST, resourceUrl, urlParameters, bodyParameters, null);
+    }
+
+    /**
+     * Creates a template of POST request with arbitrary body
+     *
+     * @param name          endpoint name used in the reports
+     * @param resourceUrl   resource url relative to the base url of the request
+     * @param urlParameters url parameters in 'name=value' format
+     * @param requestBody   request body
+     * @return the template
+     */
+    public static HttpRequestTemplate postWithArbitraryBody(String name, String resourceUrl,
+                                                            List<String> urlParameters, Object requestBody) {
+        return new HttpRequestTemplate(name, Method.POST_WITH_ARBITRARY_BODY, resourceUrl, urlParameters, null,
+                requestBody);
+    }
+
+    /**
+     * Sends the request and waits for the response
+     *
+     * @param request request object to send the call through
+     * @return the response
+     */
+    public BaseHttpResponse execute(BaseHttpRequest request) {
+        switch (method) {
+            case POST:
+                return request.doPost(resourceUrl, urlParameters, bodyParameters);
+            case POST_WITH_ARBITRARY_BODY:
+                return request.doPostWithArbitraryBody(resourceUrl, urlParameters, requestBody);
+            default:
+                return request.doGet(resourceUrl, urlParameters);
+        }
+    }
+
+    /**
+     * Sends the request without blocking the current thread
+     *
+     * @param request request object to send the call through
+     * @return the future that is completed with the response
+     */
+    public CompletableFuture<BaseHttpResponse> executeAsync(BaseHttpRequest request) {
+        switch (method) {
+            case POST:
+                return request.doPostAsync(resourceUrl, urlParameters, bodyParameters);
+            case POST_WITH_ARBITRARY_BODY:
+                return request.doPostWithArbitraryBodyAsync(resourceUrl, urlParameters, requestBody);
+            default:
+                return request.doGetAsync(resourceUrl, urlParameters);
+        }
+    }
+
+    /**
+     * Returns the endpoint name used in the reports
+     *
+     * @return endpoint name
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s %s)", name, method, resourceUrl);
+    }
+}
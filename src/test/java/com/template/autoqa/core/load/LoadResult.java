@@ -0,0 +1,212 @@
+package com.template.autoqa.core.load;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.GeneralUtils;
+import com.template.autoqa.utils.LatencyHistogram;
+import org.testng.ITestContext;
+import org.testng.Reporter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Latency and throughput statistics collected by {@link LoadRunner}. Latencies are in microseconds
+ */
+public class LoadResult {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String model;
+    private final Map<String, EndpointStats> endpoints;
+    private final LatencyHistogram total = new LatencyHistogram();
+    private long durationNanos;
+
+    LoadResult(String model, List<HttpRequestTemplate> templates) {
+        this.model = model;
+        Map<String, EndpointStats> endpoints = new LinkedHashMap<String, EndpointStats>();
+        for (HttpRequestTemplate template : templates) {
+            if (!endpoints.containsKey(template.getName())) {
+                endpoints.put(template.getName(), new EndpointStats(template.getName()));
+            }
+        }
+        this.endpoints = Collections.unmodifiableMap(endpoints);
+    }
+
+    EndpointStats getEndpoint(String name) {
+        return endpoints.get(name);
+    }
+
+    void finish(long durationNanos) {
+        this.durationNanos = durationNanos;
+        for (EndpointStats endpoint : endpoints.values()) {
+            total.add(endpoint.histogram);
+        }
+    }
+
+    /**
+     * Returns the statistics of all endpoints in the order they have been added to the runner
+     *
+     * @return statistics of endpoints
+     */
+    public List<EndpointStats> getEndpoints() {
+        return new ArrayList<EndpointStats>(endpoints.values());
+    }
+
+    /**
+     * Returns the latencies of all the requests
+     *
+     * @return latency histogram
+     */
+    public LatencyHistogram getTotalHistogram() {
+        return total;
+    }
+
+    /**
+     * Returns the number of completed requests per second
+     *
+     * @return throughput
+     */
+    public double getThroughput() {
+        return durationNanos == 0 ? 0 : total.getTotalCount() * 1e9 / durationNanos;
+    }
+
+    public long getDurationMillis() {
+        return durationNanos / 1000000;
+    }
+
+    /**
+     * Writes the HTML report to {@code load/<name>.html} next to the TestNG output folder
+     * and posts a link to it to the report of the current test
+     *
+     * @param context test context
+     * @param name    report name
+     * @return report file
+     */
+    public File report(ITestContext context, String name) {
+        String file = "load/" + name + ".html";
+        File outputDir = new File(context.getOutputDirectory());
+        File saved = new File(outputDir.getParent(), file);
+        writeHtml(saved, name);
+        Reporter.log("<a href=\"../" + file + "\">Load test report: " + name + "</a>");
+        return saved;
+    }
+
+    /**
+     * Writes the HTML report to specified file
+     *
+     * @param file  report file
+     * @param title report title
+     */
+    public void writeHtml(File file, String title) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new TestInterruptException("Cannot create " + parent + " folder");
+        }
+        PrintWriter writer = null;
+        try {
+            writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")));
+            writer.println("<html><head><meta charset=\"UTF-8\"><title>" + title + "</title></head><body>");
+            writer.println("<h2>" + title + "</h2>");
+            writer.printf("<p>Model: %s, duration: %s ms, requests: %s, errors: %s, throughput: %.1f req/s</p>%n",
+                    model, getDurationMillis(), total.getTotalCount(), getErrorCount(), getThroughput());
+            writer.println("<table border=\"1\" cellpadding=\"4\" cellspacing=\"0\">");
+            writer.print("<tr><th>Endpoint</th><th>Requests</th><th>Errors</th><th>Throughput, req/s</th>"
+                    + "<th>Mean, ms</th>");
+            for (double percentile : PERCENTILES) {
+                writer.print("<th>p" + formatPercentile(percentile) + ", ms</th>");
+            }
+            writer.println("<th>Max, ms</th></tr>");
+            for (EndpointStats endpoint : endpoints.values()) {
+                writeRow(writer, endpoint.getName(), endpoint.histogram, endpoint.getErrorCount());
+            }
+            writeRow(writer, "<b>Total</b>", total, getErrorCount());
+            writer.println("</table></body></html>");
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot write the load test report to " + file, e);
+        } finally {
+            GeneralUtils.closeStream(writer);
+        }
+    }
+
+    private void writeRow(PrintWriter writer, String name, LatencyHistogram histogram, long errors) {
+        double throughput = durationNanos == 0 ? 0 : histogram.getTotalCount() * 1e9 / durationNanos;
+        writer.printf("<tr><td>%s</td><td>%s</td><td>%s</td><td>%.1f</td><td>%.2f</td>",
+                name, histogram.getTotalCount(), errors, throughput, histogram.getMean() / 1000);
+        for (double percentile : PERCENTILES) {
+            writer.printf("<td>%.2f</td>", histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        writer.printf("<td>%.2f</td></tr>%n", histogram.getMaxValue() / 1000.0);
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.floor(percentile)
+                ? String.valueOf((long) percentile)
+                : String.valueOf(percentile).replace(".", "");
+    }
+
+    /**
+     * Returns the number of failed requests of all endpoints
+     *
+     * @return number of errors
+     */
+    public long getErrorCount() {
+        long errors = 0;
+        for (EndpointStats endpoint : endpoints.values()) {
+            errors += endpoint.getErrorCount();
+        }
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s: %.1f req/s, %s%n", model, getThroughput(), total));
+        for (EndpointStats endpoint : endpoints.values()) {
+            builder.append(String.format("  %s: %s, errors: %s%n",
+                    endpoint.getName(), endpoint.histogram, endpoint.getErrorCount()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Statistics of one endpoint
+     */
+    public static class EndpointStats {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        EndpointStats(String name) {
+            this.name = name;
+        }
+
+        void record(long latencyMicros, boolean isError) {
+            histogram.record(latencyMicros);
+            if (isError) {
+                errors.incrementAndGet();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getErrorCount() {
+            return errors.get();
+        }
+    }
+}
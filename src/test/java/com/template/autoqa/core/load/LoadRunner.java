@@ -0,0 +1,191 @@
+package com.template.autoqa.core.load;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.http_api.BaseHttpRequest;
+import com.template.autoqa.core.http_api.BaseHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Drives the calls described by {@link HttpRequestTemplate}s through {@link BaseHttpRequest} and measures latency.
+ * <br/>Two load models are supported:
+ * <ul>
+ * <li>open model ({@link #runAtRate}) - requests are started on a fixed schedule regardless of how fast
+ * the server responds. The latency is measured from the moment the request should have been started,
+ * so the stalls of the server or of the client are not hidden (no coordinated omission)</li>
+ * <li>closed model ({@link #runWithConcurrency}) - a fixed number of workers send the next request as soon as
+ * the previous one completes</li>
+ * </ul>
+ * The templates are used in round-robin order, add a template several times to give it more weight.
+ */
+public class LoadRunner {
+    private static final Logger logger = LoggerFactory.getLogger(LoadRunner.class);
+
+    private static final long DRAIN_TIMEOUT_MILLIS = 60 * 1000;
+
+    private final BaseHttpRequest request;
+    private final List<HttpRequestTemplate> templates = new ArrayList<HttpRequestTemplate>();
+    private final AtomicLong sequence = new AtomicLong();
+    private long warmupMillis;
+
+    public LoadRunner(BaseHttpRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Adds the call to the load mix
+     *
+     * @param template call description
+     * @return this object
+     */
+    public LoadRunner addTemplate(HttpRequestTemplate template) {
+        templates.add(template);
+        return this;
+    }
+
+    /**
+     * Sets the time at the beginning of the run which requests are sent but not measured
+     *
+     * @param warmupMillis warmup time in milliseconds
+     */
+    public void setWarmupMillis(long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+    }
+
+    /**
+     * Sends the requests at constant rate (open model) using asynchronous API of {@link BaseHttpRequest}
+     *
+     * @param requestsPerSecond target rate
+     * @param durationMillis    duration of the measured part of the run
+     * @return collected statistics
+     */
+    public LoadResult runAtRate(double requestsPerSecond, long durationMillis) {
+        checkTemplates();
+        LoadResult result = new LoadResult(String.format("open model, %.1f req/s", requestsPerSecond), templates);
+        logger.info("Load run started: {} req/s for {} ms", requestsPerSecond, durationMillis);
+
+        final Phaser inFlight = new Phaser(1);
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        long end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        for (long i = 0; ; i++) {
+            long intendedStart = start + (long) (i * 1e9 / requestsPerSecond);
+            if (intendedStart >= end) {
+                break;
+            }
+            long delay;
+            while ((delay = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            HttpRequestTemplate template = nextTemplate();
+            LoadResult.EndpointStats stats = intendedStart >= measureStart ? result.getEndpoint(template.getName()) : null;
+            inFlight.register();
+            template.executeAsync(request).whenComplete((response, failure) -> {
+                try {
+                    if (stats != null) {
+                        // measured from the intended start: the time spent waiting for a free slot is counted too
+                        stats.record((System.nanoTime() - intendedStart) / 1000, isError(response, failure));
+                    }
+                    close(response);
+                } finally {
+                    inFlight.arriveAndDeregister();
+                }
+            });
+        }
+        try {
+            inFlight.awaitAdvanceInterruptibly(inFlight.arrive(), DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new TestInterruptException("Load run has been interrupted", e);
+        } catch (TimeoutException e) {
+            logger.warn("{} requests haven't completed in {} ms after the end of the load run",
+                    inFlight.getUnarrivedParties(), DRAIN_TIMEOUT_MILLIS);
+        }
+        result.finish(System.nanoTime() - measureStart);
+        logger.info("Load run finished: {}", result);
+        return result;
+    }
+
+    /**
+     * Sends the requests from a fixed number of threads (closed model) using blocking API of {@link BaseHttpRequest}
+     *
+     * @param concurrency    number of concurrent workers
+     * @param durationMillis duration of the measured part of the run
+     * @return collected statistics
+     */
+    public LoadResult runWithConcurrency(int concurrency, long durationMillis) {
+        checkTemplates();
+        final LoadResult result = new LoadResult(String.format("closed model, %s workers", concurrency), templates);
+        logger.info("Load run started: {} workers for {} ms", concurrency, durationMillis);
+
+        long start = System.nanoTime();
+        final long measureStart = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        final long end = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(new Runnable() {
+                public void run() {
+                    long requestStart;
+                    while ((requestStart = System.nanoTime()) < end) {
+                        HttpRequestTemplate template = nextTemplate();
+                        BaseHttpResponse response = null;
+                        Throwable failure = null;
+                        try {
+                            response = template.execute(request);
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                        if (requestStart >= measureStart) {
+                            result.getEndpoint(template.getName())
+                                    .record((System.nanoTime() - requestStart) / 1000, isError(response, failure));
+                        }
+                        close(response);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(durationMillis + warmupMillis + DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Load workers haven't finished in {} ms after the end of the load run", DRAIN_TIMEOUT_MILLIS);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            throw new TestInterruptException("Load run has been interrupted", e);
+        }
+        result.finish(System.nanoTime() - measureStart);
+        logger.info("Load run finished: {}", result);
+        return result;
+    }
+
+    private HttpRequestTemplate nextTemplate() {
+        return templates.get((int) (sequence.getAndIncrement() % templates.size()));
+    }
+
+    private void checkTemplates() {
+        if (templates.isEmpty()) {
+            throw new TestInterruptException("There are no request templates to run the load with");
+        }
+    }
+
+    private static boolean isError(BaseHttpResponse response, Throwable failure) {
+        return failure != null || response == null || response.getStatusCode() < 0 || response.getStatusCode() >= 400;
+    }
+
+    private static void close(BaseHttpResponse response) {
+        if (response != null) {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.template.autoqa.core.metrics;
+
+
+/**
+ * Operations timed by {@link OperationMetrics}. The operations are nested: the time of {@link #WAIT_FOR}
+ * includes its {@link #FIND_SELF} attempts, {@link #FIND_SELF} includes the {@link #SYNC} before the lookup,
+ * and {@link #CLICK} and {@link #GET_TEXT} include the lookup of the element if it isn't cached.
+ * {@link #WAIT_FOR} is keyed by the kind of the wait and the element,
+ * {@link #EXECUTE_BATCH} by the names of its steps, {@link #PROXY_REQUEST} by the host of the request
+ * a browser has sent through the proxy.
+ * <br/>A failure is an exception, a timed out wait, a {@link #FIND_SELF} that hasn't found the element
+ * or an HTTP call that hasn't returned a successful response
+ */
+public enum Operation {
+    FIND_SELF("findSelf"),
+    WAIT_FOR("waitFor"),
+    CLICK("click"),
+    GET_TEXT("getText"),
+    EXECUTE_JAVASCRIPT("executeJavascript"),
+    EXECUTE_BATCH("executeBatch"),
+    SYNC("sync"),
+    HTTP_GET("doGet"),
+    HTTP_POST("doPost"),
+    PROXY_REQUEST("proxyRequest");
+
+    private final String displayName;
+
+    Operation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,184 @@
+package com.template.autoqa.core.metrics;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Times the framework operations: element lookups and waits, clicks, script calls, ajax syncs and HTTP calls.
+ * A call site takes {@link #start()} before the operation and passes it to {@link #record} after it:
+ * <pre>
+ *     long start = OperationMetrics.start();
+ *     ...
+ *     OperationMetrics.record(Operation.CLICK, locator, start, isFailed);
+ * </pre>
+ * Recording takes no locks and allocates nothing once the locator has been seen. The statistics are
+ * published through JMX as {@code com.template.autoqa:type=OperationMetrics,name=<operation>} and written
+ * to {@code <output>/metrics/<suite>.txt} by {@link OperationMetricsListener}.
+ * <br/>The metrics are switched by {@code metrics_enabled}, {@code metrics_max_keys} limits the number of
+ * locators and endpoints tracked separately per operation
+ */
+public class OperationMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(OperationMetrics.class);
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private static final String OBJECT_NAME = "com.template.autoqa:type=OperationMetrics,name=";
+
+    private static final OperationStatistics[] statistics = new OperationStatistics[Operation.values().length];
+    private static volatile boolean isEnabled;
+
+    static {
+        Config config = Config.getInstance();
+        int maxKeys = Math.max(config.getInt("metrics_max_keys", 1000), 1);
+        for (Operation operation : Operation.values()) {
+            statistics[operation.ordinal()] = new OperationStatistics(operation, maxKeys);
+        }
+        isEnabled = config.getBoolean("metrics_enabled", true);
+        config.addChangeListener(new Runnable() {
+            public void run() {
+                isEnabled = Config.getInstance().getBoolean("metrics_enabled", true);
+            }
+        });
+        registerMBeans();
+    }
+
+    private OperationMetrics() {
+        // do nothing
+    }
+
+    /**
+     * Returns the start time of an operation to be passed to {@link #record}
+     *
+     * @return the start time or a mark that the metrics are disabled
+     */
+    public static long start() {
+        return isEnabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Records the operation
+     *
+     * @param operation operation
+     * @param key       locator, endpoint or script, null if unknown
+     * @param start     value returned by {@link #start()} before the operation
+     * @param isFailed  true if the operation has thrown or timed out
+     */
+    public static void record(Operation operation, String key, long start, boolean isFailed) {
+        if (start == NOT_STARTED) {
+            return;
+        }
+        statistics[operation.ordinal()].record(key, System.nanoTime() - start, isFailed);
+    }
+
+    public static OperationStatistics getStatistics(Operation operation) {
+        return statistics[operation.ordinal()];
+    }
+
+    /**
+     * Returns the statistics of the locators and endpoints of all the operations sorted by the total time,
+     * the slowest first
+     *
+     * @param limit maximum number of keys
+     * @return statistics per key
+     */
+    public static List<OperationStatistics.KeyStatistics> getSlowestKeys(int limit) {
+        List<OperationStatistics.KeyStatistics> sorted = new ArrayList<OperationStatistics.KeyStatistics>();
+        for (OperationStatistics operationStatistics : statistics) {
+            sorted.addAll(operationStatistics.getKeys());
+        }
+        Collections.sort(sorted, OperationStatistics.KeyStatistics.BY_TOTAL_TIME);
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Returns the report of the operations and their slowest locators and endpoints
+     *
+     * @param limit maximum number of locators and endpoints in the report
+     * @return text report
+     */
+    public static String getReport(int limit) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%-18s %10s %9s %12s %10s %10s %10s %10s %10s%n",
+                "Operation", "count", "failures", "total ms", "mean us", "p50 us", "p90 us", "p99 us", "max us"));
+        for (OperationStatistics operationStatistics : statistics) {
+            if (operationStatistics.getCount() == 0) {
+                continue;
+            }
+            report.append(String.format(Locale.ROOT, "%-18s %10d %9d %12d %10.0f %10d %10d %10d %10d%n",
+                    operationStatistics.getName(), operationStatistics.getCount(),
+                    operationStatistics.getFailureCount(), operationStatistics.getTotalMillis(),
+                    operationStatistics.getMeanMicros(), operationStatistics.getP50Micros(),
+                    operationStatistics.getP90Micros(), operationStatistics.getP99Micros(),
+                    operationStatistics.getMaxMicros()));
+        }
+        report.append(String.format(Locale.ROOT, "%nSlowest locators and endpoints by total time:%n"));
+        report.append(String.format(Locale.ROOT, "%4s %-18s %10s %9s %12s %10s %10s  %s%n",
+                "#", "Operation", "count", "failures", "total ms", "mean ms", "max ms", "Locator"));
+        int rank = 1;
+        for (OperationStatistics.KeyStatistics key : getSlowestKeys(limit)) {
+            report.append(String.format(Locale.ROOT, "%4d %-18s %10d %9d %12d %10.1f %10d  %s%n",
+                    rank++, key.getOperation(), key.getCount(), key.getFailureCount(),
+                    TimeUnit.NANOSECONDS.toMillis(key.getTotalNanos()), key.getMeanMillis(),
+                    TimeUnit.NANOSECONDS.toMillis(key.getMaxNanos()), key.getName()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the report to the file
+     *
+     * @param file  report file, its folder is created if needed
+     * @param limit maximum number of locators and endpoints in the report
+     */
+    public static void writeReport(File file, int limit) {
+        try {
+            Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+                writer.print(getReport(limit));
+            }
+        } catch (IOException e) {
+            throw new TestInterruptException("Metrics cannot be written to " + file, e);
+        }
+    }
+
+    /**
+     * Clears all the statistics
+     */
+    public static void reset() {
+        for (OperationStatistics operationStatistics : statistics) {
+            operationStatistics.reset();
+        }
+    }
+
+    private static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationStatistics operationStatistics : statistics) {
+            try {
+                ObjectName name = new ObjectName(OBJECT_NAME + operationStatistics.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(operationStatistics, name);
+                }
+            } catch (JMException e) {
+                logger.warn("Operation metrics cannot be registered in JMX: {}", e.toString());
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.template.autoqa.core.metrics;
+
+import com.template.autoqa.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+
+import java.io.File;
+
+
+/**
+ * TestNG listener writing the summary of {@link OperationMetrics} to {@code <output>/metrics/<suite>.txt}
+ * when a suite finishes. The statistics are cleared when a suite starts, so with the suites run in parallel
+ * a summary includes the operations of all the suites started after the latest one.
+ * <br/>The number of the ranked locators and endpoints is set by {@code metrics_summary_limit}
+ */
+public class OperationMetricsListener implements ISuiteListener {
+    private static final Logger logger = LoggerFactory.getLogger(OperationMetricsListener.class);
+
+    public static final String FOLDER = "metrics";
+
+    public void onStart(ISuite suite) {
+        OperationMetrics.reset();
+    }
+
+    public void onFinish(ISuite suite) {
+        File folder = new File(new File(suite.getOutputDirectory()).getParentFile(), FOLDER);
+        File file = new File(folder, suite.getName() + ".txt");
+        try {
+            OperationMetrics.writeReport(file, Config.getInstance().getInt("metrics_summary_limit", 50));
+            logger.info("Operation metrics of '{}' suite are written to {}", suite.getName(), file);
+        } catch (RuntimeException e) {
+            logger.warn("Operation metrics of '" + suite.getName() + "' suite cannot be written", e);
+        }
+    }
+}
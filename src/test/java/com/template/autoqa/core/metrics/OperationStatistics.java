@@ -0,0 +1,244 @@
+package com.template.autoqa.core.metrics;
+
+import com.template.autoqa.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Times of one {@link Operation}: the latency histogram of the operation and the counters per locator or endpoint.
+ * The counters are striped {@link LongAdder}s, so the threads of a parallel suite don't contend on them.
+ * At most {@code maxKeys} locators are tracked separately, the rest are counted under {@link #OTHER_KEY}
+ */
+public class OperationStatistics implements OperationStatisticsMXBean {
+    public static final String OTHER_KEY = "(other)";
+
+    private static final int MAX_KEY_LENGTH = 120;
+    private static final int SLOWEST_KEYS_LIMIT = 20;
+
+    private final Operation operation;
+    private final int maxKeys;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final ConcurrentMap<String, KeyStatistics> keys = new ConcurrentHashMap<String, KeyStatistics>();
+    private final AtomicInteger keyCount = new AtomicInteger();
+    private final KeyStatistics otherKey;
+
+    OperationStatistics(Operation operation, int maxKeys) {
+        this.operation = operation;
+        this.maxKeys = maxKeys;
+        otherKey = new KeyStatistics(operation, OTHER_KEY);
+    }
+
+    void record(String key, long nanos, boolean isFailed) {
+        histogram.record(nanos / 1000);
+        count.increment();
+        totalNanos.add(nanos);
+        if (isFailed) {
+            failures.increment();
+        }
+        getKeyStatistics(key).record(nanos, isFailed);
+    }
+
+    private KeyStatistics getKeyStatistics(String key) {
+        if (key == null) {
+            return otherKey;
+        }
+        KeyStatistics keyStatistics = keys.get(key);
+        if (keyStatistics == null) {
+            if (keyCount.get() >= maxKeys) {
+                return otherKey;
+            }
+            KeyStatistics created = new KeyStatistics(operation, key);
+            keyStatistics = keys.putIfAbsent(key, created);
+            if (keyStatistics == null) {
+                keyCount.incrementAndGet();
+                keyStatistics = created;
+            }
+        }
+        return keyStatistics;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Returns the statistics of all the locators or endpoints sorted by the total time, the slowest first
+     *
+     * @return statistics per key
+     */
+    public List<KeyStatistics> getKeys() {
+        List<KeyStatistics> sorted = new ArrayList<KeyStatistics>(keys.values());
+        if (otherKey.getCount() > 0) {
+            sorted.add(otherKey);
+        }
+        Collections.sort(sorted, KeyStatistics.BY_TOTAL_TIME);
+        return sorted;
+    }
+
+    public String getName() {
+        return operation.getDisplayName();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+    }
+
+    public double getMeanMicros() {
+        return histogram.getMean();
+    }
+
+    public long getP50Micros() {
+        return histogram.getValueAtPercentile(50);
+    }
+
+    public long getP90Micros() {
+        return histogram.getValueAtPercentile(90);
+    }
+
+    public long getP99Micros() {
+        return histogram.getValueAtPercentile(99);
+    }
+
+    public long getMaxMicros() {
+        return histogram.getMaxValue();
+    }
+
+    public String[] getSlowestKeys() {
+        List<KeyStatistics> sorted = getKeys();
+        String[] slowest = new String[Math.min(sorted.size(), SLOWEST_KEYS_LIMIT)];
+        for (int i = 0; i < slowest.length; i++) {
+            slowest[i] = sorted.get(i).toString();
+        }
+        return slowest;
+    }
+
+    /**
+     * Clears the counters. The operations recorded during the reset may be partially lost
+     */
+    public void reset() {
+        histogram.reset();
+        count.reset();
+        failures.reset();
+        totalNanos.reset();
+        keys.clear();
+        keyCount.set(0);
+        otherKey.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: total %s ms, failures %s, %s", operation, getTotalMillis(), getFailureCount(),
+                histogram);
+    }
+
+    /**
+     * Counters of one locator or endpoint. Times are in nanoseconds
+     */
+    public static class KeyStatistics {
+        static final Comparator<KeyStatistics> BY_TOTAL_TIME = new Comparator<KeyStatistics>() {
+            public int compare(KeyStatistics first, KeyStatistics second) {
+                return Long.compare(second.getTotalNanos(), first.getTotalNanos());
+            }
+        };
+
+        private final Operation operation;
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        KeyStatistics(Operation operation, String key) {
+            this.operation = operation;
+            // scripts and long locators are shortened and kept on one line
+            String name = key.replaceAll("\\s+", " ").trim();
+            this.name = name.length() > MAX_KEY_LENGTH ? name.substring(0, MAX_KEY_LENGTH - 3) + "..." : name;
+        }
+
+        void record(long nanos, boolean isFailed) {
+            count.increment();
+            totalNanos.add(nanos);
+            if (isFailed) {
+                failures.increment();
+            }
+            long current;
+            while (nanos > (current = maxNanos.get())) {
+                if (maxNanos.compareAndSet(current, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        void reset() {
+            count.reset();
+            failures.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanMillis() {
+            long total = count.sum();
+            return total == 0 ? 0 : totalNanos.sum() / 1e6 / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s: count %s, failures %s, total %s ms, mean %.1f ms, max %s ms", operation, name,
+                    getCount(), getFailureCount(), TimeUnit.NANOSECONDS.toMillis(getTotalNanos()), getMeanMillis(),
+                    TimeUnit.NANOSECONDS.toMillis(getMaxNanos()));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.template.autoqa.core.metrics;
+
+
+/**
+ * JMX view of the statistics of one {@link Operation}, registered as
+ * {@code com.template.autoqa:type=OperationMetrics,name=<operation>}. Times are in microseconds
+ */
+public interface OperationStatisticsMXBean {
+
+    String getName();
+
+    long getCount();
+
+    long getFailureCount();
+
+    long getTotalMillis();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP90Micros();
+
+    long getP99Micros();
+
+    long getMaxMicros();
+
+    /**
+     * Returns the slowest locators or endpoints of the operation by the total time
+     */
+    String[] getSlowestKeys();
+
+    void reset();
+}
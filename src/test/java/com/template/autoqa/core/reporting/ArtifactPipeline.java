@@ -0,0 +1,324 @@
+package com.template.autoqa.core.reporting;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.Config;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Saves the artifacts of failed tests in background. Only the capture (screenshot bytes, page source,
+ * browser console) is done on the test thread, the images are compressed, thumbnailed and written by
+ * {@code artifacts_workers} threads. The queue is bounded by {@code artifacts_queue_size}, when it's full
+ * the test thread writes the artifact itself.
+ * <br/>The images are named by the hash of their content, so identical screenshots are written once.
+ * {@link #flush()} must be called before the report is read.
+ */
+public class ArtifactPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactPipeline.class);
+
+    private static final String JPEG = "jpg";
+    private static final String PNG = "png";
+    private static final long FLUSH_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private static final ArtifactPipeline instance = new ArtifactPipeline();
+
+    private final ThreadPoolExecutor workers;
+    private final Phaser pending = new Phaser(1);
+    // the phase the pipeline has arrived at by a flush which timed out, the next flush waits for it again
+    private int flushedPhase = -1;
+    private final Set<String> writtenImages = ConcurrentHashMap.newKeySet();
+    private final AtomicLong imageCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    private final String imageFormat;
+    private final float jpegQuality;
+    private final int thumbnailWidth;
+    private final boolean isDomCaptured;
+    private final boolean isConsoleCaptured;
+
+    /**
+     * Returns an instance of ArtifactPipeline class
+     */
+    public static ArtifactPipeline getInstance() {
+        return instance;
+    }
+
+    private ArtifactPipeline() {
+        Config config = Config.getInstance();
+        int workersCount = Math.max(config.getInt("artifacts_workers", 2), 1);
+        int queueSize = Math.max(config.getInt("artifacts_queue_size", 50), 1);
+        imageFormat = PNG.equalsIgnoreCase(config.get("artifacts_image_format").trim()) ? PNG : JPEG;
+        jpegQuality = config.getInt("artifacts_jpeg_quality", 80) / 100f;
+        thumbnailWidth = config.getInt("artifacts_thumbnail_width", 320);
+        isDomCaptured = config.getBoolean("artifacts_capture_dom", false);
+        isConsoleCaptured = config.getBoolean("artifacts_capture_console", false);
+
+        workers = new ThreadPoolExecutor(workersCount, workersCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "artifacts-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Captures the artifacts of the browser and queues them for writing
+     *
+     * @param webDriver the browser
+     * @param folder    folder to write the artifacts to
+     * @param name      name of the test, used for page source and console files
+     * @return names of the artifact files relative to the folder
+     */
+    public Artifacts capture(WebDriver webDriver, final File folder, String name) {
+        Artifacts artifacts = new Artifacts();
+        String suffix = name + "-" + System.currentTimeMillis();
+
+        final byte[] screenshot = captureScreenshot(webDriver);
+        if (screenshot != null) {
+            final String hash = DigestUtils.shaHex(screenshot);
+            artifacts.image = hash + "." + imageFormat;
+            artifacts.thumbnail = hash + "_thumb." + JPEG;
+            if (writtenImages.add(hash)) {
+                imageCount.incrementAndGet();
+                final Artifacts names = artifacts;
+                submit(new Runnable() {
+                    public void run() {
+                        writeImages(hash, screenshot, new File(folder, names.image), new File(folder, names.thumbnail));
+                    }
+                });
+            } else {
+                duplicateCount.incrementAndGet();
+            }
+        }
+        if (isDomCaptured) {
+            artifacts.pageSource = suffix + ".html";
+            submitText(capturePageSource(webDriver), new File(folder, artifacts.pageSource));
+        }
+        if (isConsoleCaptured) {
+            artifacts.console = suffix + ".log";
+            submitText(captureConsole(webDriver), new File(folder, artifacts.console));
+        }
+        return artifacts;
+    }
+
+    /**
+     * Waits until all the queued artifacts are written
+     */
+    public synchronized void flush() {
+        try {
+            if (flushedPhase < 0) {
+                flushedPhase = pending.arrive();
+            }
+            pending.awaitAdvanceInterruptibly(flushedPhase, FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            flushedPhase = -1;
+        } catch (InterruptedException e) {
+            throw new TestInterruptException("Writing of the test artifacts has been interrupted", e);
+        } catch (TimeoutException e) {
+            logger.warn("{} test artifacts haven't been written in {} ms", pending.getUnarrivedParties(),
+                    FLUSH_TIMEOUT_MILLIS);
+        }
+        logger.info("Test artifacts: {} screenshots written, {} duplicates skipped", imageCount, duplicateCount);
+    }
+
+    private byte[] captureScreenshot(WebDriver webDriver) {
+        if (!(webDriver instanceof TakesScreenshot)) {
+            return null;
+        }
+        try {
+            return ((TakesScreenshot) webDriver).getScreenshotAs(OutputType.BYTES);
+        } catch (WebDriverException e) {
+            logger.warn("Screenshot cannot be taken: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String capturePageSource(WebDriver webDriver) {
+        try {
+            return webDriver.getPageSource();
+        } catch (WebDriverException e) {
+            return "Page source cannot be taken: " + e.getMessage();
+        }
+    }
+
+    private static String captureConsole(WebDriver webDriver) {
+        StringBuilder console = new StringBuilder();
+        try {
+            for (LogEntry entry : webDriver.manage().logs().get(LogType.BROWSER)) {
+                console.append(entry).append('\n');
+            }
+        } catch (WebDriverException e) {
+            console.append("Browser console cannot be read: ").append(e.getMessage());
+        } catch (UnsupportedOperationException e) {
+            console.append("The browser has no console log");
+        }
+        return console.toString();
+    }
+
+    private void submitText(final String text, final File file) {
+        submit(new Runnable() {
+            public void run() {
+                try {
+                    FileUtils.writeStringToFile(file, text, "UTF-8");
+                } catch (IOException e) {
+                    logger.warn("Cannot write " + file, e);
+                }
+            }
+        });
+    }
+
+    private void submit(final Runnable task) {
+        pending.register();
+        workers.execute(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Test artifact cannot be written", e);
+                } finally {
+                    pending.arriveAndDeregister();
+                }
+            }
+        });
+    }
+
+    private void writeImages(String hash, byte[] screenshot, File imageFile, File thumbnailFile) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(screenshot));
+            if (image == null) {
+                logger.warn("Screenshot has unknown format, it's saved as is to {}", imageFile);
+                FileUtils.writeByteArrayToFile(imageFile, screenshot);
+                return;
+            }
+            if (PNG.equals(imageFormat)) {
+                // the screenshots are already in PNG format
+                FileUtils.writeByteArrayToFile(imageFile, screenshot);
+            } else {
+                writeJpeg(toRgb(image, image.getWidth(), image.getHeight()), imageFile);
+            }
+            int width = Math.min(thumbnailWidth, image.getWidth());
+            int height = Math.max(image.getHeight() * width / image.getWidth(), 1);
+            writeJpeg(toRgb(image, width, height), thumbnailFile);
+        } catch (IOException | RuntimeException e) {
+            // the next failure with the same screen writes it again instead of pointing to the missing file
+            writtenImages.remove(hash);
+            logger.warn("Cannot write the screenshot " + imageFile, e);
+        }
+    }
+
+    /**
+     * Draws the image scaled to specified size without alpha channel, JPEG doesn't support it
+     */
+    private static BufferedImage toRgb(BufferedImage image, int width, int height) {
+        BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    private void writeJpeg(BufferedImage image, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("Cannot create " + parent + " folder");
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(JPEG).next();
+        ImageOutputStream output = ImageIO.createImageOutputStream(file);
+        try {
+            ImageWriteParam parameters = writer.getDefaultWriteParam();
+            parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parameters.setCompressionQuality(jpegQuality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), parameters);
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+
+    /**
+     * Names of the captured artifact files, null if the artifact hasn't been captured
+     */
+    public static class Artifacts {
+        private String image;
+        private String thumbnail;
+        private String pageSource;
+        private String console;
+
+        public String getImage() {
+            return image;
+        }
+
+        public String getThumbnail() {
+            return thumbnail;
+        }
+
+        public String getPageSource() {
+            return pageSource;
+        }
+
+        public String getConsole() {
+            return console;
+        }
+
+        /**
+         * Returns html code with the links to the artifacts
+         *
+         * @param path path to the artifacts folder relative to the report
+         * @return html code
+         */
+        public String toHtml(String path) {
+            StringBuilder html = new StringBuilder();
+            if (image != null) {
+                html.append("<a href=\"").append(path).append(image).append("\"> <img src=\"")
+                        .append(path).append(thumbnail).append("\" width='320px'></a>");
+            }
+            if (pageSource != null) {
+                html.append(" <a href=\"").append(path).append(pageSource).append("\">page source</a>");
+            }
+            if (console != null) {
+                html.append(" <a href=\"").append(path).append(console).append("\">console</a>");
+            }
+            return html.toString();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.template.autoqa.core.reporting;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+
+/**
+ * Append-only log of test results, one JSON object per line. Every line is flushed when the test finishes,
+ * so the log of a crashed run is complete up to the last finished test; a torn last line is skipped on reading.
+ */
+public class ResultLog {
+    private static final Logger logger = LoggerFactory.getLogger(ResultLog.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    public static final String EXTENSION = ".jsonl";
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    private final File file;
+    private Writer writer;
+    private Thread shutdownHook;
+
+    /**
+     * Creates the log, the previous log in the file is overwritten. The folder is created if needed
+     *
+     * @param file log file
+     */
+    public ResultLog(File file) {
+        this.file = file;
+        File folder = file.getAbsoluteFile().getParentFile();
+        if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+            logger.warn("Cannot create {} folder, the test results aren't logged", folder);
+            return;
+        }
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Cannot open " + file + ", the test results aren't logged", e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    Thread getShutdownHook() {
+        return shutdownHook;
+    }
+
+    void setShutdownHook(Thread shutdownHook) {
+        this.shutdownHook = shutdownHook;
+    }
+
+    /**
+     * Appends the result to the log
+     *
+     * @param result finished test
+     */
+    public void write(ITestResult result) {
+        String line;
+        try {
+            line = toJson(result);
+        } catch (IOException e) {
+            logger.warn("Cannot serialize the result of " + result.getName(), e);
+            return;
+        }
+        write(line);
+    }
+
+    /**
+     * Appends the result serialized by {@link #toJson(ITestResult)}, e.g. received from another process
+     *
+     * @param line JSON object without line breaks
+     */
+    public void write(String line) {
+        synchronized (this) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                logger.warn("Cannot write to " + file + ", the test results aren't logged anymore", e);
+                close();
+            }
+        }
+    }
+
+    public synchronized void close() {
+        IOUtils.closeQuietly(writer);
+        writer = null;
+    }
+
+    /**
+     * Serializes the result to one line of the log
+     *
+     * @param result finished test
+     * @return JSON object without line breaks
+     */
+    public static String toJson(ITestResult result) throws IOException {
+        StringWriter line = new StringWriter();
+        JsonGenerator generator = jsonFactory.createGenerator(line);
+        generator.writeStartObject();
+        generator.writeStringField("status", toStatus(result.getStatus()));
+        generator.writeStringField("test", result.getTestClass().getXmlTest().getName());
+        generator.writeStringField("class", result.getTestClass().getName());
+        generator.writeStringField("method", result.getMethod().getMethodName());
+        Object[] parameters = result.getParameters();
+        if (parameters != null && parameters.length > 0) {
+            generator.writeStringField("parameters", toString(parameters));
+        }
+        generator.writeNumberField("start", result.getStartMillis());
+        generator.writeNumberField("end", result.getEndMillis());
+        generator.writeStringField("thread", Thread.currentThread().getName());
+        Throwable throwable = result.getThrowable();
+        if (throwable != null) {
+            StringWriter stackTrace = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(stackTrace));
+            generator.writeStringField("exception", throwable.getClass().getName());
+            generator.writeStringField("message", String.valueOf(throwable.getMessage()));
+            generator.writeStringField("stackTrace", stackTrace.toString());
+        }
+        StringBuilder output = new StringBuilder();
+        for (String outputLine : Reporter.getOutput(result)) {
+            output.append(outputLine).append('\n');
+        }
+        if (output.length() > 0) {
+            generator.writeStringField("output", output.toString());
+        }
+        generator.writeEndObject();
+        generator.close();
+        return line.toString();
+    }
+
+    /**
+     * Serializes a result which hasn't come from TestNG, e.g. a test lost with the process running it
+     *
+     * @return JSON object without line breaks
+     */
+    public static String toJson(String status, String testName, String className, String methodName,
+                                long startMillis, long endMillis, String threadName, String message) {
+        try {
+            StringWriter line = new StringWriter();
+            JsonGenerator generator = jsonFactory.createGenerator(line);
+            generator.writeStartObject();
+            generator.writeStringField("status", status);
+            generator.writeStringField("test", testName);
+            generator.writeStringField("class", className);
+            generator.writeStringField("method", methodName);
+            generator.writeNumberField("start", startMillis);
+            generator.writeNumberField("end", endMillis);
+            generator.writeStringField("thread", threadName);
+            if (message != null) {
+                generator.writeStringField("message", message);
+            }
+            generator.writeEndObject();
+            generator.close();
+            return line.toString();
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot serialize the result of " + className, e);
+        }
+    }
+
+    private static String toStatus(int status) {
+        switch (status) {
+            case ITestResult.FAILURE:
+                return ResultRecord.FAIL;
+            case ITestResult.SKIP:
+                return ResultRecord.SKIP;
+            default:
+                return ResultRecord.PASS;
+        }
+    }
+
+    private static String toString(Object[] parameters) {
+        StringBuilder text = new StringBuilder();
+        for (Object parameter : parameters) {
+            String value = String.valueOf(parameter);
+            if (value.length() > MAX_PARAMETER_LENGTH) {
+                value = value.substring(0, MAX_PARAMETER_LENGTH) + "...";
+            }
+            text.append(text.length() == 0 ? "" : ", ").append(value);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads the log line by line, only one record is kept in memory
+     *
+     * @param file    log file
+     * @param handler receives the records in the order they have been written
+     * @return number of the skipped malformed lines
+     */
+    public static int read(File file, Consumer<ResultRecord> handler) {
+        int malformed = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                ResultRecord record;
+                try {
+                    record = parse(line);
+                } catch (JsonParseException e) {
+                    malformed++;
+                    continue;
+                }
+                handler.accept(record);
+            }
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot read " + file, e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        if (malformed > 0) {
+            logger.warn("{} malformed lines are skipped in {}", malformed, file);
+        }
+        return malformed;
+    }
+
+    /**
+     * Parses one line of the log
+     *
+     * @param line result written by {@link #write(String)}
+     * @return the record
+     * @throws JsonParseException if the line isn't a result
+     */
+    public static ResultRecord parse(String line) throws IOException {
+        JsonParser parser = jsonFactory.createParser(line);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Result must be an object", parser.getCurrentLocation());
+            }
+            Map<String, String> fields = new HashMap<String, String>();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                fields.put(name, parser.getText());
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw new JsonParseException("Result isn't complete", parser.getCurrentLocation());
+            }
+            return new ResultRecord(fields);
+        } finally {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.template.autoqa.core.reporting;
+
+import java.util.Map;
+
+
+/**
+ * One test result read from {@link ResultLog}
+ */
+public class ResultRecord {
+    public static final String PASS = "PASS";
+    public static final String FAIL = "FAIL";
+    public static final String SKIP = "SKIP";
+
+    private final String status;
+    private final String testName;
+    private final String className;
+    private final String methodName;
+    private final String parameters;
+    private final long startMillis;
+    private final long endMillis;
+    private final String threadName;
+    private final String exceptionClass;
+    private final String message;
+    private final String stackTrace;
+    private final String output;
+
+    ResultRecord(Map<String, String> fields) {
+        status = fields.get("status");
+        testName = fields.get("test");
+        className = fields.get("class");
+        methodName = fields.get("method");
+        parameters = fields.get("parameters");
+        startMillis = toLong(fields.get("start"));
+        endMillis = toLong(fields.get("end"));
+        threadName = fields.get("thread");
+        exceptionClass = fields.get("exception");
+        message = fields.get("message");
+        stackTrace = fields.get("stackTrace");
+        output = fields.get("output");
+    }
+
+    private static long toLong(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isPassed() {
+        return PASS.equals(status);
+    }
+
+    public boolean isFailed() {
+        return FAIL.equals(status);
+    }
+
+    public boolean isSkipped() {
+        return SKIP.equals(status);
+    }
+
+    public String getTestName() {
+        return testName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Returns the parameters of data-driven test joined by comma, null if the test has no parameters
+     */
+    public String getParameters() {
+        return parameters;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    public long getDurationMillis() {
+        return endMillis - startMillis;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Returns the class of the exception thrown by the test, null if there is no exception
+     */
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getStackTrace() {
+        return stackTrace;
+    }
+
+    /**
+     * Returns the lines logged by {@link org.testng.Reporter#log} during the test, null if there are none
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s.%s(%s)", status, className, methodName, parameters == null ? "" : parameters);
+    }
+}
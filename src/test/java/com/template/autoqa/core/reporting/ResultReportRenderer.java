@@ -0,0 +1,244 @@
+package com.template.autoqa.core.reporting;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Renders the html report and the JUnit XML report of a {@link ResultLog}. The log is read twice: the first pass
+ * counts the results per test class, the second one streams the results to the reports. Only the counters are
+ * kept in memory, so the memory doesn't depend on the number of tests.
+ * <br/>The html report lists the failed and skipped tests with their output, the passed tests are only counted.
+ */
+public class ResultReportRenderer {
+    private static final Logger logger = LoggerFactory.getLogger(ResultReportRenderer.class);
+
+    private static final String INVALID_XML_CHARACTERS = "[\\x00-\\x08\\x0B\\x0C\\x0E-\\x1F]";
+
+    private ResultReportRenderer() {
+        // do nothing
+    }
+
+    /**
+     * Renders the reports of the logs specified as arguments, e.g. of a crashed run
+     */
+    public static void main(String[] args) {
+        for (String path : args) {
+            render(new File(path));
+        }
+    }
+
+    /**
+     * Renders {@code <name>.html} and {@code TEST-<name>.xml} reports next to {@code <name>.jsonl} log
+     *
+     * @param log result log
+     */
+    public static void render(File log) {
+        String name = log.getName().endsWith(ResultLog.EXTENSION)
+                ? log.getName().substring(0, log.getName().length() - ResultLog.EXTENSION.length())
+                : log.getName();
+        File folder = log.getAbsoluteFile().getParentFile();
+        File html = new File(folder, name + ".html");
+        File junit = new File(folder, "TEST-" + name + ".xml");
+
+        final Summary summary = new Summary();
+        summary.malformed = ResultLog.read(log, record -> summary.add(record));
+
+        final Writer htmlWriter = open(html);
+        final Writer junitWriter = open(junit);
+        try {
+            writeHtmlHeader(htmlWriter, name, summary);
+            writeJunitHeader(junitWriter, name, summary);
+            final IOException[] error = new IOException[1];
+            ResultLog.read(log, record -> {
+                if (error[0] == null) {
+                    try {
+                        writeHtmlRecord(htmlWriter, record);
+                        writeJunitRecord(junitWriter, record);
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+            htmlWriter.write("</table>\n</body>\n</html>\n");
+            junitWriter.write("</testsuite>\n");
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot render the report of " + log, e);
+        } finally {
+            IOUtils.closeQuietly(htmlWriter);
+            IOUtils.closeQuietly(junitWriter);
+        }
+        logger.info("Report of {} tests is rendered to {}", summary.total.getTotal(), html);
+    }
+
+    private static Writer open(File file) {
+        try {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot create " + file, e);
+        }
+    }
+
+    private static void writeHtmlHeader(Writer writer, String name, Summary summary) throws IOException {
+        writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>");
+        writer.write(html(name));
+        writer.write("</title>\n<style>\n"
+                + "body {font-family: sans-serif; font-size: 13px}\n"
+                + "table {border-collapse: collapse; margin-bottom: 20px}\n"
+                + "td, th {border: 1px solid #ccc; padding: 3px 6px; text-align: left; vertical-align: top}\n"
+                + ".FAIL {color: #c00} .SKIP {color: #c80} .PASS {color: #080}\n"
+                + "pre {margin: 0; white-space: pre-wrap}\n"
+                + "</style>\n</head>\n<body>\n");
+        writer.write(String.format("<h1>%s</h1>\n<p>%s - %s, %s</p>\n", html(name),
+                formatTime(summary.startMillis), formatTime(summary.endMillis), summary.total));
+        if (summary.malformed > 0) {
+            writer.write(String.format("<p class=\"FAIL\">%s results are malformed, the run may have crashed</p>\n",
+                    summary.malformed));
+        }
+        writer.write("<table>\n<tr><th>Class</th><th>Passed</th><th>Failed</th><th>Skipped</th><th>Time, s</th></tr>\n");
+        for (Map.Entry<String, Counts> entry : summary.classes.entrySet()) {
+            Counts counts = entry.getValue();
+            writer.write(String.format(Locale.ROOT, "<tr><td class=\"%s\">%s</td><td>%s</td><td>%s</td><td>%s</td><td>%.3f</td></tr>\n",
+                    counts.failed > 0 ? ResultRecord.FAIL : counts.skipped > 0 ? ResultRecord.SKIP : ResultRecord.PASS,
+                    html(entry.getKey()), counts.passed, counts.failed, counts.skipped, counts.durationMillis / 1000.0));
+        }
+        writer.write("</table>\n<h2>Failed and skipped tests</h2>\n<table>\n"
+                + "<tr><th>Status</th><th>Test</th><th>Time, s</th><th>Details</th></tr>\n");
+    }
+
+    private static void writeHtmlRecord(Writer writer, ResultRecord record) throws IOException {
+        if (record.isPassed()) {
+            return;
+        }
+        writer.write(String.format(Locale.ROOT, "<tr><td class=\"%s\">%s</td><td>%s<br/>%s%s</td><td>%.3f</td><td>",
+                record.getStatus(), record.getStatus(), html(record.getClassName()), html(record.getMethodName()),
+                record.getParameters() == null ? "" : "(" + html(record.getParameters()) + ")",
+                record.getDurationMillis() / 1000.0));
+        if (record.getStackTrace() != null) {
+            writer.write("<pre>");
+            writer.write(html(record.getStackTrace()));
+            writer.write("</pre>");
+        }
+        if (record.getOutput() != null) {
+            // the output is html code logged by the tests, e.g. the links to the screenshots
+            writer.write(record.getOutput());
+        }
+        writer.write("</td></tr>\n");
+    }
+
+    private static void writeJunitHeader(Writer writer, String name, Summary summary) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write(String.format(Locale.ROOT, "<testsuite name=\"%s\" tests=\"%s\" failures=\"%s\" errors=\"0\" skipped=\"%s\""
+                        + " time=\"%.3f\" timestamp=\"%s\">\n",
+                xml(name), summary.total.getTotal(), summary.total.failed, summary.total.skipped,
+                (summary.endMillis - summary.startMillis) / 1000.0,
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date(summary.startMillis))));
+    }
+
+    private static void writeJunitRecord(Writer writer, ResultRecord record) throws IOException {
+        String testName = record.getMethodName()
+                + (record.getParameters() == null ? "" : "(" + record.getParameters() + ")");
+        writer.write(String.format(Locale.ROOT, "  <testcase classname=\"%s\" name=\"%s\" time=\"%.3f\"",
+                xml(record.getClassName()), xml(testName), record.getDurationMillis() / 1000.0));
+        if (record.isPassed() && record.getOutput() == null) {
+            writer.write("/>\n");
+            return;
+        }
+        writer.write(">\n");
+        if (record.isFailed()) {
+            writer.write(String.format("    <failure type=\"%s\" message=\"%s\">%s</failure>\n",
+                    xml(record.getExceptionClass()), xml(record.getMessage()), xml(record.getStackTrace())));
+        } else if (record.isSkipped()) {
+            writer.write(record.getMessage() == null
+                    ? "    <skipped/>\n"
+                    : String.format("    <skipped message=\"%s\"/>\n", xml(record.getMessage())));
+        }
+        if (record.getOutput() != null) {
+            writer.write(String.format("    <system-out>%s</system-out>\n", xml(record.getOutput())));
+        }
+        writer.write("  </testcase>\n");
+    }
+
+    private static String html(String text) {
+        return StringEscapeUtils.escapeHtml4(text);
+    }
+
+    private static String xml(String text) {
+        return text == null ? "" : StringEscapeUtils.escapeXml(text.replaceAll(INVALID_XML_CHARACTERS, ""));
+    }
+
+    private static String formatTime(long millis) {
+        return millis == 0 ? "?" : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(millis));
+    }
+
+    /**
+     * Counters of the first pass
+     */
+    private static class Summary {
+        private final Counts total = new Counts();
+        private final Map<String, Counts> classes = new TreeMap<String, Counts>();
+        private long startMillis;
+        private long endMillis;
+        private int malformed;
+
+        private void add(ResultRecord record) {
+            total.add(record);
+            Counts counts = classes.get(record.getClassName());
+            if (counts == null) {
+                counts = new Counts();
+                classes.put(record.getClassName(), counts);
+            }
+            counts.add(record);
+            if (startMillis == 0 || record.getStartMillis() < startMillis) {
+                startMillis = record.getStartMillis();
+            }
+            endMillis = Math.max(endMillis, record.getEndMillis());
+        }
+    }
+
+    private static class Counts {
+        private int passed;
+        private int failed;
+        private int skipped;
+        private long durationMillis;
+
+        private void add(ResultRecord record) {
+            if (record.isFailed()) {
+                failed++;
+            } else if (record.isSkipped()) {
+                skipped++;
+            } else {
+                passed++;
+            }
+            durationMillis += record.getDurationMillis();
+        }
+
+        private int getTotal() {
+            return passed + failed + skipped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s tests: %s passed, %s failed, %s skipped", getTotal(), passed, failed, skipped);
+        }
+    }
+}
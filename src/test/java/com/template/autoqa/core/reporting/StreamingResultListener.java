@@ -0,0 +1,106 @@
+package com.template.autoqa.core.reporting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestResult;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * TestNG listener writing every finished test to {@code <output>/streaming/<suite>.jsonl} at once, see
+ * {@link ResultLog}. Unlike the default reporters it keeps nothing in memory, the html and JUnit reports are
+ * rendered from the log by {@link ResultReportRenderer} when the suite finishes, or when the JVM shuts down
+ * in the middle of the suite.
+ * <br/>A report of a crashed run can be rendered from its log with
+ * {@code java ... com.template.autoqa.core.reporting.ResultReportRenderer <suite>.jsonl}
+ */
+public class StreamingResultListener implements ISuiteListener, ITestListener {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingResultListener.class);
+
+    public static final String FOLDER = "streaming";
+
+    private final Map<String, ResultLog> logs = new HashMap<String, ResultLog>();
+
+    public void onStart(ISuite suite) {
+        File folder = new File(new File(suite.getOutputDirectory()).getParentFile(), FOLDER);
+        final ResultLog log = new ResultLog(new File(folder, suite.getName() + ResultLog.EXTENSION));
+        final Thread renderer = new Thread("streaming-report-" + suite.getName()) {
+            @Override
+            public void run() {
+                // the suite hasn't finished, leave the partial report
+                close(log);
+            }
+        };
+        log.setShutdownHook(renderer);
+        Runtime.getRuntime().addShutdownHook(renderer);
+        synchronized (logs) {
+            logs.put(suite.getName(), log);
+        }
+        logger.info("Test results of '{}' suite are written to {}", suite.getName(), log.getFile());
+    }
+
+    public void onFinish(ISuite suite) {
+        ResultLog log;
+        synchronized (logs) {
+            log = logs.remove(suite.getName());
+        }
+        if (log != null) {
+            Runtime.getRuntime().removeShutdownHook(log.getShutdownHook());
+            close(log);
+        }
+    }
+
+    public void onTestSuccess(ITestResult result) {
+        write(result);
+    }
+
+    public void onTestFailure(ITestResult result) {
+        write(result);
+    }
+
+    public void onTestSkipped(ITestResult result) {
+        write(result);
+    }
+
+    public void onTestFailedButWithinSuccessPercentage(ITestResult result) {
+        write(result);
+    }
+
+    public void onTestStart(ITestResult result) {
+        // do nothing
+    }
+
+    public void onStart(ITestContext context) {
+        // do nothing
+    }
+
+    public void onFinish(ITestContext context) {
+        // do nothing
+    }
+
+    private void write(ITestResult result) {
+        ResultLog log;
+        synchronized (logs) {
+            log = logs.get(result.getTestClass().getXmlTest().getSuite().getName());
+        }
+        if (log != null) {
+            log.write(result);
+        }
+    }
+
+    private static void close(ResultLog log) {
+        log.close();
+        try {
+            ResultReportRenderer.render(log.getFile());
+        } catch (RuntimeException e) {
+            logger.warn("Report cannot be rendered from " + log.getFile(), e);
+        }
+    }
+}
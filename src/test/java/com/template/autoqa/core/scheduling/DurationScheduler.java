@@ -0,0 +1,204 @@
+package com.template.autoqa.core.scheduling;
+
+import com.template.autoqa.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ISuiteResult;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * TestNG listener ordering the test classes by their durations in the previous runs, see {@link TestHistory}.
+ * The classes which have failed in their latest run go first for fast feedback, the rest go longest first,
+ * so with {@code parallel="classes"} the free threads take the short classes at the tail of the run instead of
+ * waiting for a slow class started last. The methods of a class keep their order. With {@code parallel="methods"}
+ * the methods are ordered one by one.
+ * <br/>The durations include the class and method level configuration methods and are saved when a suite
+ * finishes; the unknown classes are expected to take the average of the known ones. The duration of every
+ * {@code <test>} of the suite is logged against its lower bound: the longest class or the work split evenly
+ * between the threads, whichever is longer.
+ * <br/>Turned on by {@code scheduler_enabled = true}; {@code scheduler_failed_first = false} orders
+ * the failed classes by their durations as well
+ */
+public class DurationScheduler implements IMethodInterceptor, IInvokedMethodListener, ISuiteListener {
+    private static final Logger logger = LoggerFactory.getLogger(DurationScheduler.class);
+
+    public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+        if (!isEnabled() || methods.size() < 2) {
+            return methods;
+        }
+        TestHistory history = TestHistory.getInstance();
+        boolean isByMethod = isParallelByMethod(context.getCurrentXmlTest());
+        Map<String, Group> groups = new LinkedHashMap<String, Group>();
+        for (IMethodInstance method : methods) {
+            String className = method.getMethod().getRealClass().getName();
+            String key = isByMethod ? className + "." + method.getMethod().getMethodName() : className;
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(groups.size());
+                if (isByMethod) {
+                    String methodName = method.getMethod().getMethodName();
+                    group.expectedMillis = history.getExpectedMillis(className, methodName);
+                    group.isKnown = group.expectedMillis > 0;
+                    group.isFailed = history.hasFailed(className, methodName);
+                } else {
+                    group.expectedMillis = history.getExpectedMillis(className);
+                    group.isKnown = history.contains(className);
+                    group.isFailed = history.hasFailed(className);
+                }
+                groups.put(key, group);
+            }
+            group.methods.add(method);
+        }
+        List<Group> ordered = new ArrayList<Group>(groups.values());
+        estimateUnknown(ordered);
+        final boolean isFailedFirst = Config.getInstance().getBoolean("scheduler_failed_first", true);
+        Collections.sort(ordered, new Comparator<Group>() {
+            public int compare(Group first, Group second) {
+                if (isFailedFirst && first.isFailed != second.isFailed) {
+                    return first.isFailed ? -1 : 1;
+                }
+                if (first.expectedMillis != second.expectedMillis) {
+                    return Long.compare(second.expectedMillis, first.expectedMillis);
+                }
+                return Integer.compare(first.index, second.index);
+            }
+        });
+        List<IMethodInstance> result = new ArrayList<IMethodInstance>(methods.size());
+        for (Group group : ordered) {
+            result.addAll(group.methods);
+        }
+        if (logger.isDebugEnabled()) {
+            List<String> order = new ArrayList<String>();
+            for (Map.Entry<String, Group> group : groups.entrySet()) {
+                order.add(ordered.indexOf(group.getValue()) + ": " + group.getKey() + " "
+                        + group.getValue().expectedMillis + " ms" + (group.getValue().isFailed ? ", failed" : ""));
+            }
+            logger.debug("Order of '{}' test: {}", context.getName(), order);
+        }
+        return result;
+    }
+
+    public void beforeInvocation(IInvokedMethod method, ITestResult result) {
+        // do nothing
+    }
+
+    public void afterInvocation(IInvokedMethod method, ITestResult result) {
+        ITestNGMethod testMethod = method.getTestMethod();
+        if (!isEnabled() || result.getTestClass() == null || !(method.isTestMethod()
+                || testMethod.isBeforeClassConfiguration() || testMethod.isAfterClassConfiguration()
+                || testMethod.isBeforeMethodConfiguration() || testMethod.isAfterMethodConfiguration())) {
+            return;
+        }
+        // the results of the configuration methods have no end time yet, the invocation is timed from its start
+        long millis = result.getEndMillis() > result.getStartMillis()
+                ? result.getEndMillis() - result.getStartMillis()
+                : System.currentTimeMillis() - method.getDate();
+        TestHistory.getInstance().record(result.getTestClass().getRealClass().getName(), testMethod.getMethodName(),
+                Math.max(millis, 0), result.getStatus() == ITestResult.FAILURE);
+    }
+
+    public void onStart(ISuite suite) {
+        // do nothing
+    }
+
+    public void onFinish(ISuite suite) {
+        if (!isEnabled()) {
+            return;
+        }
+        TestHistory history = TestHistory.getInstance();
+        for (ISuiteResult result : suite.getResults().values()) {
+            ITestContext context = result.getTestContext();
+            XmlTest test = context.getCurrentXmlTest();
+            Set<String> classes = new HashSet<String>();
+            for (ITestNGMethod method : context.getAllTestMethods()) {
+                classes.add(method.getRealClass().getName());
+            }
+            long total = 0;
+            long longest = 0;
+            for (String className : classes) {
+                long millis = history.getCurrentMillis(className);
+                total += millis;
+                longest = Math.max(longest, millis);
+            }
+            int threads = isParallel(test) ? Math.max(test.getThreadCount(), 1) : 1;
+            long bound = Math.max(isParallelByMethod(test) ? 0 : longest, (total + threads - 1) / threads);
+            if (context.getStartDate() != null && context.getEndDate() != null) {
+                logger.info("Test '{}' has taken {} ms, its lower bound is {} ms ({} ms of {} classes on {} threads)",
+                        context.getName(), context.getEndDate().getTime() - context.getStartDate().getTime(),
+                        bound, total, classes.size(), threads);
+            }
+        }
+        history.save();
+    }
+
+    /**
+     * Expects the unknown groups to take the average of the known ones
+     */
+    private static void estimateUnknown(List<Group> groups) {
+        long total = 0;
+        int known = 0;
+        for (Group group : groups) {
+            if (group.isKnown) {
+                total += group.expectedMillis;
+                known++;
+            }
+        }
+        if (known > 0) {
+            for (Group group : groups) {
+                if (!group.isKnown) {
+                    group.expectedMillis = total / known;
+                }
+            }
+        }
+    }
+
+    private static boolean isParallel(XmlTest test) {
+        String parallel = test.getParallel();
+        return parallel != null && !parallel.isEmpty() && !XmlSuite.PARALLEL_NONE.equalsIgnoreCase(parallel)
+                && !"false".equalsIgnoreCase(parallel);
+    }
+
+    private static boolean isParallelByMethod(XmlTest test) {
+        String parallel = test.getParallel();
+        return XmlSuite.PARALLEL_METHODS.equalsIgnoreCase(parallel) || "true".equalsIgnoreCase(parallel);
+    }
+
+    private static boolean isEnabled() {
+        return Config.getInstance().getBoolean("scheduler_enabled", false);
+    }
+
+    /**
+     * Methods of a class, or a single method when the methods are run in parallel
+     */
+    private static class Group {
+        private final int index;
+        private final List<IMethodInstance> methods = new ArrayList<IMethodInstance>();
+        private long expectedMillis;
+        private boolean isKnown;
+        private boolean isFailed;
+
+        private Group(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.template.autoqa.core.scheduling;
+
+import com.template.autoqa.utils.Config;
+import com.template.autoqa.utils.GeneralUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Durations and statuses of the test and the class level configuration methods in the previous runs, kept in
+ * {@code scheduler_history_file}, one {@code class <tab> method <tab> milliseconds <tab> pass|fail} line per method.
+ * A relative path is resolved against the project folder, so the history survives a clean build.
+ * <br/>The history is shared by {@link DurationScheduler}, which orders the classes of a TestNG run, and
+ * the distributed {@code Coordinator}, which sizes the shards; each of them records the methods it has run.
+ * The durations of a run are collected in memory and merged into the file when the run finishes; the stored
+ * duration is the average of the previous one and the latest one, so a single slow run doesn't reshape the order
+ */
+public class TestHistory {
+    private static final Logger logger = LoggerFactory.getLogger(TestHistory.class);
+
+    private static final String DEFAULT_FILE = ".autoqa/test-durations.tsv";
+    private static final String PASS = "pass";
+    private static final String FAIL = "fail";
+
+    private static TestHistory instance;
+
+    private final Path file;
+    private final Map<String, Map<String, Entry>> stored = new TreeMap<String, Map<String, Entry>>();
+    private final Map<String, Map<String, Entry>> current = new HashMap<String, Map<String, Entry>>();
+
+    TestHistory(Path file) {
+        this.file = file;
+        if (Files.exists(file)) {
+            try {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 4) {
+                        try {
+                            get(stored, fields[0]).put(fields[1],
+                                    new Entry(Long.parseLong(fields[2]), FAIL.equals(fields[3])));
+                        } catch (NumberFormatException e) {
+                            // skip the broken line
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Test durations cannot be read from {}: {}", file, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Returns the history of {@code scheduler_history_file}
+     */
+    public static synchronized TestHistory getInstance() {
+        if (instance == null) {
+            String file = Config.getInstance().get("scheduler_history_file").trim();
+            instance = new TestHistory(GeneralUtils.getProjectFile(file.isEmpty() ? DEFAULT_FILE : file).toPath());
+        }
+        return instance;
+    }
+
+    /**
+     * Adds an invocation of the method in this run, the invocations of a method are summed up
+     */
+    public synchronized void record(String className, String methodName, long millis, boolean isFailed) {
+        Map<String, Entry> methods = get(current, className);
+        Entry entry = methods.get(methodName);
+        if (entry == null) {
+            methods.put(methodName, new Entry(millis, isFailed));
+        } else {
+            entry.millis += millis;
+            entry.isFailed |= isFailed;
+        }
+    }
+
+    /**
+     * Returns true if the class is known from the previous runs
+     */
+    public synchronized boolean contains(String className) {
+        return stored.containsKey(className);
+    }
+
+    /**
+     * Returns the duration of the class in the previous runs, the sum of its methods
+     */
+    public synchronized long getExpectedMillis(String className) {
+        return sum(stored.get(className));
+    }
+
+    /**
+     * Returns the average duration of the classes known from the previous runs, 0 if no class is known
+     */
+    public synchronized long getAverageMillis() {
+        long total = 0;
+        for (Map<String, Entry> methods : stored.values()) {
+            total += sum(methods);
+        }
+        return stored.isEmpty() ? 0 : total / stored.size();
+    }
+
+    /**
+     * Returns the duration of the method in the previous runs, 0 if it's unknown
+     */
+    synchronized long getExpectedMillis(String className, String methodName) {
+        Map<String, Entry> methods = stored.get(className);
+        Entry entry = methods == null ? null : methods.get(methodName);
+        return entry == null ? 0 : entry.millis;
+    }
+
+    /**
+     * Returns true if a method of the class has failed in the latest run of the class
+     */
+    synchronized boolean hasFailed(String className) {
+        Map<String, Entry> methods = stored.get(className);
+        if (methods != null) {
+            for (Entry entry : methods.values()) {
+                if (entry.isFailed) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the method has failed in its latest run
+     */
+    synchronized boolean hasFailed(String className, String methodName) {
+        Map<String, Entry> methods = stored.get(className);
+        Entry entry = methods == null ? null : methods.get(methodName);
+        return entry != null && entry.isFailed;
+    }
+
+    /**
+     * Returns the duration of the class in this run, 0 if it hasn't run yet
+     */
+    synchronized long getCurrentMillis(String className) {
+        return sum(current.get(className));
+    }
+
+    /**
+     * Merges the durations of this run into the stored ones and writes them to the file
+     */
+    public synchronized void save() {
+        for (Map.Entry<String, Map<String, Entry>> methods : current.entrySet()) {
+            Map<String, Entry> known = get(stored, methods.getKey());
+            for (Map.Entry<String, Entry> method : methods.getValue().entrySet()) {
+                Entry latest = method.getValue();
+                Entry previous = known.get(method.getKey());
+                known.put(method.getKey(), new Entry(
+                        previous == null ? latest.millis : (previous.millis + latest.millis) / 2, latest.isFailed));
+            }
+        }
+        current.clear();
+        // a temporary file is moved over the old one, so a crash doesn't leave a half written history
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Map<String, Entry>> methods : stored.entrySet()) {
+                    for (Map.Entry<String, Entry> method : methods.getValue().entrySet()) {
+                        writer.write(methods.getKey() + "\t" + method.getKey() + "\t" + method.getValue().millis
+                                + "\t" + (method.getValue().isFailed ? FAIL : PASS) + "\n");
+                    }
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Test durations cannot be written to {}: {}", file, e.toString());
+        }
+    }
+
+    private static Map<String, Entry> get(Map<String, Map<String, Entry>> classes, String className) {
+        Map<String, Entry> methods = classes.get(className);
+        if (methods == null) {
+            methods = new TreeMap<String, Entry>();
+            classes.put(className, methods);
+        }
+        return methods;
+    }
+
+    private static long sum(Map<String, Entry> methods) {
+        long total = 0;
+        if (methods != null) {
+            for (Entry entry : methods.values()) {
+                total += entry.millis;
+            }
+        }
+        return total;
+    }
+
+    private static class Entry {
+        private long millis;
+        private boolean isFailed;
+
+        private Entry(long millis, boolean isFailed) {
+            this.millis = millis;
+            this.isFailed = isFailed;
+        }
+    }
+}
@@ -1,24 +1,23 @@
 package com.template.autoqa.core.web.elements;
 
 import com.velti.template.core.exceptions.TestInterruptException;
+import com.velti.template.core.metrics.Operation;
+import com.velti.template.core.metrics.OperationMetrics;
 import com.velti.template.core.web.selenium.BaseWebDriver;
-import com.velti.template.utils.GeneralUtils;
+import com.velti.template.core.web.selenium.WaitEngine;
 import org.openqa.selenium.*;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 
 public class BaseWebElement implements WebElement {
 
-    private final int TIMEOUT_WAIT_FOR_VISIBILITY = 5;
-    private final int TIMEOUT_WAIT_FOR_ENABLE = 5;
-    private final int TIMEOUT_WAIT_FOR_TEXT = 5;
-    private final int TIMEOUT_WAIT_FOR_PRESENCE = 20;
-
     private final Logger logger = LoggerFactory.getLogger(BaseWebElement.class);
 
     private BaseWebDriver webDriver;
@@ -26,8 +25,20 @@ public class BaseWebElement implements WebElement {
     private By locator;
 
     private int elementIndex = 0;
+    private long waitTimeoutMillis = -1;
     private BaseWebElement parentElement;
 
+    // the found element is reused until the page state of the driver changes or the element gets stale
+    private long elementEpoch = -1;
+    private WebElement elementParent;
+
+    // set for the items of BaseWebElementList, they take their elements from the list
+    private BaseWebElementList list;
+    private List<WebElement> elementSource;
+
+    // the name of the element in the operation metrics, built once
+    private String metricKey;
+
     /**
      * Default constructor
      */
@@ -74,6 +85,33 @@ public class BaseWebElement implements WebElement {
         this.webDriver = webDriver;
     }
 
+    /**
+     * Creates an item of the list
+     *
+     * @param list  the list
+     * @param index index in the list
+     */
+    BaseWebElement(BaseWebElementList list, int index) {
+        this.list = list;
+        this.webDriver = list.getWebDriver();
+        this.locator = list.getLocator();
+        this.parentElement = list.getParentElement();
+        elementIndex = index;
+    }
+
+    /**
+     * Sets the timeout of all the waits of this element instead of the default ones from {@link WaitEngine}
+     *
+     * @param waitTimeoutMillis timeout in milliseconds
+     */
+    public void setWaitTimeout(long waitTimeoutMillis) {
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    private long getWaitTimeout(String kind) {
+        return waitTimeoutMillis >= 0 ? waitTimeoutMillis : WaitEngine.getTimeoutMillis(kind);
+    }
+
     /**
      * Returns the web element.
      * An exception will be thrown if there is no appropriate element
@@ -81,16 +119,156 @@ public class BaseWebElement implements WebElement {
      * @return found element
      */
     private WebElement getElement() {
-        waitForPresence();
+        // wait for ajax request finishes
+        webDriver.sync();
+        return resolve();
+    }
+
+    /**
+     * Returns the cached element if it's still valid or looks it up again and waits for it to get visible.
+     * The page must be already synchronized
+     *
+     * @return found element
+     */
+    WebElement resolve() {
+        return resolve(true);
+    }
+
+    private WebElement resolve(boolean isVisibilityAwaited) {
+        if (isCached()) {
+            return element;
+        }
+        waitFor(true, true);
 
         if (element == null) {
             throw new TestInterruptException(
                     String.format("There is no web element with '%s' locator and '%s' index", locator, elementIndex));
         }
-        waitForVisibility();
+        if (isVisibilityAwaited) {
+            waitForVisibility();
+        }
         return element;
     }
 
+    private boolean isCached() {
+        if (element == null || elementEpoch != webDriver.getEpoch() || isStateDependent(locator)) {
+            return false;
+        }
+        if (list != null) {
+            return list.isCurrent(elementSource);
+        }
+        return parentElement == null || (parentElement.getCachedElement() == elementParent);
+    }
+
+    /**
+     * Returns the found element if it's still valid
+     *
+     * @return cached element or null
+     */
+    WebElement getCachedElement() {
+        return isCached() ? element : null;
+    }
+
+    By getLocator() {
+        return locator;
+    }
+
+    /**
+     * Returns true if the locator matches by the state of the elements rather than by the structure of the page:
+     * css attribute selectors and pseudo-classes, xpath attribute or function predicates, the link text. The elements
+     * found by such locators are looked up every time, since the state may change without any node being added
+     *
+     * @param locator locator
+     * @return true if the found elements mustn't be cached
+     */
+    static boolean isStateDependent(By locator) {
+        if (locator instanceof By.ByCssSelector) {
+            String selector = locator.toString();
+            selector = selector.substring(selector.indexOf(':') + 1);
+            return selector.contains("[") || selector.contains(":");
+        } else if (locator instanceof By.ByXPath) {
+            String xpath = locator.toString();
+            return xpath.contains("[") && (xpath.contains("@") || xpath.contains("("));
+        }
+        return locator instanceof By.ByLinkText || locator instanceof By.ByPartialLinkText;
+    }
+
+    BaseWebElement getParentElement() {
+        return parentElement;
+    }
+
+    int getIndex() {
+        return elementIndex;
+    }
+
+    void invalidate() {
+        elementEpoch = -1;
+        if (list != null) {
+            list.invalidate();
+        }
+    }
+
+    /**
+     * Performs the action on the element, the element is looked up again once if it has got stale.
+     * In the hybrid mode the action is repeated once in the real browser if the in-process one can't perform it
+     */
+    private <T> T query(Function<WebElement, T> action) {
+        WebElement element = getElement();
+        T result;
+        try {
+            result = action.apply(element);
+        } catch (StaleElementReferenceException e) {
+            logger.debug("'{}' element is stale, looking it up again", this);
+            invalidate();
+            result = action.apply(resolve());
+        } catch (RuntimeException e) {
+            if (!webDriver.fallBack(e)) {
+                throw e;
+            }
+            logger.debug("'{}' element action is repeated in the real browser", this);
+            result = action.apply(getElement());
+        }
+        webDriver.checkScriptErrors();
+        return result;
+    }
+
+    private void perform(Consumer<WebElement> action) {
+        query(element -> {
+            action.accept(element);
+            return null;
+        });
+    }
+
+    /**
+     * Performs the action like {@link #query(Function)} and records its time including the lookup
+     * in {@link OperationMetrics}
+     */
+    private <T> T query(Operation operation, Function<WebElement, T> action) {
+        long start = OperationMetrics.start();
+        boolean isFailed = true;
+        try {
+            T result = query(action);
+            isFailed = false;
+            return result;
+        } finally {
+            OperationMetrics.record(operation, getMetricKey(), start, isFailed);
+        }
+    }
+
+    private void perform(Operation operation, Consumer<WebElement> action) {
+        query(operation, element -> {
+            action.accept(element);
+            return null;
+        });
+    }
+
+    private String getMetricKey() {
+        if (metricKey == null && locator != null) {
+            metricKey = toString();
+        }
+        return metricKey;
+    }
+
     /**
      * Returns the web element.
      * <br/></><b>IMPORTANT:</b> as you may notice from the method name this method is quite specific.
@@ -109,37 +287,71 @@ public class BaseWebElement implements WebElement {
      * @return found element or null
      */
     private WebElement findSelf() {
-        // wait for ajax request finishes
-        webDriver.sync();
+        long start = OperationMetrics.start();
+        WebElement found = null;
+        try {
+            // wait for ajax request finishes
+            webDriver.sync();
+            found = locate();
+            return found;
+        } finally {
+            OperationMetrics.record(Operation.FIND_SELF, getMetricKey(), start, found == null);
+        }
+    }
 
-        List<WebElement> foundElements = (parentElement != null)
-                ? parentElement.getElement().findElements(locator)
-                : webDriver.findElements(locator);
-        return (foundElements.size() > elementIndex) ? foundElements.get(elementIndex) : null;
+    /**
+     * Performs the search of the element without synchronization. The parent is looked up only if its cached
+     * element isn't valid anymore
+     *
+     * @return found element or null
+     */
+    private WebElement locate() {
+        if (list != null) {
+            elementSource = list.resolveItems();
+            elementEpoch = webDriver.getEpoch();
+            return (elementSource.size() > elementIndex) ? elementSource.get(elementIndex) : null;
+        }
+        List<WebElement> foundElements;
+        WebElement parent = null;
+        if (parentElement != null) {
+            parent = parentElement.resolve();
+            try {
+                foundElements = parent.findElements(locator);
+            } catch (StaleElementReferenceException e) {
+                parentElement.invalidate();
+                parent = parentElement.resolve();
+                foundElements = parent.findElements(locator);
+            }
+        } else {
+            foundElements = webDriver.findElements(locator);
+        }
+        WebElement found = (foundElements.size() > elementIndex) ? foundElements.get(elementIndex) : null;
+        elementParent = parent;
+        elementEpoch = webDriver.getEpoch();
+        return found;
     }
 
     private boolean waitForPresence() {
-        return waitFor(true);
+        return waitFor(true, false);
     }
 
     private boolean waitForAbsence() {
-        return waitFor(false);
+        return waitFor(false, false);
     }
 
-    private boolean waitFor(boolean isPresence) {
-        element = findSelf();
+    private boolean waitFor(boolean isPresence, boolean isSynced) {
+        element = isSynced ? locate() : findSelf();
+        if (isPresence == (element != null)) {
+            return true;
+        }
         // for some reason the web elements may appear on the page with some delay after complete page loading
-        // (for now it's caused by downloading some javascript code). So if we haven't found the web element, we repeat
-        // this attempt for some time
-        long finishTime = System.currentTimeMillis() + TIMEOUT_WAIT_FOR_PRESENCE * 1000;
-        while (System.currentTimeMillis() < finishTime) {
-            if (isPresence == !(element == null)) {
-                return true;
-            }
-            GeneralUtils.sleep(200);
+        // (for now it's caused by downloading some javascript code). So if we haven't found the web element,
+        // we repeat this attempt for some time. The wait is timed by WaitEngine
+        String kind = isPresence ? WaitEngine.PRESENCE : WaitEngine.ABSENCE;
+        return WaitEngine.until(webDriver, kind + ": " + this, getWaitTimeout(kind), () -> {
             element = findSelf();
-        }
-        return false;
+            return isPresence == (element != null);
+        });
     }
 
     /**
@@ -171,34 +383,73 @@ public class BaseWebElement implements WebElement {
      * Sets the checked state of web element according to specified
      */
     public void check(boolean checked) {
-        WebElement element = getElement();
-        if (element.isSelected() != checked) {
-            element.click();
-        }
+        perform(element -> {
+            if (element.isSelected() != checked) {
+                element.click();
+            }
+        });
     }
 
     private void waitForVisibility() {
-        try {
-            WebDriverWait wait = new WebDriverWait(webDriver, TIMEOUT_WAIT_FOR_VISIBILITY);
-            wait.until(ExpectedConditions.visibilityOf(element));
-        } catch (TimeoutException e) {
+        if (!WaitEngine.until(webDriver, WaitEngine.VISIBILITY + ": " + this, getWaitTimeout(WaitEngine.VISIBILITY),
+                () -> element.isDisplayed())) {
             // what should we do in this case? just ignore and let to throw an exception in further code..?
             logger.warn(String.format("'%s' element isn't visible", toString()));
         }
     }
 
+    /**
+     * Returns text, attributes, visibility, geometry and specified css properties of the element
+     * read in one call to the browser
+     *
+     * @param cssProperties names of css properties to read
+     * @return element snapshot
+     */
+    public ElementSnapshot getSnapshot(String... cssProperties) {
+        return getSnapshots(Collections.singletonList(this), cssProperties).get(0);
+    }
+
+    /**
+     * Returns the snapshots of several elements read in one call to the browser. The page is synchronized once
+     * and the elements are looked up only if their cached elements aren't valid anymore; the hidden elements
+     * aren't waited for, their snapshots tell they aren't displayed
+     *
+     * @param elements      elements to read, they must belong to the same driver
+     * @param cssProperties names of css properties to read
+     * @return snapshots in the order of the elements
+     */
+    public static List<ElementSnapshot> getSnapshots(List<BaseWebElement> elements, String... cssProperties) {
+        if (elements.isEmpty()) {
+            return new ArrayList<ElementSnapshot>();
+        }
+        BaseWebDriver webDriver = elements.get(0).webDriver;
+        webDriver.sync();
+        try {
+            return webDriver.getSnapshots(resolveAll(elements), cssProperties);
+        } catch (StaleElementReferenceException e) {
+            for (BaseWebElement element : elements) {
+                element.invalidate();
+            }
+            webDriver.sync();
+            return webDriver.getSnapshots(resolveAll(elements), cssProperties);
+        }
+    }
+
+    private static List<WebElement> resolveAll(List<BaseWebElement> elements) {
+        List<WebElement> resolved = new ArrayList<WebElement>(elements.size());
+        for (BaseWebElement element : elements) {
+            resolved.add(element.resolve(false));
+        }
+        return resolved;
+    }
+
     /**
      * Waits when the element gets enabled state
      */
     public void waitForEnable() {
         WebElement element = getWebElement();
-        long finishTime = System.currentTimeMillis() + TIMEOUT_WAIT_FOR_ENABLE * 1000;
-        while (System.currentTimeMillis() < finishTime) {
-            if (element.isEnabled()) {
-                return;
-            }
-            GeneralUtils.sleep(200);
-        }
+        WaitEngine.until(webDriver, WaitEngine.ENABLE + ": " + this, getWaitTimeout(WaitEngine.ENABLE),
+                () -> element.isEnabled());
     }
 
     /**
@@ -206,13 +457,8 @@ public class BaseWebElement implements WebElement {
      */
     public void waitForText(String text) {
         WebElement element = getWebElement();
-        long finishTime = System.currentTimeMillis() + TIMEOUT_WAIT_FOR_TEXT * 1000;
-        while (System.currentTimeMillis() < finishTime) {
-            if (element.getText().equals(text)) {
-                return;
-            }
-            GeneralUtils.sleep(200);
-        }
+        WaitEngine.until(webDriver, WaitEngine.TEXT + ": " + this, getWaitTimeout(WaitEngine.TEXT),
+                () -> element.getText().equals(text));
     }
 
     /**
@@ -225,71 +471,73 @@ public class BaseWebElement implements WebElement {
     }
 
     public void click() {
-        getElement().click();
+        perform(Operation.CLICK, element -> element.click());
     }
 
     public void submit() {
-        getElement().submit();
+        perform(element -> element.submit());
     }
 
     /**
      * Clears the field and types the text to it
      */
     public void type(CharSequence... keysToSend) {
-        getElement().clear();
-        getElement().sendKeys(keysToSend);
+        perform(element -> {
+            element.clear();
+            element.sendKeys(keysToSend);
+        });
     }
 
     public void sendKeys(CharSequence... keysToSend) {
-        getElement().sendKeys(keysToSend);
+        perform(element -> element.sendKeys(keysToSend));
     }
 
     public void clear() {
-        getElement().clear();
+        perform(element -> element.clear());
     }
 
     public String getTagName() {
-        return getElement().getTagName();
+        return query(element -> element.getTagName());
     }
 
     public String getAttribute(String name) {
-        return getElement().getAttribute(name);
+        return query(element -> element.getAttribute(name));
     }
 
     public boolean isSelected() {
-        return getElement().isSelected();
+        return query(element -> element.isSelected());
     }
 
     public boolean isEnabled() {
-        return getElement().isEnabled();
+        return query(element -> element.isEnabled());
     }
 
     public String getText() {
-        return getElement().getText();
+        return query(Operation.GET_TEXT, element -> element.getText());
     }
 
     public List<WebElement> findElements(By by) {
-        return getElement().findElements(by);
+        return query(element -> element.findElements(by));
     }
 
     public WebElement findElement(By by) {
-        return getElement().findElement(by);
+        return query(element -> element.findElement(by));
     }
 
     public boolean isDisplayed() {
-        return getElement().isDisplayed();
+        return query(element -> element.isDisplayed());
     }
 
     public Point getLocation() {
-        return getElement().getLocation();
+        return query(element -> element.getLocation());
     }
 
     public Dimension getSize() {
-        return getElement().getSize();
+        return query(element -> element.getSize());
     }
 
     public String getCssValue(String propertyName) {
-        return getElement().getCssValue(propertyName);
+        return query(element -> element.getCssValue(propertyName));
     }
 
     @Override
@@ -0,0 +1,254 @@
+package com.template.autoqa.core.web.elements;
+
+import com.template.autoqa.core.web.selenium.BaseWebDriver;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * All the elements matching the locator, e.g. the rows of a table or the cells of a row.
+ * <br/>The collection is found with one {@code findElements} call and reused until the page state of the driver
+ * changes, the items returned by {@link #get(int)} are created on demand and take their elements from the list,
+ * so a walk over N rows costs one lookup instead of N. Filtering and searching are done in the browser
+ * in one JavaScript call.
+ */
+public class BaseWebElementList implements Iterable<BaseWebElement> {
+    private static final String TEXT_PREDICATE =
+            "var text = element.innerText !== undefined ? element.innerText : element.textContent;";
+    private static final String CONTAINS_TEXT_PREDICATE = TEXT_PREDICATE + " return String(text).indexOf(value) >= 0;";
+    private static final String EQUALS_TEXT_PREDICATE =
+            TEXT_PREDICATE + " return String(text).replace(/\\s+/g, ' ').replace(/^ | $/g, '') == value;";
+
+    private final BaseWebDriver webDriver;
+    private final By locator;
+    private final BaseWebElement parentElement;
+    private final Map<Integer, BaseWebElement> items = new HashMap<Integer, BaseWebElement>();
+
+    private List<WebElement> elements;
+    private long elementsEpoch = -1;
+    private WebElement elementsParent;
+
+    /**
+     * Creates an instance using provided parameters
+     *
+     * @param webDriver BaseWebDriver object
+     * @param locator   locator of the items
+     * @param parent    parent element, may be null
+     */
+    public BaseWebElementList(BaseWebDriver webDriver, By locator, BaseWebElement parent) {
+        this.webDriver = webDriver;
+        this.locator = locator;
+        this.parentElement = parent;
+    }
+
+    BaseWebDriver getWebDriver() {
+        return webDriver;
+    }
+
+    By getLocator() {
+        return locator;
+    }
+
+    BaseWebElement getParentElement() {
+        return parentElement;
+    }
+
+    /**
+     * Returns the found elements, they are looked up again only if the page has changed.
+     * The page must be already synchronized
+     *
+     * @return found elements
+     */
+    List<WebElement> resolveItems() {
+        if (isCached()) {
+            return elements;
+        }
+        WebElement parent = null;
+        List<WebElement> found;
+        if (parentElement != null) {
+            parent = parentElement.resolve();
+            try {
+                found = parent.findElements(locator);
+            } catch (StaleElementReferenceException e) {
+                parentElement.invalidate();
+                parent = parentElement.resolve();
+                found = parent.findElements(locator);
+            }
+        } else {
+            found = webDriver.findElements(locator);
+        }
+        elements = found;
+        elementsParent = parent;
+        elementsEpoch = webDriver.getEpoch();
+        return elements;
+    }
+
+    private boolean isCached() {
+        return elements != null && elementsEpoch == webDriver.getEpoch() && !BaseWebElement.isStateDependent(locator)
+                && (parentElement == null || parentElement.getCachedElement() == elementsParent);
+    }
+
+    /**
+     * Returns true if the elements have been taken from the current state of the list
+     */
+    boolean isCurrent(List<WebElement> source) {
+        return source == elements && isCached();
+    }
+
+    void invalidate() {
+        elementsEpoch = -1;
+    }
+
+    /**
+     * Returns the number of the elements on the page
+     *
+     * @return number of elements
+     */
+    public int size() {
+        webDriver.sync();
+        return resolveItems().size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the item of the list. The item is looked up on the first use
+     *
+     * @param index index of the item
+     * @return the item
+     */
+    public BaseWebElement get(int index) {
+        BaseWebElement item = items.get(index);
+        if (item == null) {
+            item = new BaseWebElement(this, index);
+            items.put(index, item);
+        }
+        return item;
+    }
+
+    /**
+     * Iterates over the items present on the page when the iteration starts
+     */
+    public Iterator<BaseWebElement> iterator() {
+        final int size = size();
+        return new Iterator<BaseWebElement>() {
+            private int index;
+
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            public BaseWebElement next() {
+                return get(index++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("The items can't be removed from the page");
+            }
+        };
+    }
+
+    /**
+     * Returns the snapshots of all the items read in one call to the browser
+     *
+     * @param cssProperties names of css properties to read
+     * @return snapshots in the order of the items
+     */
+    public List<ElementSnapshot> getSnapshots(String... cssProperties) {
+        webDriver.sync();
+        try {
+            return webDriver.getSnapshots(resolveItems(), cssProperties);
+        } catch (StaleElementReferenceException e) {
+            invalidate();
+            return webDriver.getSnapshots(resolveItems(), cssProperties);
+        }
+    }
+
+    /**
+     * Returns the texts of all the items read in one call to the browser
+     *
+     * @return texts in the order of the items
+     */
+    public List<String> getTexts() {
+        List<String> texts = new ArrayList<String>();
+        for (ElementSnapshot snapshot : getSnapshots()) {
+            texts.add(snapshot.getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Returns the items matching the predicate evaluated in the browser
+     *
+     * @param predicate body of JavaScript function with {@code element}, {@code index} and {@code value} parameters
+     *                  returning true for matching elements
+     * @param value     value passed to the predicate
+     * @return matching items
+     */
+    public List<BaseWebElement> filter(String predicate, Object value) {
+        List<BaseWebElement> matching = new ArrayList<BaseWebElement>();
+        for (int index : filterIndexes(predicate, value)) {
+            matching.add(get(index));
+        }
+        return matching;
+    }
+
+    /**
+     * Returns the items which text contains specified one
+     *
+     * @param text text to search for
+     * @return matching items
+     */
+    public List<BaseWebElement> filterByText(String text) {
+        return filter(CONTAINS_TEXT_PREDICATE, text);
+    }
+
+    /**
+     * Returns the index of the first item which text equals to specified one.
+     * The whitespace of the item text is collapsed to single spaces and trimmed
+     *
+     * @param text item text
+     * @return index of the item or -1 if there is no such item
+     */
+    public int indexOfText(String text) {
+        List<Integer> indexes = filterIndexes(EQUALS_TEXT_PREDICATE, text);
+        return indexes.isEmpty() ? -1 : indexes.get(0);
+    }
+
+    /**
+     * Returns the first item which text equals to specified one.
+     * The whitespace of the item text is collapsed to single spaces and trimmed
+     *
+     * @param text item text
+     * @return the item or null if there is no such item
+     */
+    public BaseWebElement findByText(String text) {
+        int index = indexOfText(text);
+        return index < 0 ? null : get(index);
+    }
+
+    private List<Integer> filterIndexes(String predicate, Object value) {
+        webDriver.sync();
+        try {
+            return webDriver.filterElements(resolveItems(), predicate, value);
+        } catch (StaleElementReferenceException e) {
+            invalidate();
+            return webDriver.filterElements(resolveItems(), predicate, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("list locator: '%s'%s", locator,
+                parentElement == null ? "" : ", parent: '" + parentElement.toString() + "'");
+    }
+}
@@ -0,0 +1,306 @@
+package com.template.autoqa.core.web.elements;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.web.selenium.BaseWebDriver;
+import com.template.autoqa.core.web.selenium.WaitEngine;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Sequence of element actions and reads run in the browser in one JavaScript call instead of a round trip
+ * per command, e.g. a form fill:
+ * <pre>
+ * CommandBatch batch = webDriver.batch()
+ *         .type(login, "user").type(password, "secret").check(remember, true).click(submit);
+ * CommandBatch.Step&lt;String&gt; message = batch.getText(status);
+ * batch.execute();
+ * message.get();
+ * </pre>
+ * The elements are looked up in the page by their locators, parents and indexes; the elements already found
+ * by {@link BaseWebElement} are reused while they are attached. A step waits for its element like
+ * {@link BaseWebElement} does, for the {@code presence} timeout of {@link WaitEngine}. If the page engine has
+ * no xpath or css selectors, such elements are found by the WebDriver at the cost of one more call.
+ * <br/>The actions are done by the page script: the click fires mousedown, mouseup and click, typing sets
+ * the value and fires input and change events, no key events are fired. An action on an invisible
+ * or disabled element fails. The steps run in one turn of the page unless an element has to be waited for;
+ * the first failed step stops the batch and is reported with its number and element, the steps before it
+ * have taken effect. A step navigating to another page should be the last one.
+ */
+public class CommandBatch {
+    private static final Pattern LOCATOR = Pattern.compile("By\\.(\\w+): (.*)", Pattern.DOTALL);
+    private static final List<String> SUPPORTED_LOCATORS = Arrays.asList(
+            "id", "name", "className", "selector", "cssSelector", "tagName", "xpath", "linkText", "partialLinkText");
+    private static final String ELEMENT = "element";
+
+    private final BaseWebDriver webDriver;
+    private final List<Step<?>> steps = new ArrayList<Step<?>>();
+    // the elements of the lookups in the order of batch.js arguments, and the elements found by the WebDriver
+    private final List<BaseWebElement> lookupElements = new ArrayList<BaseWebElement>();
+    private final Set<BaseWebElement> resolvedElements =
+            Collections.newSetFromMap(new IdentityHashMap<BaseWebElement, Boolean>());
+    private boolean isExecuted;
+
+    /**
+     * @param webDriver driver of the elements
+     */
+    public CommandBatch(BaseWebDriver webDriver) {
+        this.webDriver = webDriver;
+    }
+
+    public CommandBatch click(BaseWebElement element) {
+        add("click", element, null);
+        return this;
+    }
+
+    /**
+     * Replaces the value of the field
+     */
+    public CommandBatch type(BaseWebElement element, String text) {
+        add("type", element, text);
+        return this;
+    }
+
+    public CommandBatch clear(BaseWebElement element) {
+        add("clear", element, null);
+        return this;
+    }
+
+    /**
+     * Clicks the check box or the radio button if its checked state differs
+     */
+    public CommandBatch check(BaseWebElement element, boolean checked) {
+        add("check", element, checked);
+        return this;
+    }
+
+    /**
+     * Selects the option of the select box by its visible text
+     */
+    public CommandBatch select(BaseWebElement element, String optionText) {
+        add("select", element, optionText);
+        return this;
+    }
+
+    /**
+     * Submits the form of the element, the submit handlers of the page are called first
+     */
+    public CommandBatch submit(BaseWebElement element) {
+        add("submit", element, null);
+        return this;
+    }
+
+    public Step<String> getText(BaseWebElement element) {
+        return add("getText", element, null);
+    }
+
+    /**
+     * Returns the text of the element or null if the element isn't on the page, the step doesn't wait
+     * for the element and doesn't fail
+     */
+    public Step<String> getTextIfExists(BaseWebElement element) {
+        return add("getTextIfExists", element, null);
+    }
+
+    public Step<String> getAttribute(BaseWebElement element, String name) {
+        return add("getAttribute", element, name);
+    }
+
+    public Step<Boolean> isDisplayed(BaseWebElement element) {
+        return add("isDisplayed", element, null);
+    }
+
+    public Step<Boolean> isSelected(BaseWebElement element) {
+        return add("isSelected", element, null);
+    }
+
+    /**
+     * Returns true if the element is on the page, the step doesn't wait for the element and doesn't fail
+     */
+    public Step<Boolean> exists(BaseWebElement element) {
+        return add("exists", element, null);
+    }
+
+    private <T> Step<T> add(String name, BaseWebElement element, Object value) {
+        if (isExecuted) {
+            throw new TestInterruptException("The batch has already been executed, start a new one");
+        }
+        Step<T> step = new Step<T>(name, element, value);
+        steps.add(step);
+        return step;
+    }
+
+    /**
+     * Runs all the steps in one call to the browser. The page is synchronized once before the steps.
+     * In the hybrid mode the whole batch is repeated in the real browser if the in-process one can't run it
+     *
+     * @throws TestInterruptException naming the failed step
+     */
+    @SuppressWarnings("unchecked")
+    public void execute() {
+        if (isExecuted) {
+            throw new TestInterruptException("The batch has already been executed, start a new one");
+        }
+        isExecuted = true;
+        if (steps.isEmpty()) {
+            return;
+        }
+        webDriver.sync();
+        Map<String, Object> result = run();
+        if (result.get("unsupported") != null) {
+            for (Object index : (List<Object>) result.get("unsupported")) {
+                resolvedElements.add(lookupElements.get(((Number) index).intValue()));
+            }
+            result = run();
+        }
+        List<Object> results = (List<Object>) result.get("results");
+        for (int i = 0; i < results.size(); i++) {
+            steps.get(i).value = results.get(i);
+            steps.get(i).isDone = true;
+        }
+        int failed = ((Number) result.get("failed")).intValue();
+        if (failed >= 0) {
+            throw new TestInterruptException(String.format("Step %s of %s of the batch, %s, has failed: %s",
+                    failed + 1, steps.size(), steps.get(failed), result.get("error")));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> run() {
+        Object result;
+        try {
+            result = webDriver.executeBatch(compile(), getMetricKey());
+        } catch (RuntimeException e) {
+            if (!webDriver.fallBack(e)) {
+                throw e;
+            }
+            webDriver.sync();
+            result = webDriver.executeBatch(compile(), getMetricKey());
+        }
+        webDriver.checkScriptErrors();
+        if (!(result instanceof Map)) {
+            throw new TestInterruptException(String.format("The batch of %s steps has returned '%s', " +
+                    "the page has probably been left before the batch has finished", steps.size(), result));
+        }
+        return (Map<String, Object>) result;
+    }
+
+    /**
+     * Builds the arguments of {@code batch.js}: the steps, the lookups of their elements, the wait timeout
+     * and the elements found before
+     */
+    private Object[] compile() {
+        List<Object> stepArguments = new ArrayList<Object>(steps.size());
+        List<Object> lookups = new ArrayList<Object>();
+        List<WebElement> elements = new ArrayList<WebElement>();
+        Map<BaseWebElement, Integer> indexes = new IdentityHashMap<BaseWebElement, Integer>();
+        lookupElements.clear();
+        for (Step<?> step : steps) {
+            // some drivers can't pass null inside a list
+            stepArguments.add(Arrays.asList(step.name, addLookup(step.element, lookups, elements, indexes),
+                    step.argument == null ? "" : step.argument));
+        }
+        Object[] arguments = new Object[elements.size() + 3];
+        arguments[0] = stepArguments;
+        arguments[1] = lookups;
+        arguments[2] = WaitEngine.getTimeoutMillis(WaitEngine.PRESENCE);
+        for (int i = 0; i < elements.size(); i++) {
+            arguments[i + 3] = elements.get(i);
+        }
+        return arguments;
+    }
+
+    /**
+     * Adds the lookup of the element after the lookups of its parents
+     *
+     * @return index of the lookup
+     */
+    private int addLookup(BaseWebElement element, List<Object> lookups, List<WebElement> elements,
+                          Map<BaseWebElement, Integer> indexes) {
+        Integer index = indexes.get(element);
+        if (index != null) {
+            return index;
+        }
+        String kind;
+        String selector;
+        int parent = -1;
+        WebElement cached = element.getCachedElement();
+        Matcher matcher = LOCATOR.matcher(String.valueOf(element.getLocator()));
+        if (matcher.matches() && SUPPORTED_LOCATORS.contains(matcher.group(1)) && !resolvedElements.contains(element)) {
+            // By.cssSelector is printed as By.selector
+            kind = "selector".equals(matcher.group(1)) ? "cssSelector" : matcher.group(1);
+            selector = matcher.group(2);
+            if (element.getParentElement() != null) {
+                parent = addLookup(element.getParentElement(), lookups, elements, indexes);
+            }
+        } else {
+            // the locator can't be run by the page script or the engine, the element is found here
+            kind = ELEMENT;
+            selector = "";
+            if (cached == null) {
+                cached = element.resolve();
+            }
+        }
+        int argument = -1;
+        if (cached != null) {
+            elements.add(cached);
+            argument = elements.size() + 2;
+        }
+        lookups.add(Arrays.asList(kind, selector, element.getIndex(), parent, argument));
+        indexes.put(element, lookups.size() - 1);
+        lookupElements.add(element);
+        return lookups.size() - 1;
+    }
+
+    private String getMetricKey() {
+        StringBuilder key = new StringBuilder();
+        for (Step<?> step : steps) {
+            key.append(key.length() == 0 ? "" : ",").append(step.name);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Step of the batch, its result is available after {@link #execute()}
+     */
+    public static class Step<T> {
+        private final String name;
+        private final BaseWebElement element;
+        private final Object argument;
+        private Object value;
+        private boolean isDone;
+
+        private Step(String name, BaseWebElement element, Object argument) {
+            this.name = name;
+            this.element = element;
+            this.argument = argument;
+        }
+
+        /**
+         * Returns the result of the step
+         *
+         * @throws TestInterruptException if the batch hasn't been executed or has failed before this step
+         */
+        @SuppressWarnings("unchecked")
+        public T get() {
+            if (!isDone) {
+                throw new TestInterruptException(String.format("Step %s hasn't been done", this));
+            }
+            return (T) value;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%s '%s'", name, argument == null ? "" : " '" + argument + "'", element);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.template.autoqa.core.web.elements;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Point;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Immutable state of a web element taken in one JavaScript call, see {@link BaseWebElement#getSnapshot}.
+ * The values are read locally without further calls to the browser.
+ * <br/>The text and the visibility are computed by the page script, they follow the rules of
+ * {@link org.openqa.selenium.WebElement#getText()} and {@link org.openqa.selenium.WebElement#isDisplayed()}
+ * for ordinary markup but may differ in corner cases (e.g. elements hidden by opacity or clipping)
+ */
+public class ElementSnapshot {
+    private final String text;
+    private final String tagName;
+    private final boolean displayed;
+    private final boolean enabled;
+    private final boolean selected;
+    private final Point location;
+    private final Dimension size;
+    private final Map<String, String> attributes;
+    private final Map<String, String> cssValues;
+
+    /**
+     * Creates the snapshot from the properties collected by {@code js/snapshot.js}
+     *
+     * @param properties element properties returned by the script
+     */
+    public ElementSnapshot(Map<String, Object> properties) {
+        text = String.valueOf(properties.get("text"));
+        tagName = String.valueOf(properties.get("tagName"));
+        displayed = Boolean.TRUE.equals(properties.get("displayed"));
+        enabled = Boolean.TRUE.equals(properties.get("enabled"));
+        selected = Boolean.TRUE.equals(properties.get("selected"));
+        location = new Point(toInt(properties.get("x")), toInt(properties.get("y")));
+        size = new Dimension(toInt(properties.get("width")), toInt(properties.get("height")));
+        attributes = toStringMap(properties.get("attributes"));
+        cssValues = toStringMap(properties.get("css"));
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static Map<String, String> toStringMap(Object value) {
+        Map<String, String> map = new HashMap<String, String>();
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getTagName() {
+        return tagName;
+    }
+
+    public boolean isDisplayed() {
+        return displayed;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+
+    public Point getLocation() {
+        return location;
+    }
+
+    public Dimension getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the attribute as it is written in the markup
+     *
+     * @param name attribute name
+     * @return attribute value or null if there is no such attribute
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Returns the computed value of the css property. Only the properties requested when the snapshot
+     * was taken are available
+     *
+     * @param propertyName css property name
+     * @return property value or null if the property hasn't been requested
+     */
+    public String getCssValue(String propertyName) {
+        return cssValues.get(propertyName);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<%s> '%s'%s", tagName, text, displayed ? "" : " (hidden)");
+    }
+}
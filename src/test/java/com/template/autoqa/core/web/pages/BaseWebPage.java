@@ -1,33 +1,75 @@
 package com.template.autoqa.core.web.pages;
 
+import com.template.autoqa.core.exceptions.TestInterruptException;
 import com.template.autoqa.core.web.elements.BaseWebElement;
+import com.template.autoqa.core.web.elements.CommandBatch;
 import com.template.autoqa.core.web.selenium.BaseWebDriver;
 
 
+/**
+ * Page object. The elements of the page are declared by the fields annotated with {@link Locator} and
+ * the navigation links by {@link PageLinks} (or set in {@link #initializeLinkToOpen()}), e.g.
+ * <pre>
+ * &#64;PageLinks(open = &#64;Locator(linkText = "Users"), active = &#64;Locator(css = "#menu .active a"))
+ * public class UsersPage extends BaseWebPage {
+ *     &#64;Locator(id = "users")
+ *     private BaseWebElement table;
+ *     &#64;Locator(tagName = "tr", parent = "table")
+ *     private BaseWebElementList rows;
+ * ...
+ * </pre>
+ * The fields are filled when the page is created, so they must not have initializers; nothing is looked up
+ * in the browser until an element is used, then the element is reused until the page changes.
+ * <br/>The pages are created once per driver by {@link BaseWebDriver#getPage(Class)}, the subclasses need
+ * a public constructor with the driver parameter.
+ */
 public abstract class BaseWebPage {
 
     protected BaseWebDriver webDriver;
 
     protected BaseWebElement linkToOpen;
     protected BaseWebElement linkLogout;
-    private BaseWebElement linkActivePage;
+    protected BaseWebElement linkActivePage;
+
+    // the title is kept until the page state of the driver changes
+    private String title;
+    private long titleEpoch = -1;
 
     public BaseWebPage(BaseWebDriver webDriver) {
         this.webDriver = webDriver;
+        PageModel.of(getClass()).initialize(this, webDriver);
         initializeLinkToOpen();
     }
 
     /**
-     * Initializes a link to activate current page
+     * Initializes a link to activate current page, the links declared by {@link PageLinks} are already set
      */
-    protected abstract void initializeLinkToOpen();
+    protected void initializeLinkToOpen() {
+        // do nothing
+    }
 
+    /**
+     * Returns true if the active link of the menu has the title of the page. The texts of both links are read
+     * in one script call, an absent link means another page
+     */
     public boolean isCurrent() {
-        return linkActivePage.getText().equals(getTitle());
+        if (linkActivePage == null || linkToOpen == null) {
+            throw new TestInterruptException(String.format("The active and open links of '%s' page aren't set", this));
+        }
+        CommandBatch batch = webDriver.batch();
+        CommandBatch.Step<String> activeText = batch.getTextIfExists(linkActivePage);
+        CommandBatch.Step<String> openText = batch.getTextIfExists(linkToOpen);
+        batch.execute();
+        return activeText.get() != null && activeText.get().equals(openText.get());
     }
 
     public String getTitle() {
-        return linkToOpen.getText();
+        webDriver.sync();
+        if (titleEpoch != webDriver.getEpoch()) {
+            title = linkToOpen.getText();
+            titleEpoch = webDriver.getEpoch();
+        }
+        return title;
     }
 
     /**
@@ -45,4 +87,9 @@ public abstract class BaseWebPage {
             linkLogout.click();
         }
     }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
 }
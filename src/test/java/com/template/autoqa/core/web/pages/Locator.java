@@ -0,0 +1,43 @@
+package com.template.autoqa.core.web.pages;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Declares the locator of a {@link com.template.autoqa.core.web.elements.BaseWebElement} or
+ * {@link com.template.autoqa.core.web.elements.BaseWebElementList} field of a {@link BaseWebPage}.
+ * Exactly one kind of the locator must be set. The field is filled when the page is created, the element
+ * is looked up on its first use, see {@link BaseWebPage}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Locator {
+    String id() default "";
+
+    String name() default "";
+
+    String className() default "";
+
+    String css() default "";
+
+    String xpath() default "";
+
+    String tagName() default "";
+
+    String linkText() default "";
+
+    String partialLinkText() default "";
+
+    /**
+     * Index of the element among the matching ones, ignored for the lists
+     */
+    int index() default 0;
+
+    /**
+     * Name of the element field of the page the element is looked up in
+     */
+    String parent() default "";
+}
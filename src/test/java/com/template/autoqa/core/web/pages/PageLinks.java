@@ -0,0 +1,30 @@
+package com.template.autoqa.core.web.pages;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Declares the navigation links of a {@link BaseWebPage} instead of {@link BaseWebPage#initializeLinkToOpen()}.
+ * A link without any locator set isn't declared
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PageLinks {
+    /**
+     * Link opening the page, its text is the title of the page
+     */
+    Locator open() default @Locator;
+
+    /**
+     * Link of the menu marked as active, its text is the title of the opened page
+     */
+    Locator active() default @Locator;
+
+    /**
+     * Link logging out from the system
+     */
+    Locator logout() default @Locator;
+}
@@ -0,0 +1,211 @@
+package com.template.autoqa.core.web.pages;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.web.elements.BaseWebElement;
+import com.template.autoqa.core.web.elements.BaseWebElementList;
+import com.template.autoqa.core.web.selenium.BaseWebDriver;
+import org.openqa.selenium.By;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The {@link Locator} fields and {@link PageLinks} of a page class, read by reflection once per class.
+ * The fields are ordered so that a parent is created before its children
+ */
+class PageModel {
+    private static final Map<Class<?>, PageModel> models = new ConcurrentHashMap<Class<?>, PageModel>();
+
+    private final List<ElementField> fields = new ArrayList<ElementField>();
+    private By openLocator;
+    private By activeLocator;
+    private By logoutLocator;
+
+    private PageModel(Class<?> pageClass) {
+        Map<String, ElementField> declared = new LinkedHashMap<String, ElementField>();
+        for (Class<?> type = pageClass; type != null && type != BaseWebPage.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Locator locator = field.getAnnotation(Locator.class);
+                if (locator != null && !declared.containsKey(field.getName())) {
+                    declared.put(field.getName(), new ElementField(field, locator));
+                }
+            }
+        }
+        Set<String> added = new HashSet<String>();
+        for (ElementField field : declared.values()) {
+            add(field, declared, added, new HashSet<String>());
+        }
+        PageLinks links = pageClass.getAnnotation(PageLinks.class);
+        if (links != null) {
+            openLocator = toBy(links.open(), pageClass.getName() + " open link");
+            activeLocator = toBy(links.active(), pageClass.getName() + " active link");
+            logoutLocator = toBy(links.logout(), pageClass.getName() + " logout link");
+        }
+    }
+
+    static PageModel of(Class<?> pageClass) {
+        PageModel model = models.get(pageClass);
+        if (model == null) {
+            model = new PageModel(pageClass);
+            models.put(pageClass, model);
+        }
+        return model;
+    }
+
+    private void add(ElementField field, Map<String, ElementField> declared, Set<String> added, Set<String> path) {
+        if (added.contains(field.getName())) {
+            return;
+        }
+        if (!path.add(field.getName())) {
+            throw new TestInterruptException("Parents of '" + field + "' element make a loop");
+        }
+        if (!field.parent.isEmpty()) {
+            ElementField parent = declared.get(field.parent);
+            if (parent == null || parent.isList()) {
+                throw new TestInterruptException(String.format(
+                        "There is no '%s' parent element field of '%s' element", field.parent, field));
+            }
+            add(parent, declared, added, path);
+        }
+        fields.add(field);
+        added.add(field.getName());
+    }
+
+    /**
+     * Fills the element fields and the links of the page. Nothing is looked up in the browser
+     */
+    void initialize(BaseWebPage page, BaseWebDriver webDriver) {
+        Map<String, BaseWebElement> elements = new HashMap<String, BaseWebElement>();
+        for (ElementField field : fields) {
+            Object value;
+            if (field.isList()) {
+                value = new BaseWebElementList(webDriver, field.by, elements.get(field.parent));
+            } else {
+                BaseWebElement element = field.create(webDriver, elements.get(field.parent));
+                elements.put(field.getName(), element);
+                value = element;
+            }
+            field.set(page, value);
+        }
+        if (openLocator != null) {
+            page.linkToOpen = webDriver.getWebElement(openLocator);
+        }
+        if (activeLocator != null) {
+            page.linkActivePage = webDriver.getWebElement(activeLocator);
+        }
+        if (logoutLocator != null) {
+            page.linkLogout = webDriver.getWebElement(logoutLocator);
+        }
+    }
+
+    /**
+     * Returns the locator or null if none of its kinds is set
+     */
+    private static By toBy(Locator locator, String owner) {
+        List<By> locators = new ArrayList<By>();
+        if (!locator.id().isEmpty()) {
+            locators.add(By.id(locator.id()));
+        }
+        if (!locator.name().isEmpty()) {
+            locators.add(By.name(locator.name()));
+        }
+        if (!locator.className().isEmpty()) {
+            locators.add(By.className(locator.className()));
+        }
+        if (!locator.css().isEmpty()) {
+            locators.add(By.cssSelector(locator.css()));
+        }
+        if (!locator.xpath().isEmpty()) {
+            locators.add(By.xpath(locator.xpath()));
+        }
+        if (!locator.tagName().isEmpty()) {
+            locators.add(By.tagName(locator.tagName()));
+        }
+        if (!locator.linkText().isEmpty()) {
+            locators.add(By.linkText(locator.linkText()));
+        }
+        if (!locator.partialLinkText().isEmpty()) {
+            locators.add(By.partialLinkText(locator.partialLinkText()));
+        }
+        if (locators.size() > 1) {
+            throw new TestInterruptException("Several kinds of the locator are set for " + owner);
+        }
+        return locators.isEmpty() ? null : locators.get(0);
+    }
+
+    private static class ElementField {
+        private final Field field;
+        private final By by;
+        private final int index;
+        private final String parent;
+        private Constructor<? extends BaseWebElement> constructor;
+
+        @SuppressWarnings("unchecked")
+        private ElementField(Field field, Locator locator) {
+            this.field = field;
+            String owner = field.getDeclaringClass().getName() + "." + field.getName();
+            by = toBy(locator, owner);
+            if (by == null) {
+                throw new TestInterruptException("No locator is set for " + owner);
+            }
+            index = locator.index();
+            parent = locator.parent();
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                throw new TestInterruptException(owner + " element field must be neither static nor final");
+            }
+            if (!isList()) {
+                if (!BaseWebElement.class.isAssignableFrom(field.getType())) {
+                    throw new TestInterruptException(owner + " field must be BaseWebElement or BaseWebElementList");
+                }
+                try {
+                    constructor = ((Class<? extends BaseWebElement>) field.getType()).getConstructor(
+                            BaseWebDriver.class, By.class, BaseWebElement.class, int.class);
+                } catch (NoSuchMethodException e) {
+                    throw new TestInterruptException(field.getType().getName()
+                            + " has no public (BaseWebDriver, By, BaseWebElement, int) constructor for " + owner, e);
+                }
+            }
+            field.setAccessible(true);
+        }
+
+        private String getName() {
+            return field.getName();
+        }
+
+        private boolean isList() {
+            return field.getType() == BaseWebElementList.class;
+        }
+
+        private BaseWebElement create(BaseWebDriver webDriver, BaseWebElement parentElement) {
+            try {
+                return constructor.newInstance(webDriver, by, parentElement, index);
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw new TestInterruptException("'" + this + "' element cannot be created", e);
+            }
+        }
+
+        private void set(BaseWebPage page, Object value) {
+            try {
+                field.set(page, value);
+            } catch (IllegalAccessException e) {
+                throw new TestInterruptException("'" + this + "' element field cannot be set", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return field.getDeclaringClass().getSimpleName() + "." + field.getName();
+        }
+    }
+}
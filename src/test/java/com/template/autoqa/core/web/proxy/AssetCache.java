@@ -0,0 +1,312 @@
+package com.template.autoqa.core.web.proxy;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.ParseException;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Content-addressed on-disk cache of the static responses of {@link BrowserProxy}. The bodies are kept in
+ * {@code content/<sha>} files named by the hash of the body, so a bundle served under several urls is stored
+ * once; the {@code index/<sha>} file of a request (the hash of the url and the accepted encodings) holds the hash
+ * of the body, the status, the time the entry is fresh until and the headers. Every file is written to a temporary
+ * file and moved in place, so the workers sharing the folder never read a half written entry and the one writing
+ * last wins with the same bytes.
+ * <br/>The freshness follows the response: {@code s-maxage} or {@code max-age} of {@code Cache-Control}, else
+ * {@code Expires}, else a tenth of the time since {@code Last-Modified}; {@code no-cache} makes it 0. It's capped
+ * by the max age of the cache. A stale entry is still returned, so it can be revalidated with its {@code ETag}
+ * and {@code Last-Modified}; a response which is neither fresh nor has a validator isn't stored.
+ * The folder can be deleted at any time
+ */
+class AssetCache {
+    private static final Logger logger = LoggerFactory.getLogger(AssetCache.class);
+
+    // the headers describing the stored copy rather than the resource aren't kept
+    private static final Set<String> TRANSIENT_HEADERS = new HashSet<String>(Arrays.asList("age", "date"));
+
+    private final Path indexFolder;
+    private final Path contentFolder;
+    private final long maxAgeMillis;
+
+    AssetCache(Path folder, long maxAgeMillis) {
+        indexFolder = folder.resolve("index");
+        contentFolder = folder.resolve("content");
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns the cached response, fresh or stale, or null if there is no entry for the request
+     */
+    Entry get(String requestKey) {
+        Path index = getIndexPath(requestKey);
+        try {
+            if (!Files.exists(index)) {
+                return null;
+            }
+            List<String> lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+            if (lines.size() < 3) {
+                return null;
+            }
+            Path content = getContentPath(lines.get(0));
+            if (!Files.exists(content)) {
+                return null;
+            }
+            String[] status = lines.get(1).split(" ", 2);
+            List<Header> headers = new ArrayList<Header>();
+            for (String line : lines.subList(3, lines.size())) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.add(new BasicHeader(line.substring(0, colon), line.substring(colon + 1).trim()));
+                }
+            }
+            return new Entry(lines.get(0), Integer.parseInt(status[0]), status.length > 1 ? status[1] : "",
+                    Long.parseLong(lines.get(2)), headers.toArray(new Header[headers.size()]), content);
+        } catch (IOException | RuntimeException e) {
+            // a broken entry is fetched again and overwritten
+            logger.debug("Cached response of {} cannot be read: {}", requestKey, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the response, the errors are logged and ignored
+     */
+    void put(String requestKey, int status, String reason, Header[] headers, byte[] body) {
+        long freshUntil = getFreshUntil(headers);
+        if (freshUntil <= System.currentTimeMillis() && !hasValidator(headers)) {
+            logger.debug("Response of {} is neither fresh nor can be revalidated, it isn't cached", requestKey);
+            return;
+        }
+        String contentHash = DigestUtils.shaHex(body);
+        try {
+            Path content = getContentPath(contentHash);
+            if (!Files.exists(content)) {
+                Files.createDirectories(content.getParent());
+                Path temporary = Files.createTempFile(content.getParent(), contentHash, ".tmp");
+                Files.write(temporary, body);
+                move(temporary, content);
+            }
+            writeIndex(requestKey, contentHash, status, reason, freshUntil, headers);
+        } catch (IOException e) {
+            logger.warn("Response of {} cannot be cached: {}", requestKey, e.toString());
+        }
+    }
+
+    /**
+     * Updates the entry revalidated by the server: the headers of the {@code 304 Not Modified} response replace
+     * the stored ones and the freshness is computed again
+     *
+     * @return the updated entry
+     */
+    Entry refresh(String requestKey, Entry entry, Header[] notModifiedHeaders) {
+        List<Header> headers = new ArrayList<Header>();
+        for (Header header : entry.getHeaders()) {
+            boolean isReplaced = false;
+            for (Header update : notModifiedHeaders) {
+                isReplaced |= update.getName().equalsIgnoreCase(header.getName());
+            }
+            if (!isReplaced) {
+                headers.add(header);
+            }
+        }
+        headers.addAll(Arrays.asList(notModifiedHeaders));
+        Header[] merged = headers.toArray(new Header[headers.size()]);
+        long freshUntil = getFreshUntil(merged);
+        try {
+            writeIndex(requestKey, entry.contentHash, entry.getStatus(), entry.getReason(), freshUntil, merged);
+        } catch (IOException e) {
+            logger.warn("Revalidated response of {} cannot be cached: {}", requestKey, e.toString());
+        }
+        return new Entry(entry.contentHash, entry.getStatus(), entry.getReason(), freshUntil, merged,
+                entry.getContent());
+    }
+
+    private void writeIndex(String requestKey, String contentHash, int status, String reason, long freshUntil,
+                            Header[] headers) throws IOException {
+        Files.createDirectories(indexFolder);
+        Path index = getIndexPath(requestKey);
+        Path temporary = Files.createTempFile(indexFolder, index.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(contentHash + "\n" + status + " " + reason + "\n" + freshUntil + "\n");
+            for (Header header : headers) {
+                if (isStored(header)) {
+                    writer.write(header.getName() + ": " + header.getValue() + "\n");
+                }
+            }
+        }
+        move(temporary, index);
+    }
+
+    /**
+     * Returns the time the response is fresh until, now if it must be revalidated at once
+     */
+    private long getFreshUntil(Header[] headers) {
+        long now = System.currentTimeMillis();
+        long lifetimeMillis = -1;
+        long sharedLifetimeMillis = -1;
+        for (Header header : headers) {
+            if (!"Cache-Control".equalsIgnoreCase(header.getName())) {
+                continue;
+            }
+            try {
+                for (HeaderElement element : header.getElements()) {
+                    String name = element.getName().toLowerCase();
+                    if ("no-cache".equals(name)) {
+                        return now;
+                    } else if ("max-age".equals(name)) {
+                        lifetimeMillis = parseSeconds(element.getValue());
+                    } else if ("s-maxage".equals(name)) {
+                        sharedLifetimeMillis = parseSeconds(element.getValue());
+                    }
+                }
+            } catch (ParseException e) {
+                // the directives are ignored
+            }
+        }
+        if (sharedLifetimeMillis >= 0) {
+            lifetimeMillis = sharedLifetimeMillis;
+        }
+        // the dates are compared with the clock of the server
+        Long date = parseDate(headers, "Date");
+        long serverNow = date == null ? now : date;
+        if (lifetimeMillis < 0 && findHeader(headers, "Expires") != null) {
+            // an invalid date, e.g. 0, means already expired
+            Long expires = parseDate(headers, "Expires");
+            lifetimeMillis = expires == null ? 0 : Math.max(expires - serverNow, 0);
+        }
+        if (lifetimeMillis < 0) {
+            Long lastModified = parseDate(headers, "Last-Modified");
+            lifetimeMillis = lastModified == null ? 0 : Math.max(serverNow - lastModified, 0) / 10;
+        }
+        Header age = findHeader(headers, "Age");
+        long ageMillis = age == null ? 0 : parseSeconds(age.getValue());
+        return now + Math.max(Math.min(lifetimeMillis - ageMillis, maxAgeMillis), 0);
+    }
+
+    private static boolean hasValidator(Header[] headers) {
+        return findHeader(headers, "ETag") != null || parseDate(headers, "Last-Modified") != null;
+    }
+
+    private static boolean isStored(Header header) {
+        return !TRANSIENT_HEADERS.contains(header.getName().toLowerCase());
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return value == null ? 0 : TimeUnit.SECONDS.toMillis(Math.max(Long.parseLong(value.trim()), 0));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Long parseDate(Header[] headers, String name) {
+        Header header = findHeader(headers, name);
+        if (header == null) {
+            return null;
+        }
+        try {
+            return DateUtils.parseDate(header.getValue()).getTime();
+        } catch (DateParseException e) {
+            return null;
+        }
+    }
+
+    private static Header findHeader(Header[] headers, String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    private Path getIndexPath(String requestKey) {
+        return indexFolder.resolve(DigestUtils.shaHex(requestKey));
+    }
+
+    private Path getContentPath(String contentHash) {
+        // a level of subfolders keeps the folders small
+        return contentFolder.resolve(contentHash.substring(0, 2)).resolve(contentHash);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Cached response, the body is read from the content file
+     */
+    static class Entry {
+        private final String contentHash;
+        private final int status;
+        private final String reason;
+        private final long freshUntil;
+        private final Header[] headers;
+        private final Path content;
+
+        private Entry(String contentHash, int status, String reason, long freshUntil, Header[] headers,
+                      Path content) {
+            this.contentHash = contentHash;
+            this.status = status;
+            this.reason = reason;
+            this.freshUntil = freshUntil;
+            this.headers = headers;
+            this.content = content;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        String getReason() {
+            return reason;
+        }
+
+        Header[] getHeaders() {
+            return headers;
+        }
+
+        Path getContent() {
+            return content;
+        }
+
+        /**
+         * Returns true if the entry can be served without asking the server
+         */
+        boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+
+        /**
+         * Returns the value of the header or null if the response has no such header
+         */
+        String getHeader(String name) {
+            Header header = findHeader(headers, name);
+            return header == null ? null : header.getValue();
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package com.template.autoqa.core.web.proxy;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.core.http_api.HttpConnectionPool;
+import com.template.autoqa.core.metrics.Operation;
+import com.template.autoqa.core.metrics.OperationMetrics;
+import com.template.autoqa.utils.Config;
+import com.template.autoqa.utils.GeneralUtils;
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.DefaultHttpServerConnection;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.ResponseConnControl;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+
+/**
+ * Local HTTP proxy the browsers of {@link com.template.autoqa.core.web.selenium.BaseWebDriver} go through when
+ * {@code web_proxy_enabled} is set. It listens on an ephemeral loopback port, one proxy per process:
+ * <ul>
+ * <li>the urls matching a {@code web_proxy_deny} pattern (analytics, ads) get an empty response without
+ * going to the network, 200 rather than 204 as some engines report a script without content as a load error;
+ * a pattern is a url with {@code *} wildcards, e.g. {@code *://*.doubleclick.net/*}</li>
+ * <li>the static assets ({@code web_proxy_cache_types} content types, e.g. scripts, styles, fonts, images)
+ * fetched by GET are kept in {@link AssetCache} in {@code web_proxy_cache_dir} (relative to the project folder),
+ * shared by the workers and the runs, unless the server forbids caching them. An asset is served from the cache
+ * while it's fresh by its {@code Cache-Control}/{@code Expires} headers, at most {@code web_proxy_cache_max_age};
+ * a stale one, or one the browser asks to reload, is revalidated with {@code If-None-Match} and
+ * {@code If-Modified-Since}, and a {@code 304} answer serves the cached body</li>
+ * <li>the rest of the requests are forwarded through a pooled keep-alive client, the redirects and the cookies
+ * are left to the browser</li>
+ * </ul>
+ * The https connections are tunneled as they are, so they can be blocked by the host but are neither cached
+ * nor timed per request. The timing of every request is appended to {@code web_proxy_log_file} by
+ * {@link RequestLog} and recorded as {@link Operation#PROXY_REQUEST} per host
+ */
+public class BrowserProxy {
+    private static final Logger logger = LoggerFactory.getLogger(BrowserProxy.class);
+
+    private static final String ENABLED_KEY = "web_proxy_enabled";
+    private static final String DENY_KEY = "web_proxy_deny";
+    private static final String CACHE_DIR_KEY = "web_proxy_cache_dir";
+    private static final String CACHE_MAX_AGE_KEY = "web_proxy_cache_max_age";
+    private static final String CACHE_TYPES_KEY = "web_proxy_cache_types";
+    private static final String LOG_FILE_KEY = "web_proxy_log_file";
+
+    private static final String DEFAULT_CACHE_DIR = ".autoqa/proxy-cache";
+    private static final Duration DEFAULT_CACHE_MAX_AGE = Duration.ofHours(24);
+    private static final List<String> DEFAULT_CACHE_TYPES = Arrays.asList("javascript", "css", "font", "image/");
+    private static final String DEFAULT_LOG_FILE = "target/proxy/requests.tsv";
+    private static final String POOL_NAME = "browser-proxy";
+    private static final int SOCKET_TIMEOUT = 30 * 1000;
+    private static final int SOCKET_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_CACHED_BYTES = 16 * 1024 * 1024;
+    private static final String NETWORK = "network";
+    private static final String CACHE = "cache";
+    private static final String REVALIDATED = "revalidated";
+    private static final String BLOCKED = "blocked";
+    private static final String TUNNEL = "tunnel";
+    private static final String ERROR = "error";
+    private static final Set<String> REQUEST_HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList(
+            HTTP.CONTENT_LEN.toLowerCase(), HTTP.TRANSFER_ENCODING.toLowerCase(), HTTP.CONN_DIRECTIVE.toLowerCase(),
+            HTTP.CONN_KEEP_ALIVE.toLowerCase(), HTTP.TARGET_HOST.toLowerCase(), HTTP.EXPECT_DIRECTIVE.toLowerCase(),
+            "proxy-connection", "proxy-authorization", "te", "trailer", "upgrade"));
+    private static final Set<String> RESPONSE_HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList(
+            HTTP.CONTENT_LEN.toLowerCase(), HTTP.TRANSFER_ENCODING.toLowerCase(), HTTP.CONN_DIRECTIVE.toLowerCase(),
+            HTTP.CONN_KEEP_ALIVE.toLowerCase(), "proxy-authenticate", "trailer", "upgrade"));
+
+    private static BrowserProxy instance;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final HttpConnectionPool pool;
+    private final AssetCache cache;
+    private final RequestLog requestLog;
+    private final HttpParams params = new BasicHttpParams();
+    private final HttpProcessor responseProcessor = new ImmutableHttpProcessor(
+            new HttpResponseInterceptor[]{new ResponseContent(), new ResponseConnControl()});
+    private final ConnectionReuseStrategy reuseStrategy = new DefaultConnectionReuseStrategy();
+    private volatile List<Pattern> denyPatterns;
+    private volatile List<String> cacheTypes;
+    private final Runnable configListener = new Runnable() {
+        public void run() {
+            applyConfig();
+        }
+    };
+
+    private BrowserProxy() throws IOException {
+        Config config = Config.getInstance();
+        String cacheDir = config.get(CACHE_DIR_KEY).trim();
+        File cacheFolder = GeneralUtils.getProjectFile(cacheDir.isEmpty() ? DEFAULT_CACHE_DIR : cacheDir);
+        cache = new AssetCache(cacheFolder.toPath(),
+                config.getDuration(CACHE_MAX_AGE_KEY, TimeUnit.SECONDS, DEFAULT_CACHE_MAX_AGE).toMillis());
+        String logFile = config.get(LOG_FILE_KEY).trim();
+        requestLog = new RequestLog(Paths.get(logFile.isEmpty() ? DEFAULT_LOG_FILE : logFile));
+        applyConfig();
+        config.addChangeListener(configListener);
+
+        params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, SOCKET_TIMEOUT);
+        params.setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, SOCKET_BUFFER_SIZE);
+        params.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, true);
+        pool = HttpConnectionPool.acquire(POOL_NAME);
+        // a browser keeps several connections open, each of them is served by its own thread
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "browser-proxy-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread acceptor = new Thread("browser-proxy") {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Browser proxy has started on {}", getAddress());
+    }
+
+    /**
+     * Returns the proxy of this process starting it on the first call
+     *
+     * @return the proxy or null if {@code web_proxy_enabled} isn't set
+     */
+    public static synchronized BrowserProxy getInstance() {
+        if (!Config.getInstance().getBoolean(ENABLED_KEY, false)) {
+            return null;
+        }
+        if (instance == null) {
+            try {
+                instance = new BrowserProxy();
+            } catch (IOException e) {
+                throw new TestInterruptException("Browser proxy cannot be started", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the {@code host:port} address to be set as the http and the ssl proxy of a browser
+     */
+    public String getAddress() {
+        return getHost() + ":" + getPort();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void applyConfig() {
+        Config config = Config.getInstance();
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String pattern : config.getList(DENY_KEY)) {
+            StringBuilder regex = new StringBuilder();
+            for (String part : pattern.split("\\*", -1)) {
+                regex.append(regex.length() == 0 ? "" : ".*").append(Pattern.quote(part));
+            }
+            patterns.add(Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE));
+        }
+        denyPatterns = patterns;
+        List<String> types = config.getList(CACHE_TYPES_KEY);
+        cacheTypes = types.isEmpty() ? DEFAULT_CACHE_TYPES : types;
+    }
+
+    private boolean isDenied(String url) {
+        for (Pattern pattern : denyPatterns) {
+            if (pattern.matcher(url).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Browser proxy cannot accept a connection: {}", e.toString());
+                }
+                continue;
+            }
+            executor.execute(new Runnable() {
+                public void run() {
+                    serve(socket);
+                }
+            });
+        }
+    }
+
+    /**
+     * Serves the keep-alive connection of a browser until it's closed, idle for the socket timeout
+     * or turned into a tunnel
+     */
+    private void serve(Socket socket) {
+        DefaultHttpServerConnection connection = new DefaultHttpServerConnection();
+        try {
+            connection.bind(socket, params);
+            boolean isKeptAlive = true;
+            while (isKeptAlive && connection.isOpen()) {
+                HttpRequest request = connection.receiveRequestHeader();
+                if ("CONNECT".equalsIgnoreCase(request.getRequestLine().getMethod())) {
+                    tunnel(socket, request);
+                    return;
+                }
+                if (request instanceof HttpEntityEnclosingRequest) {
+                    connection.receiveRequestEntity((HttpEntityEnclosingRequest) request);
+                }
+                isKeptAlive = exchange(connection, request);
+            }
+        } catch (IOException | HttpException e) {
+            // the browser has closed the connection or left it idle
+            logger.trace("Browser proxy connection has been closed: {}", e.toString());
+        } finally {
+            try {
+                connection.shutdown();
+            } catch (IOException e) {
+                // do nothing
+            }
+        }
+    }
+
+    /**
+     * Answers the request from the deny list, the cache or the network
+     *
+     * @return true if the connection can be kept alive
+     */
+    private boolean exchange(DefaultHttpServerConnection connection, HttpRequest request)
+            throws IOException, HttpException {
+        long startMillis = System.currentTimeMillis();
+        long start = OperationMetrics.start();
+        String method = request.getRequestLine().getMethod();
+        String url = request.getRequestLine().getUri();
+        HttpEntity upstreamEntity = null;
+        HttpResponse response;
+        String source;
+        if (isDenied(url)) {
+            response = createResponse(request, HttpStatus.SC_OK, "OK");
+            response.setEntity(new ByteArrayEntity(new byte[0]));
+            source = BLOCKED;
+        } else {
+            String cacheKey = getCacheKey(request);
+            AssetCache.Entry cached = cacheKey == null ? null : cache.get(cacheKey);
+            if (cached != null && cached.isFresh() && !isReloaded(request)) {
+                response = createCachedResponse(request, cached);
+                source = CACHE;
+            } else {
+                // the browser's own validators are passed as they are, a 304 answer to them goes to the browser
+                if (cached != null && (request.containsHeader("If-None-Match")
+                        || request.containsHeader("If-Modified-Since"))) {
+                    cached = null;
+                }
+                try {
+                    HttpResponse upstream = forward(request, cached);
+                    upstreamEntity = upstream.getEntity();
+                    int upstreamStatus = upstream.getStatusLine().getStatusCode();
+                    if (cached != null && upstreamStatus == HttpStatus.SC_NOT_MODIFIED) {
+                        response = createCachedResponse(request, cache.refresh(cacheKey, cached,
+                                filterHeaders(upstream.getAllHeaders())));
+                        source = REVALIDATED;
+                    } else {
+                        response = createResponse(request, upstreamStatus, upstream.getStatusLine().getReasonPhrase());
+                        response.setHeaders(filterHeaders(upstream.getAllHeaders()));
+                        if (cacheKey != null && isCacheable(upstream)) {
+                            InputStream content = upstreamEntity.getContent();
+                            byte[] body = readAtMost(content, MAX_CACHED_BYTES);
+                            if (body.length <= MAX_CACHED_BYTES) {
+                                cache.put(cacheKey, upstreamStatus, upstream.getStatusLine().getReasonPhrase(),
+                                        response.getAllHeaders(), body);
+                                response.setEntity(new ByteArrayEntity(body));
+                            } else {
+                                // a body of unknown length turned out too big, it's sent on as it's read
+                                response.setEntity(new InputStreamEntity(
+                                        new SequenceInputStream(new ByteArrayInputStream(body), content), -1));
+                            }
+                        } else {
+                            response.setEntity(upstreamEntity);
+                        }
+                        source = NETWORK;
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.debug("Browser proxy cannot forward {} {}: {}", method, url, e.toString());
+                    response = createResponse(request, HttpStatus.SC_BAD_GATEWAY, "Bad Gateway");
+                    response.setEntity(new StringEntity("Cannot forward the request: " + e,
+                            ContentType.create("text/plain", StandardCharsets.UTF_8)));
+                    source = ERROR;
+                }
+            }
+        }
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ExecutionContext.HTTP_REQUEST, request);
+        int status = response.getStatusLine().getStatusCode();
+        long sentBytes = connection.getMetrics().getSentBytesCount();
+        try {
+            if ("HEAD".equalsIgnoreCase(method) || status == HttpStatus.SC_NO_CONTENT
+                    || status == HttpStatus.SC_NOT_MODIFIED) {
+                response.setEntity(null);
+            }
+            responseProcessor.process(response, context);
+            connection.sendResponseHeader(response);
+            if (response.getEntity() != null) {
+                connection.sendResponseEntity(response);
+            }
+            connection.flush();
+        } finally {
+            // the rest of an unsent body is read, so the pooled connection can be reused
+            EntityUtils.consume(upstreamEntity);
+            long millis = System.currentTimeMillis() - startMillis;
+            requestLog.write(startMillis, millis, source, status,
+                    connection.getMetrics().getSentBytesCount() - sentBytes, method, url,
+                    getHeader(request, "Referer"));
+            if (!BLOCKED.equals(source)) {
+                OperationMetrics.record(Operation.PROXY_REQUEST,
+                        getHost(url) + (NETWORK.equals(source) || ERROR.equals(source) ? "" : " (" + source + ")"),
+                        start, status >= 400);
+            }
+        }
+        return reuseStrategy.keepAlive(response, context);
+    }
+
+    /**
+     * Reads the stream until its end or one byte over the limit
+     *
+     * @return the bytes read, longer than the limit if the stream has more
+     */
+    private static byte[] readAtMost(InputStream content, int limit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[SOCKET_BUFFER_SIZE];
+        int read;
+        while (bytes.size() <= limit
+                && (read = content.read(buffer, 0, Math.min(buffer.length, limit + 1 - bytes.size()))) >= 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Sends the request to the server
+     *
+     * @param stale cached response to be revalidated, null to fetch the resource
+     */
+    private HttpResponse forward(HttpRequest request, AssetCache.Entry stale) throws IOException {
+        String method = request.getRequestLine().getMethod();
+        URI uri = URI.create(request.getRequestLine().getUri());
+        HttpRequestBase forwardedRequest;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            ForwardedEntityRequest entityRequest = new ForwardedEntityRequest(method, uri);
+            entityRequest.setEntity(((HttpEntityEnclosingRequest) request).getEntity());
+            forwardedRequest = entityRequest;
+        } else {
+            // a request without body mustn't get Content-Length: 0
+            forwardedRequest = new ForwardedRequest(method, uri);
+        }
+        for (Header header : request.getAllHeaders()) {
+            if (!REQUEST_HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase())) {
+                forwardedRequest.addHeader(header);
+            }
+        }
+        if (stale != null) {
+            String eTag = stale.getHeader("ETag");
+            String lastModified = stale.getHeader("Last-Modified");
+            if (eTag != null) {
+                forwardedRequest.addHeader("If-None-Match", eTag);
+            }
+            if (lastModified != null) {
+                forwardedRequest.addHeader("If-Modified-Since", lastModified);
+            }
+        }
+        // the browser follows the redirects, answers the challenges and keeps the cookies itself
+        forwardedRequest.getParams().setBooleanParameter(ClientPNames.HANDLE_REDIRECTS, false);
+        forwardedRequest.getParams().setBooleanParameter(ClientPNames.HANDLE_AUTHENTICATION, false);
+        forwardedRequest.getParams().setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.IGNORE_COOKIES);
+        return pool.execute(forwardedRequest);
+    }
+
+    /**
+     * Returns the key of the request in the cache or null if the response mustn't be taken from the cache.
+     * The body is cached as it's encoded by the server, so the accepted encodings are a part of the key
+     */
+    private static String getCacheKey(HttpRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getRequestLine().getMethod())
+                || request.containsHeader("Authorization")) {
+            return null;
+        }
+        String encodings = getHeader(request, "Accept-Encoding");
+        return request.getRequestLine().getUri() + "\n" + (encodings == null ? "" : encodings.replace(" ", ""));
+    }
+
+    /**
+     * Returns true if the browser asks to skip the caches, e.g. on a forced reload
+     */
+    private static boolean isReloaded(HttpRequest request) {
+        String cacheControl = getHeader(request, "Cache-Control");
+        String pragma = getHeader(request, "Pragma");
+        return cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("max-age=0"))
+                || pragma != null && pragma.contains("no-cache");
+    }
+
+    private static Header[] filterHeaders(Header[] headers) {
+        List<Header> filtered = new ArrayList<Header>();
+        for (Header header : headers) {
+            if (!RESPONSE_HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase())) {
+                filtered.add(header);
+            }
+        }
+        return filtered.toArray(new Header[filtered.size()]);
+    }
+
+    private static HttpResponse createCachedResponse(HttpRequest request, AssetCache.Entry cached) {
+        HttpResponse response = createResponse(request, cached.getStatus(), cached.getReason());
+        response.setHeaders(cached.getHeaders());
+        response.setEntity(new FileEntity(cached.getContent().toFile(), (ContentType) null));
+        return response;
+    }
+
+    private boolean isCacheable(HttpResponse response) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || response.getEntity() == null
+                || response.getEntity().getContentLength() > MAX_CACHED_BYTES
+                || response.containsHeader("Set-Cookie")) {
+            return false;
+        }
+        // no-cache responses are stored, but revalidated on every request
+        String cacheControl = getHeader(response, "Cache-Control");
+        if (cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"))) {
+            return false;
+        }
+        String vary = getHeader(response, "Vary");
+        if (vary != null && !vary.trim().equalsIgnoreCase("Accept-Encoding")) {
+            return false;
+        }
+        String contentType = getHeader(response, HTTP.CONTENT_TYPE);
+        if (contentType != null) {
+            contentType = contentType.toLowerCase(Locale.ROOT);
+            for (String type : cacheTypes) {
+                if (contentType.contains(type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Connects the browser to the https server and copies the bytes both ways until one of them closes
+     * the connection. The browser sends nothing but the request until the connection is established,
+     * so nothing is left in the buffer of the http connection
+     */
+    private void tunnel(final Socket socket, HttpRequest request) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        String authority = request.getRequestLine().getUri();
+        int colon = authority.lastIndexOf(':');
+        String host = colon > 0 ? authority.substring(0, colon) : authority;
+        int port = colon > 0 ? Integer.parseInt(authority.substring(colon + 1)) : 443;
+        String url = "https://" + host + (port == 443 ? "" : ":" + port) + "/";
+        OutputStream browserOutput = socket.getOutputStream();
+        if (isDenied(url)) {
+            browserOutput.write("HTTP/1.1 403 Forbidden\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            browserOutput.flush();
+            requestLog.write(startMillis, 0, BLOCKED, HttpStatus.SC_FORBIDDEN, 0, "CONNECT", authority, null);
+            return;
+        }
+        final Socket server = new Socket();
+        try {
+            server.connect(new InetSocketAddress(host, port), SOCKET_TIMEOUT);
+        } catch (IOException e) {
+            server.close();
+            browserOutput.write("HTTP/1.1 502 Bad Gateway\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            browserOutput.flush();
+            requestLog.write(startMillis, System.currentTimeMillis() - startMillis, ERROR, HttpStatus.SC_BAD_GATEWAY,
+                    0, "CONNECT", authority, null);
+            return;
+        }
+        try {
+            // the tunnel is idle while the page is open, so it isn't limited by the socket timeout
+            socket.setSoTimeout(0);
+            browserOutput.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            browserOutput.flush();
+            Future<Long> received = executor.submit(new Callable<Long>() {
+                public Long call() {
+                    return copy(server, socket);
+                }
+            });
+            long bytes = copy(socket, server);
+            try {
+                bytes += received.get(SOCKET_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                received.cancel(true);
+            }
+            requestLog.write(startMillis, System.currentTimeMillis() - startMillis, TUNNEL, HttpStatus.SC_OK,
+                    bytes, "CONNECT", authority, null);
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Copies the bytes until the end of the input and passes the end to the output
+     *
+     * @return number of bytes copied
+     */
+    private static long copy(Socket from, Socket to) {
+        long count = 0;
+        byte[] buffer = new byte[SOCKET_BUFFER_SIZE];
+        try {
+            InputStream input = from.getInputStream();
+            OutputStream output = to.getOutputStream();
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                output.write(buffer, 0, read);
+                output.flush();
+                count += read;
+            }
+            to.shutdownOutput();
+        } catch (IOException e) {
+            // one of the sides has closed the connection
+        }
+        return count;
+    }
+
+    private static HttpResponse createResponse(HttpRequest request, int status, String reason) {
+        ProtocolVersion version = request.getRequestLine().getProtocolVersion();
+        return new BasicHttpResponse(version.lessEquals(HttpVersion.HTTP_1_1) ? version : HttpVersion.HTTP_1_1,
+                status, reason);
+    }
+
+    private static String getHeader(HttpMessage message, String name) {
+        Header header = message.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    private static String getHost(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? url : host;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Request without body with arbitrary method sent to the server
+     */
+    private static class ForwardedRequest extends HttpRequestBase {
+        private final String method;
+
+        ForwardedRequest(String method, URI uri) {
+            this.method = method;
+            setURI(uri);
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * Request with body with arbitrary method sent to the server
+     */
+    private static class ForwardedEntityRequest extends HttpEntityEnclosingRequestBase {
+        private final String method;
+
+        ForwardedEntityRequest(String method, URI uri) {
+            this.method = method;
+            setURI(uri);
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.template.autoqa.core.web.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+
+/**
+ * Timings of the requests passed through {@link BrowserProxy}, one tab separated line per request:
+ * {@code time, milliseconds, source, status, bytes, method, url, referer}. The source is {@code network},
+ * {@code cache}, {@code revalidated} (served from the cache after a {@code 304} of the server), {@code blocked},
+ * {@code error} or {@code tunnel} (an https connection, timed from open to close); the referer
+ * is the page which has made the request. Every line is appended with one write, so the workers of a distributed
+ * run can share the file
+ */
+class RequestLog {
+    private static final Logger logger = LoggerFactory.getLogger(RequestLog.class);
+
+    private final Path file;
+    private OutputStream output;
+    private boolean isBroken;
+
+    RequestLog(Path file) {
+        this.file = file;
+    }
+
+    synchronized void write(long startMillis, long millis, String source, int status, long bytes, String method,
+                            String url, String referer) {
+        if (isBroken) {
+            return;
+        }
+        String line = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(startMillis)) + "\t" + millis
+                + "\t" + source + "\t" + status + "\t" + bytes + "\t" + method + "\t" + url + "\t"
+                + (referer == null ? "" : referer) + "\n";
+        try {
+            if (output == null) {
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                output = new FileOutputStream(file.toFile(), true);
+            }
+            output.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            isBroken = true;
+            logger.warn("Proxy requests cannot be written to {}: {}", file, e.toString());
+        }
+    }
+}
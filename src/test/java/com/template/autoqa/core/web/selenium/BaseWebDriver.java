@@ -2,11 +2,24 @@ package com.template.autoqa.core.web.selenium;
 
 
 import com.velti.template.core.exceptions.TestInterruptException;
+import com.velti.template.core.metrics.Operation;
+import com.velti.template.core.metrics.OperationMetrics;
 import com.velti.template.core.web.elements.BaseWebElement;
+import com.velti.template.core.web.elements.BaseWebElementList;
+import com.velti.template.core.web.elements.CommandBatch;
+import com.velti.template.core.web.elements.ElementSnapshot;
+import com.velti.template.core.web.pages.BaseWebPage;
+import com.velti.template.core.web.proxy.BrowserProxy;
+import com.velti.template.utils.Config;
 import com.velti.template.utils.GeneralUtils;
 import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
 import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
@@ -17,28 +30,72 @@ import org.openqa.selenium.remote.DesiredCapabilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class BaseWebDriver implements WebDriver {
-    private final Logger logger = LoggerFactory.getLogger(BaseWebDriver.class);
+    private static final Logger logger = LoggerFactory.getLogger(BaseWebDriver.class);
 
     private static final long TIMEOUT_MAX_REQUEST_TIME = 2 * 60 * 1000;
     private static final String HTMLUNIT = "htmlunit";
+    public static final String HYBRID = "hybrid";
     private static final String FIREFOX = "firefox";
     private static final String IEXPLORER = "iexplorer";
     private static final String CHROME = "chrome";
+    private static final String SYNC_SCRIPT_PATH = "/js/sync.js";
+    private static final String SNAPSHOT_SCRIPT_PATH = "/js/snapshot.js";
+    private static final String FILTER_SCRIPT_PATH = "/js/filter.js";
+    private static final String MUTATION_SCRIPT_PATH = "/js/mutation.js";
+    private static final String BATCH_SCRIPT_PATH = "/js/batch.js";
+    private static final String SYNC_MODE_EVENT = "event";
+    private static final String SYNC_MODE_POLLING = "polling";
+    private static final long DEFAULT_SYNC_QUIET_MILLIS = 50;
+    private static final int SCRIPT_KEY_LENGTH = 40;
     private static final String MAXIMIZE_BROWSER_WINDOW = "if (window.screen) { window.moveTo(0, 0); window.resizeTo(window.screen.availWidth, window.screen.availHeight); }";
 
-    private static final BaseWebDriver instance = new BaseWebDriver();
+    private static final Map<String, String> scripts = new HashMap<String, String>();
+
+    private final Map<Class<?>, BaseWebPage> pages = new HashMap<Class<?>, BaseWebPage>();
+
     protected WebDriver webDriver;
+    private WebDriverPool.PooledBrowser browser;
+    private boolean isEventSync;
+    private long epoch;
+    private boolean isMutationWaitSupported = true;
+    private Object pageToken;
+    private long syncQuietMillis = DEFAULT_SYNC_QUIET_MILLIS;
+
+    // set while the hybrid mode runs in the in-process browser
+    private String fallbackBrowserType;
+    private String hybridScope;
 
-    public static BaseWebDriver getInstance() {
-        return instance;
+    /**
+     * Creates the driver without a browser, call {@link #startBrowser} to get one.
+     * The sync mode is read from {@code web_sync_mode} ({@code event} by default or {@code polling})
+     * and {@code web_sync_quiet_millis} settings
+     */
+    public BaseWebDriver() {
+        Config config = Config.getInstance();
+        isEventSync = !SYNC_MODE_POLLING.equalsIgnoreCase(config.get("web_sync_mode").trim());
+        setSyncQuietMillis(config.getLong("web_sync_quiet_millis", DEFAULT_SYNC_QUIET_MILLIS));
     }
 
-    private BaseWebDriver() {
-        // do nothing
+    /**
+     * Sets how long the page must stay without network requests and short timers to be considered idle by
+     * {@link #sync()}
+     *
+     * @param syncQuietMillis quiet window in milliseconds
+     */
+    public void setSyncQuietMillis(long syncQuietMillis) {
+        this.syncQuietMillis = syncQuietMillis;
     }
 
     /**
@@ -78,28 +135,290 @@ public class BaseWebDriver implements WebDriver {
     }
 
     /**
-     * Starts the browser
+     * Returns the list of all the elements matching the locator
+     *
+     * @return an instance of BaseWebElementList
+     */
+    public BaseWebElementList getWebElementList(By by) {
+        return new BaseWebElementList(this, by, null);
+    }
+
+    /**
+     * Returns the list of all the elements matching the locator inside the parent element
+     *
+     * @return an instance of BaseWebElementList
+     */
+    public BaseWebElementList getWebElementList(By by, BaseWebElement parent) {
+        return new BaseWebElementList(this, by, parent);
+    }
+
+    /**
+     * Returns the page object of the class, it's created on the first call and reused by the driver after that.
+     * The elements of the page are looked up again when the page state changes, see {@link #getEpoch()}
+     *
+     * @param pageClass class of the page with a public constructor with the driver parameter
+     * @return an instance of the page
+     */
+    public <T extends BaseWebPage> T getPage(Class<T> pageClass) {
+        BaseWebPage page = pages.get(pageClass);
+        if (page == null) {
+            try {
+                page = pageClass.getConstructor(BaseWebDriver.class).newInstance(this);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    // e.g. a wrong locator declaration
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new TestInterruptException(pageClass.getName() + " page cannot be created", e);
+            } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+                throw new TestInterruptException(pageClass.getName() + " page cannot be created", e);
+            }
+            pages.put(pageClass, page);
+        }
+        return pageClass.cast(page);
+    }
+
+    /**
+     * Starts a batch of element actions and reads run in one call to the browser
+     *
+     * @return an instance of CommandBatch
+     */
+    public CommandBatch batch() {
+        return new CommandBatch(this);
+    }
+
+    /**
+     * Returns the number of the page state. It's changed on navigation and when {@link #sync()} notices
+     * a new document or DOM modifications, the web elements found before the change are looked up again
+     *
+     * @return page state number
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Makes the web elements found so far to be looked up again on the next use
+     */
+    public void invalidateElements() {
+        epoch++;
+        pageToken = null;
+    }
+
+    /**
+     * Leases a browser of specified type from {@link WebDriverPool}.
+     * The browser must be returned by {@link #releaseBrowser()} when it isn't needed anymore
      */
     public void startBrowser(String browserType) {
+        if (browser != null) {
+            releaseBrowser();
+        }
+        fallbackBrowserType = null;
+        hybridScope = null;
+        logger.debug("'{}' browser is leasing...", browserType);
+        invalidateElements();
+        browser = WebDriverPool.getInstance().lease(browserType);
+        webDriver = browser.getWebDriver();
+        isMutationWaitSupported = true;
+        webDriver.manage().timeouts().setScriptTimeout(TIMEOUT_MAX_REQUEST_TIME, TimeUnit.MILLISECONDS);
+        if (webDriver instanceof HybridHtmlUnitDriver) {
+            // the errors of the previous lease
+            ((HybridHtmlUnitDriver) webDriver).takeScriptError();
+        }
+        logger.debug("Browser has been leased");
+    }
+
+    /**
+     * Leases the in-process HtmlUnit browser which falls back to a real one when the page needs
+     * an unsupported feature. The fallback happens when a page script fails or an action throws
+     * an HtmlUnit specific or {@link UnsupportedOperationException} exception: the real browser is leased,
+     * the current url is opened in it with the cookies of the in-process one, and the failed action is repeated.
+     * The rest of the page state, e.g. the typed text, isn't transferred.
+     * <br/>The scope which has fallen back is remembered, so it starts in the real browser at once next time
+     *
+     * @param fallbackBrowserType type of the real browser
+     * @param scope               name of the test class
+     */
+    public void startHybridBrowser(String fallbackBrowserType, String scope) {
+        if (HTMLUNIT.equals(fallbackBrowserType) || HybridFallbacks.contains(scope)) {
+            startBrowser(fallbackBrowserType);
+            return;
+        }
+        startBrowser(HYBRID);
+        this.fallbackBrowserType = fallbackBrowserType;
+        hybridScope = scope;
+    }
+
+    /**
+     * Returns true if the hybrid mode is still in the in-process browser
+     */
+    public boolean isHybrid() {
+        return fallbackBrowserType != null;
+    }
+
+    /**
+     * Switches the hybrid mode to the real browser if the exception is caused by a feature which isn't supported
+     * by the in-process browser
+     *
+     * @param e exception thrown by an action
+     * @return true if the action should be repeated in the real browser
+     */
+    public boolean fallBack(RuntimeException e) {
+        if (!isHybrid() || !isUnsupported(e)) {
+            return false;
+        }
+        fallBack(e.toString(), null);
+        return true;
+    }
+
+    /**
+     * Switches the hybrid mode to the real browser if a page script has failed since the previous check.
+     * The action which has caused the error isn't repeated, the real browser opens the current url
+     *
+     * @return true if the browser has been switched
+     */
+    public boolean checkScriptErrors() {
+        if (!isHybrid()) {
+            return false;
+        }
+        String error = ((HybridHtmlUnitDriver) webDriver).takeScriptError();
+        if (error == null) {
+            return false;
+        }
+        fallBack("script error: " + error, null);
+        return true;
+    }
+
+    private void fallBack(String reason, String url) {
+        String realBrowserType = fallbackBrowserType;
+        String scope = hybridScope;
+        logger.warn("'{}' needs a real browser ({}), switching to '{}' browser", scope, reason, realBrowserType);
+        HybridFallbacks.add(scope);
+        Set<Cookie> cookies = new HashSet<Cookie>();
+        try {
+            if (url == null) {
+                url = webDriver.getCurrentUrl();
+            }
+            cookies.addAll(webDriver.manage().getCookies());
+        } catch (WebDriverException e) {
+            logger.debug("State of the in-process browser cannot be read: {}", e.getMessage());
+        }
+        startBrowser(realBrowserType);
+        if (url == null || !url.startsWith("http")) {
+            return;
+        }
+        browser.addOrigin(url);
+        webDriver.get(url);
+        if (!cookies.isEmpty()) {
+            for (Cookie cookie : cookies) {
+                try {
+                    webDriver.manage().addCookie(cookie);
+                } catch (WebDriverException e) {
+                    logger.debug("'{}' cookie cannot be transferred: {}", cookie.getName(), e.getMessage());
+                }
+            }
+            webDriver.navigate().refresh();
+        }
+    }
+
+    private static boolean isUnsupported(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String className = cause.getClass().getName();
+            if (cause instanceof UnsupportedOperationException || className.startsWith("com.gargoylesoftware.")
+                    || className.startsWith("net.sourceforge.htmlunit.")) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the browser to {@link WebDriverPool} so it can be used by other tests
+     */
+    public void releaseBrowser() {
+        releaseBrowser(false);
+    }
+
+    /**
+     * Returns the browser to {@link WebDriverPool}
+     *
+     * @param isBroken true if the browser has failed and must be quit instead of being reused
+     */
+    public void releaseBrowser(boolean isBroken) {
+        if (browser != null) {
+            WebDriverPool.getInstance().release(browser, isBroken);
+            browser = null;
+            webDriver = null;
+        }
+    }
+
+    /**
+     * Starts new browser of specified type. The browser goes through {@link BrowserProxy} if it's enabled
+     *
+     * @return started browser
+     */
+    static WebDriver createWebDriver(String browserType) {
         logger.debug("'{}' browser is opening...", browserType);
+        BrowserProxy proxy = BrowserProxy.getInstance();
+        WebDriver webDriver;
         if (HTMLUNIT.equals(browserType)) {
             webDriver = new HtmlUnitDriver();
             ((HtmlUnitDriver) webDriver).setJavascriptEnabled(true);
+            if (proxy != null) {
+                ((HtmlUnitDriver) webDriver).setProxy(proxy.getHost(), proxy.getPort());
+            }
+        } else if (HYBRID.equals(browserType)) {
+            webDriver = new HybridHtmlUnitDriver();
+            if (proxy != null) {
+                ((HtmlUnitDriver) webDriver).setProxy(proxy.getHost(), proxy.getPort());
+            }
+            warmUp(webDriver);
         } else if (FIREFOX.equals(browserType)) {
-            webDriver = new FirefoxDriver();
-            executeJavascript(MAXIMIZE_BROWSER_WINDOW);
+            webDriver = new FirefoxDriver(withProxy(DesiredCapabilities.firefox(), proxy));
+            ((JavascriptExecutor) webDriver).executeScript(MAXIMIZE_BROWSER_WINDOW);
         } else if (IEXPLORER.equals(browserType)) {
             DesiredCapabilities ieCapabilities = DesiredCapabilities.internetExplorer();
             ieCapabilities.setCapability(InternetExplorerDriver.INTRODUCE_FLAKINESS_BY_IGNORING_SECURITY_DOMAINS, true);
             ieCapabilities.setCapability(CapabilityType.ForSeleniumServer.ENSURING_CLEAN_SESSION, true);
-            webDriver = new InternetExplorerDriver(ieCapabilities);
+            webDriver = new InternetExplorerDriver(withProxy(ieCapabilities, proxy));
         } else if (CHROME.equals(browserType)) {
-            webDriver = new ChromeDriver();
+            webDriver = new ChromeDriver(withProxy(DesiredCapabilities.chrome(), proxy));
         } else {
             throw new TestInterruptException(
                     String.format("You must define webdriver type, '%s' is a wrong webdriver type", browserType));
         }
         logger.debug("Browser has opened");
+        return webDriver;
+    }
+
+    private static DesiredCapabilities withProxy(DesiredCapabilities capabilities, BrowserProxy proxy) {
+        if (proxy != null) {
+            capabilities.setCapability(CapabilityType.PROXY,
+                    new Proxy().setHttpProxy(proxy.getAddress()).setSslProxy(proxy.getAddress()));
+        }
+        return capabilities;
+    }
+
+    /**
+     * Opens {@code web_hybrid_warmup_url} in the new in-process browser, so the scripts of the site get into
+     * the shared cache and the script engine gets compiled by the JIT before the first test. The browsers
+     * kept warm by {@link WebDriverPool} do it in background
+     */
+    private static void warmUp(WebDriver webDriver) {
+        String url = Config.getInstance().get("web_hybrid_warmup_url").trim();
+        if (url.isEmpty()) {
+            return;
+        }
+        try {
+            webDriver.get(url);
+            webDriver.get("about:blank");
+            ((HybridHtmlUnitDriver) webDriver).takeScriptError();
+        } catch (WebDriverException e) {
+            logger.warn("In-process browser cannot be warmed up with {}: {}", url, e.getMessage());
+        }
     }
 
     /**
@@ -131,23 +450,141 @@ public class BaseWebDriver implements WebDriver {
      * Performs navigation to the previous page
      */
     public void back() {
+        invalidateElements();
         webDriver.navigate().back();
     }
 
     /**
-     * Executes the javascript and returns the result of this execution
+     * Executes the javascript and returns the result of this execution. The script is timed
+     * in {@link OperationMetrics} under its first characters and the hash of the whole text
      *
      * @return result of javascript execution
      */
     public Object executeJavascript(String script) {
-        JavascriptExecutor js = (JavascriptExecutor) webDriver;
-        return js.executeScript(script);
+        return executeJavascript(getScriptKey(script), script);
+    }
+
+    /**
+     * Executes the javascript with the arguments and returns the result of this execution
+     *
+     * @param name      name of the script in {@link OperationMetrics}, e.g. the name of its file
+     * @param script    script
+     * @param arguments arguments of the script
+     * @return result of javascript execution
+     */
+    public Object executeJavascript(String name, String script, Object... arguments) {
+        long start = OperationMetrics.start();
+        boolean isFailed = true;
+        try {
+            Object result;
+            try {
+                result = ((JavascriptExecutor) webDriver).executeScript(script, arguments);
+            } catch (RuntimeException e) {
+                if (!fallBack(e)) {
+                    throw e;
+                }
+                if (hasElements(arguments)) {
+                    // the elements belong to the in-process browser, the callers look them up again in the real one
+                    invalidateElements();
+                    throw new StaleElementReferenceException("The elements have been found in the in-process browser");
+                }
+                result = ((JavascriptExecutor) webDriver).executeScript(script, arguments);
+            }
+            checkScriptErrors();
+            isFailed = false;
+            return result;
+        } finally {
+            OperationMetrics.record(Operation.EXECUTE_JAVASCRIPT, name, start, isFailed);
+        }
+    }
+
+    private static boolean hasElements(Object[] arguments) {
+        for (Object argument : arguments) {
+            if (argument instanceof WebElement) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a short key of the script, the ad-hoc scripts don't keep their whole text in the metrics
+     */
+    private static String getScriptKey(String script) {
+        String text = script.replaceAll("\\s+", " ").trim();
+        if (text.length() <= SCRIPT_KEY_LENGTH) {
+            return text;
+        }
+        return text.substring(0, SCRIPT_KEY_LENGTH) + "... #" + Integer.toHexString(script.hashCode());
     }
 
     /**
      * Waits when the ajax interaction finishes if it is.
+     * <br/>In the event mode a script injected to the page tracks pending XMLHttpRequest and fetch calls
+     * and short timers, the call returns as soon as the page has been quiet for {@link #setSyncQuietMillis}.
+     * If the browser can't execute asynchronous scripts, the polling mode is used
      */
     public void sync() {
+        long start = OperationMetrics.start();
+        boolean isFailed = true;
+        try {
+            doSync();
+            isFailed = false;
+        } finally {
+            OperationMetrics.record(Operation.SYNC, isEventSync ? SYNC_MODE_EVENT : SYNC_MODE_POLLING, start, isFailed);
+        }
+    }
+
+    private void doSync() {
+        if (isEventSync) {
+            try {
+                logger.trace("sync: start waiting");
+                Object token = ((JavascriptExecutor) webDriver).executeAsyncScript(getScript(SYNC_SCRIPT_PATH), syncQuietMillis);
+                if (token == null || !token.equals(pageToken)) {
+                    epoch++;
+                    pageToken = token;
+                }
+                logger.trace("sync: finished");
+                return;
+            } catch (TimeoutException e) {
+                logger.warn("sync: the page hasn't got idle in {} ms", TIMEOUT_MAX_REQUEST_TIME);
+                return;
+            } catch (WebDriverException e) {
+                logger.warn("sync: asynchronous script has failed, switching to the polling mode", e);
+                isEventSync = false;
+            }
+        }
+        pollingSync();
+    }
+
+    /**
+     * Blocks until the DOM of the page is modified or the time is out. If the browser can't notify about
+     * the modifications, just sleeps for the specified time
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if the DOM has been modified
+     */
+    public boolean waitForDomChange(long timeoutMillis) {
+        if (isMutationWaitSupported) {
+            try {
+                Object result = ((JavascriptExecutor) webDriver).executeAsyncScript(
+                        getScript(MUTATION_SCRIPT_PATH), timeoutMillis);
+                if (!"unsupported".equals(result)) {
+                    return "changed".equals(result);
+                }
+            } catch (WebDriverException e) {
+                logger.debug("Waiting for DOM modifications has failed: {}", e.getMessage());
+            }
+            isMutationWaitSupported = false;
+        }
+        GeneralUtils.sleep(timeoutMillis);
+        return false;
+    }
+
+    private void pollingSync() {
+        // the page changes can't be noticed in this mode, so the elements are always looked up again
+        invalidateElements();
+
         // let's give a chance for WebUI to start ajax-request in case it's a bit slow
         GeneralUtils.sleep(100);
 
@@ -165,8 +602,114 @@ public class BaseWebDriver implements WebDriver {
         }
     }
 
+    /**
+     * Takes the snapshots of the elements in one JavaScript call.
+     * If the hybrid mode switches to the real browser, {@link StaleElementReferenceException} is thrown, so
+     * the caller looks the elements up again
+     *
+     * @param elements      found elements
+     * @param cssProperties names of css properties to read
+     * @return snapshots in the order of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<ElementSnapshot> getSnapshots(List<WebElement> elements, String... cssProperties) {
+        List<ElementSnapshot> snapshots = new ArrayList<ElementSnapshot>(elements.size());
+        if (elements.isEmpty()) {
+            return snapshots;
+        }
+        Object[] arguments = new Object[elements.size() + 1];
+        arguments[0] = Arrays.asList(cssProperties);
+        for (int i = 0; i < elements.size(); i++) {
+            arguments[i + 1] = elements.get(i);
+        }
+        Object result = executeJavascript(SNAPSHOT_SCRIPT_PATH, getScript(SNAPSHOT_SCRIPT_PATH), arguments);
+        for (Object properties : (List<Object>) result) {
+            snapshots.add(new ElementSnapshot((Map<String, Object>) properties));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Evaluates the predicate for every element in one JavaScript call. Like {@link #getSnapshots} it throws
+     * {@link StaleElementReferenceException} if the hybrid mode switches to the real browser
+     *
+     * @param elements  found elements
+     * @param predicate body of JavaScript function with {@code element}, {@code index} and {@code value} parameters
+     *                  returning true for matching elements
+     * @param value     value passed to the predicate
+     * @return indexes of matching elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<Integer> filterElements(List<WebElement> elements, String predicate, Object value) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        if (elements.isEmpty()) {
+            return indexes;
+        }
+        Object[] arguments = new Object[elements.size() + 2];
+        arguments[0] = predicate;
+        arguments[1] = value;
+        for (int i = 0; i < elements.size(); i++) {
+            arguments[i + 2] = elements.get(i);
+        }
+        Object result = executeJavascript(FILTER_SCRIPT_PATH, getScript(FILTER_SCRIPT_PATH), arguments);
+        for (Object index : (List<Object>) result) {
+            indexes.add(((Number) index).intValue());
+        }
+        return indexes;
+    }
+
+    /**
+     * Runs the steps compiled by {@link CommandBatch} in one asynchronous JavaScript call
+     *
+     * @param arguments arguments of the batch script
+     * @param metricKey names of the steps
+     * @return results of the steps and the failed step
+     */
+    public Object executeBatch(Object[] arguments, String metricKey) {
+        long start = OperationMetrics.start();
+        boolean isFailed = true;
+        try {
+            Object result = ((JavascriptExecutor) webDriver).executeAsyncScript(getScript(BATCH_SCRIPT_PATH), arguments);
+            isFailed = !(result instanceof Map) || ((Number) ((Map<?, ?>) result).get("failed")).intValue() >= 0;
+            return result;
+        } finally {
+            OperationMetrics.record(Operation.EXECUTE_BATCH, metricKey, start, isFailed);
+        }
+    }
+
+    private static String getScript(String path) {
+        synchronized (scripts) {
+            String script = scripts.get(path);
+            if (script == null) {
+                InputStream stream = BaseWebDriver.class.getResourceAsStream(path);
+                if (stream == null) {
+                    throw new TestInterruptException("There is no '" + path + "' resource");
+                }
+                script = GeneralUtils.readInputStream(stream);
+                scripts.put(path, script);
+            }
+            return script;
+        }
+    }
+
     public void get(String url) {
-        webDriver.get(url);
+        invalidateElements();
+        browser.addOrigin(url);
+        try {
+            webDriver.get(url);
+        } catch (WebDriverException e) {
+            if (!isHybrid() || !isUnsupported(e)) {
+                throw e;
+            }
+            fallBack(e.toString(), url);
+            return;
+        }
+        if (isHybrid()) {
+            String error = ((HybridHtmlUnitDriver) webDriver).takeScriptError();
+            if (error != null) {
+                fallBack("script error: " + error, url);
+            }
+        }
     }
 
     public String getCurrentUrl() {
@@ -193,8 +736,15 @@ public class BaseWebDriver implements WebDriver {
         webDriver.close();
     }
 
+    /**
+     * Quits the browser instead of returning it to the pool
+     */
     public void quit() {
-        webDriver.quit();
+        if (browser != null) {
+            releaseBrowser(true);
+        } else {
+            webDriver.quit();
+        }
     }
 
     public Set<String> getWindowHandles() {
@@ -206,10 +756,12 @@ public class BaseWebDriver implements WebDriver {
     }
 
     public TargetLocator switchTo() {
+        invalidateElements();
         return webDriver.switchTo();
     }
 
     public Navigation navigate() {
+        invalidateElements();
         return webDriver.navigate();
     }
 
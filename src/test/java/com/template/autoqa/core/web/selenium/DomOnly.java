@@ -0,0 +1,16 @@
+package com.template.autoqa.core.web.selenium;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Marks a test class which checks only the DOM and the page logic, so it may run in the in-process browser
+ * of the hybrid mode. See {@link BaseWebDriver#startHybridBrowser}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DomOnly {
+}
@@ -0,0 +1,87 @@
+package com.template.autoqa.core.web.selenium;
+
+import com.template.autoqa.utils.Config;
+import com.template.autoqa.utils.GeneralUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Test classes which have fallen back from the in-process browser to a real one. They are appended to
+ * {@code web_hybrid_fallbacks_file}, so the next runs start them in the real browser at once. A relative path is
+ * resolved against the project folder; keep it out of {@code target}, so the list survives a clean build.
+ * Delete the file to try the in-process browser again, e.g. after a fix of the page scripts
+ */
+class HybridFallbacks {
+    private static final Logger logger = LoggerFactory.getLogger(HybridFallbacks.class);
+
+    private static final String DEFAULT_FILE = ".autoqa/hybrid-fallbacks.txt";
+
+    private static Set<String> scopes;
+
+    private HybridFallbacks() {
+        // do nothing
+    }
+
+    /**
+     * Returns true if the scope has fallen back to a real browser in this or one of the previous runs
+     *
+     * @param scope name of the test class
+     */
+    static synchronized boolean contains(String scope) {
+        return getScopes().contains(scope);
+    }
+
+    /**
+     * Remembers that the scope needs a real browser
+     *
+     * @param scope name of the test class
+     */
+    static synchronized void add(String scope) {
+        if (scope == null || !getScopes().add(scope)) {
+            return;
+        }
+        Path file = getFile();
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, (scope + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Fallback of '{}' cannot be saved to {}: {}", scope, file, e.toString());
+        }
+    }
+
+    private static Set<String> getScopes() {
+        if (scopes == null) {
+            scopes = new HashSet<String>();
+            Path file = getFile();
+            if (Files.exists(file)) {
+                try {
+                    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                        if (!line.trim().isEmpty()) {
+                            scopes.add(line.trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.warn("Fallbacks cannot be read from {}: {}", file, e.toString());
+                }
+            }
+        }
+        return scopes;
+    }
+
+    private static Path getFile() {
+        String file = Config.getInstance().get("web_hybrid_fallbacks_file").trim();
+        return GeneralUtils.getProjectFile(file.isEmpty() ? DEFAULT_FILE : file).toPath();
+    }
+}
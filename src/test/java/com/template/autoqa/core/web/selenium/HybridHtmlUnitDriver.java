@@ -0,0 +1,110 @@
+package com.template.autoqa.core.web.selenium;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.IncorrectnessListener;
+import com.gargoylesoftware.htmlunit.ScriptException;
+import com.gargoylesoftware.htmlunit.SilentCssErrorHandler;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.JavaScriptErrorListener;
+import com.template.autoqa.utils.Config;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+
+/**
+ * In-process browser of the hybrid mode, see {@link BaseWebDriver#startHybridBrowser}.
+ * All the instances share one HtmlUnit {@link Cache}, so the external scripts are downloaded and compiled once
+ * per process rather than once per browser, and the style sheets are parsed once. Scripts and styles are cached
+ * unless the server sends {@code Cache-Control: no-cache} or {@code no-store}. The size of the cache is set
+ * by {@code web_hybrid_cache_size}.
+ * <br/>The script errors don't break the page, they are kept until {@link #takeScriptError()} is called,
+ * so the driver can decide to repeat the test step in a real browser
+ */
+class HybridHtmlUnitDriver extends HtmlUnitDriver {
+    private static final Logger logger = LoggerFactory.getLogger(HybridHtmlUnitDriver.class);
+
+    private static final int DEFAULT_CACHE_SIZE = 200;
+
+    private static final Cache sharedCache = new Cache() {
+        @Override
+        protected boolean isDynamicContent(WebResponse response) {
+            // HtmlUnit caches only the files which haven't been modified for a while, but the scripts and the styles
+            // don't change during a run unless the server forbids caching them
+            String cacheControl = response.getResponseHeaderValue("Cache-Control");
+            if (cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("no-cache"))) {
+                return true;
+            }
+            String contentType = response.getContentType();
+            return !contentType.contains("javascript") && !contentType.contains("css")
+                    && super.isDynamicContent(response);
+        }
+    };
+
+    static {
+        sharedCache.setMaxSize(Config.getInstance().getInt("web_hybrid_cache_size", DEFAULT_CACHE_SIZE));
+    }
+
+    // set from the listener installed by the super constructor, so the field must not have an initializer
+    private volatile String scriptError;
+
+    HybridHtmlUnitDriver() {
+        super(true);
+    }
+
+    @Override
+    protected WebClient modifyWebClient(WebClient client) {
+        client.setCache(sharedCache);
+        client.getOptions().setThrowExceptionOnScriptError(false);
+        // the warnings about the page markup and css cost more than the parsing itself
+        client.setCssErrorHandler(new SilentCssErrorHandler());
+        client.setIncorrectnessListener(new IncorrectnessListener() {
+            public void notify(String message, Object origin) {
+                // do nothing
+            }
+        });
+        client.setJavaScriptErrorListener(new JavaScriptErrorListener() {
+            public void scriptException(HtmlPage page, ScriptException e) {
+                setScriptError(e.getMessage());
+            }
+
+            public void timeoutError(HtmlPage page, long allowedTime, long executionTime) {
+                setScriptError(String.format("script has run for %s ms, the limit is %s ms", executionTime, allowedTime));
+            }
+
+            public void malformedScriptURL(HtmlPage page, String url, MalformedURLException e) {
+                setScriptError("malformed script url " + url);
+            }
+
+            public void loadScriptError(HtmlPage page, URL scriptUrl, Exception e) {
+                setScriptError("script " + scriptUrl + " cannot be loaded: " + e);
+            }
+        });
+        return client;
+    }
+
+    private void setScriptError(String message) {
+        logger.debug("Script error: {}", message);
+        if (scriptError == null) {
+            scriptError = message;
+        }
+    }
+
+    /**
+     * Returns the first script error since the previous call and forgets it
+     *
+     * @return error message or null if there were no errors
+     */
+    String takeScriptError() {
+        String error = scriptError;
+        if (error != null) {
+            scriptError = null;
+        }
+        return error;
+    }
+}
@@ -0,0 +1,89 @@
+package com.template.autoqa.core.web.selenium;
+
+import com.template.autoqa.core.metrics.Operation;
+import com.template.autoqa.core.metrics.OperationMetrics;
+import com.template.autoqa.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+
+/**
+ * Waits for the conditions on the page. The condition is checked with growing pauses starting from
+ * a few milliseconds up to {@code web_wait_max_poll_millis}; in the browsers supporting MutationObserver
+ * a pause ends as soon as the DOM is modified.
+ * <br/>The default timeouts are read from {@code web_wait_<kind>_timeout} settings in seconds.
+ * The time spent in every wait is recorded as {@link Operation#WAIT_FOR} per wait name
+ */
+public class WaitEngine {
+    private static final Logger logger = LoggerFactory.getLogger(WaitEngine.class);
+
+    public static final String PRESENCE = "presence";
+    public static final String ABSENCE = "absence";
+    public static final String VISIBILITY = "visibility";
+    public static final String ENABLE = "enable";
+    public static final String TEXT = "text";
+
+    private static final long INITIAL_POLL_MILLIS = 5;
+    private static final long DEFAULT_MAX_POLL_MILLIS = 200;
+    private static final long DEFAULT_TIMEOUT_SECONDS = 5;
+    private static final long DEFAULT_PRESENCE_TIMEOUT_SECONDS = 20;
+
+    private WaitEngine() {
+        // do nothing
+    }
+
+    /**
+     * Checks the condition until it's satisfied or the time is out
+     *
+     * @param webDriver     driver to watch the page of
+     * @param name          name of the wait in {@link OperationMetrics}, e.g. the kind of the wait and the locator
+     * @param timeoutMillis maximum time to wait
+     * @param condition     the condition, it's checked at least once
+     * @return true if the condition has been satisfied
+     */
+    public static boolean until(BaseWebDriver webDriver, String name, long timeoutMillis, BooleanSupplier condition) {
+        long metricStart = OperationMetrics.start();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long maxPollMillis = getMaxPollMillis();
+        long pollMillis = INITIAL_POLL_MILLIS;
+        boolean isSatisfied;
+        while (true) {
+            isSatisfied = condition.getAsBoolean();
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (isSatisfied || remainingMillis <= 0) {
+                break;
+            }
+            if (!webDriver.waitForDomChange(Math.min(pollMillis, remainingMillis))) {
+                // nothing has changed on the page, check less often
+                pollMillis = Math.min(pollMillis * 2, maxPollMillis);
+            }
+        }
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        OperationMetrics.record(Operation.WAIT_FOR, name, metricStart, !isSatisfied);
+        logger.trace("'{}' wait has {} in {} us", name, isSatisfied ? "finished" : "timed out", elapsedMicros);
+        return isSatisfied;
+    }
+
+    /**
+     * Returns the default timeout of the wait kind
+     *
+     * @param kind kind of the wait, e.g. {@link #PRESENCE}
+     * @return timeout in milliseconds
+     */
+    public static long getTimeoutMillis(String kind) {
+        long defaultSeconds = PRESENCE.equals(kind) || ABSENCE.equals(kind)
+                ? DEFAULT_PRESENCE_TIMEOUT_SECONDS
+                : DEFAULT_TIMEOUT_SECONDS;
+        return Config.getInstance().getDuration("web_wait_" + kind + "_timeout", TimeUnit.SECONDS,
+                Duration.ofSeconds(defaultSeconds)).toMillis();
+    }
+
+    private static long getMaxPollMillis() {
+        return Config.getInstance().getLong("web_wait_max_poll_millis", DEFAULT_MAX_POLL_MILLIS);
+    }
+}
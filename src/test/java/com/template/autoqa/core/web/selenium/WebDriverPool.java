@@ -0,0 +1,444 @@
+package com.template.autoqa.core.web.selenium;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import com.template.autoqa.utils.Config;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Pool of started browsers shared by all {@link BaseWebDriver} objects of the process.
+ * A browser is leased by {@link BaseWebDriver#startBrowser} and returned by {@link BaseWebDriver#releaseBrowser},
+ * so test classes running in parallel get separate browsers and the start of a browser is paid once
+ * for several test classes.
+ * <br/>The number of browsers of each type is limited by {@code web_driver_pool_size} setting
+ * ({@code web_driver_pool_size_<type>} overrides it for one browser type), a lease waits for a free browser
+ * up to {@code web_driver_lease_timeout} seconds. {@code web_driver_pool_warm} browsers
+ * ({@code web_driver_pool_warm_<type>} for one type) are kept started in background. A browser is quit and
+ * replaced after {@code web_driver_max_uses} leases, when it can't be reset or when the test reports it
+ * as broken.
+ * <br/>A returned browser is reset instead of being relaunched: the extra windows are closed, the cookies and
+ * the local and session storage are cleared on the current page and on the root page of every origin opened by
+ * {@link BaseWebDriver#get}, then {@code about:blank} is opened. The reset is verified, a browser left dirty
+ * is quit. The cookies limited to a deeper path and the state of an origin reached only by a link and left
+ * before the return (including third-party frames) aren't seen by the browser on those pages and may survive;
+ * turn the reuse off if the tests depend on them. With {@code web_session_reuse} off every lease gets a new browser.
+ * <br/>The settings are applied again when the config is reloaded, a smaller pool quits the extra browsers
+ * as they are returned.
+ */
+public class WebDriverPool {
+    private static final Logger logger = LoggerFactory.getLogger(WebDriverPool.class);
+
+    private static final String POOL_SIZE_KEY = "web_driver_pool_size";
+    private static final String WARM_KEY = "web_driver_pool_warm";
+    private static final String MAX_USES_KEY = "web_driver_max_uses";
+    private static final String LEASE_TIMEOUT_KEY = "web_driver_lease_timeout";
+    private static final String SESSION_REUSE_KEY = "web_session_reuse";
+    private static final String BLANK_PAGE = "about:blank";
+    // clears the storage of the current origin and returns the number of the items left
+    private static final String CLEAR_STORAGE_SCRIPT = "try { localStorage.clear(); sessionStorage.clear();"
+            + " return localStorage.length + sessionStorage.length; } catch (e) { return 0; }";
+
+    private static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_WARM = 0;
+    private static final int DEFAULT_MAX_USES = 20;
+    private static final Duration DEFAULT_LEASE_TIMEOUT = Duration.ofMinutes(5);
+    private static final long WAIT_SLICE_MILLIS = 500;
+
+    private static final WebDriverPool instance = new WebDriverPool();
+
+    private final Map<String, BrowserPool> pools = new HashMap<String, BrowserPool>();
+    private final ExecutorService browserStarter = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger number = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "webdriver-pool-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Returns an instance of WebDriverPool class
+     */
+    public static WebDriverPool getInstance() {
+        return instance;
+    }
+
+    private WebDriverPool() {
+        Config.getInstance().addChangeListener(new Runnable() {
+            public void run() {
+                synchronized (pools) {
+                    for (BrowserPool pool : pools.values()) {
+                        pool.configure();
+                    }
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread("webdriver-pool-shutdown") {
+            @Override
+            public void run() {
+                closeAll();
+            }
+        });
+    }
+
+    /**
+     * Starts {@code web_driver_pool_warm} browsers of specified type in background
+     *
+     * @param browserType browser type
+     */
+    public void prestart(String browserType) {
+        getPool(browserType).replenish();
+    }
+
+    /**
+     * Quits all the idle browsers. The leased browsers are quit when they are returned
+     */
+    public void closeAll() {
+        synchronized (pools) {
+            for (BrowserPool pool : pools.values()) {
+                pool.close();
+            }
+            pools.clear();
+        }
+    }
+
+    /**
+     * Takes an idle browser of specified type or starts a new one if the pool isn't full.
+     * Waits for a browser to be returned otherwise
+     *
+     * @param browserType browser type
+     * @return leased browser
+     */
+    PooledBrowser lease(String browserType) {
+        return getPool(browserType).lease();
+    }
+
+    /**
+     * Returns the browser to the pool
+     *
+     * @param browser  leased browser
+     * @param isBroken true if the browser must not be used anymore
+     */
+    void release(PooledBrowser browser, boolean isBroken) {
+        browser.pool.release(browser, isBroken);
+    }
+
+    private BrowserPool getPool(String browserType) {
+        synchronized (pools) {
+            BrowserPool pool = pools.get(browserType);
+            if (pool == null) {
+                pool = new BrowserPool(browserType);
+                pools.put(browserType, pool);
+            }
+            return pool;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (pools) {
+            return "WebDriverPool" + pools.values();
+        }
+    }
+
+    /**
+     * Browser owned by the pool
+     */
+    static class PooledBrowser {
+        private final BrowserPool pool;
+        private final WebDriver webDriver;
+        private final Set<String> origins = new LinkedHashSet<String>();
+        private int uses;
+
+        private PooledBrowser(BrowserPool pool, WebDriver webDriver) {
+            this.pool = pool;
+            this.webDriver = webDriver;
+        }
+
+        WebDriver getWebDriver() {
+            return webDriver;
+        }
+
+        String getBrowserType() {
+            return pool.browserType;
+        }
+
+        /**
+         * Returns true if the browser responds
+         */
+        private boolean isAlive() {
+            try {
+                webDriver.getWindowHandle();
+                return true;
+            } catch (WebDriverException e) {
+                logger.warn("'{}' browser doesn't respond: {}", pool.browserType, e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Remembers the origin of the page, its cookies and storage are cleared by the reset
+         *
+         * @param url url of the page opened in the browser
+         */
+        synchronized void addOrigin(String url) {
+            String origin = getOrigin(url);
+            if (origin != null) {
+                origins.add(origin);
+            }
+        }
+
+        /**
+         * Brings the browser to the state of a new session. The cookies and the storage are cleared on every
+         * origin recorded by {@link #addOrigin} and on the current page, the root page of each origin
+         * is opened for that
+         *
+         * @return false if the browser has crashed or the state is left after the reset
+         */
+        private synchronized boolean reset() {
+            try {
+                Set<String> handles = webDriver.getWindowHandles();
+                String mainHandle = handles.iterator().next();
+                if (handles.size() > 1) {
+                    for (String handle : handles) {
+                        if (!handle.equals(mainHandle)) {
+                            webDriver.switchTo().window(handle).close();
+                        }
+                    }
+                }
+                webDriver.switchTo().window(mainHandle);
+                String currentOrigin = getOrigin(webDriver.getCurrentUrl());
+                int itemsLeft = clearOrigin(currentOrigin);
+                for (String origin : origins) {
+                    if (!origin.equals(currentOrigin)) {
+                        webDriver.get(origin + "/");
+                        itemsLeft += clearOrigin(origin);
+                    }
+                }
+                origins.clear();
+                webDriver.get(BLANK_PAGE);
+                int windows = webDriver.getWindowHandles().size();
+                if (windows != 1 || itemsLeft != 0) {
+                    logger.warn("'{}' browser is dirty after the reset: {} windows, {} cookies and storage items",
+                            pool.browserType, windows, itemsLeft);
+                    return false;
+                }
+                return true;
+            } catch (WebDriverException e) {
+                logger.warn("'{}' browser cannot be reset: {}", pool.browserType, e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Clears the cookies and the storage of the current page
+         *
+         * @return the number of the cookies and storage items left
+         */
+        private int clearOrigin(String origin) {
+            Object storageLeft = 0;
+            if (webDriver instanceof JavascriptExecutor) {
+                try {
+                    storageLeft = ((JavascriptExecutor) webDriver).executeScript(CLEAR_STORAGE_SCRIPT);
+                } catch (RuntimeException e) {
+                    // the scripts are disabled or the page has no storage, HtmlUnit throws its own exceptions
+                    logger.trace("Storage of {} cannot be cleared in '{}' browser: {}", origin, pool.browserType,
+                            e.getMessage());
+                }
+            }
+            webDriver.manage().deleteAllCookies();
+            return webDriver.manage().getCookies().size()
+                    + (storageLeft instanceof Number ? ((Number) storageLeft).intValue() : 0);
+        }
+
+        /**
+         * Returns {@code scheme://host[:port]} of the url or null if it isn't an http(s) url
+         */
+        private static String getOrigin(String url) {
+            try {
+                URI uri = new URI(url);
+                String scheme = uri.getScheme();
+                if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+                    return null;
+                }
+                return scheme.toLowerCase() + "://" + uri.getHost().toLowerCase()
+                        + (uri.getPort() == -1 ? "" : ":" + uri.getPort());
+            } catch (URISyntaxException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Browsers of one type. Every started browser (idle, leased or being started) holds a permit of the semaphore
+     */
+    private class BrowserPool {
+        private final String browserType;
+        private final BlockingQueue<PooledBrowser> idle = new LinkedBlockingQueue<PooledBrowser>();
+        private final ResizableSemaphore permits = new ResizableSemaphore();
+        private int size;
+        private volatile int warm;
+        private volatile int maxUses;
+        private volatile long leaseTimeoutMillis;
+        private volatile boolean isSessionReused;
+        private volatile boolean closed;
+
+        private BrowserPool(String browserType) {
+            this.browserType = browserType;
+            configure();
+        }
+
+        /**
+         * Reads the settings of the pool. The new size takes effect at once, if it's smaller the extra browsers
+         * are quit when they are returned
+         */
+        private synchronized void configure() {
+            Config config = Config.getInstance();
+            int newSize = Math.max(config.getInt(POOL_SIZE_KEY + "_" + browserType,
+                    config.getInt(POOL_SIZE_KEY, DEFAULT_POOL_SIZE)), 1);
+            if (newSize > size) {
+                permits.release(newSize - size);
+            } else if (newSize < size) {
+                permits.reducePermits(size - newSize);
+            }
+            size = newSize;
+            warm = Math.min(config.getInt(WARM_KEY + "_" + browserType, config.getInt(WARM_KEY, DEFAULT_WARM)), newSize);
+            maxUses = config.getInt(MAX_USES_KEY, DEFAULT_MAX_USES);
+            leaseTimeoutMillis = config.getDuration(LEASE_TIMEOUT_KEY, TimeUnit.SECONDS, DEFAULT_LEASE_TIMEOUT).toMillis();
+            isSessionReused = config.getBoolean(SESSION_REUSE_KEY, true);
+        }
+
+        private PooledBrowser lease() {
+            long finishTime = System.currentTimeMillis() + leaseTimeoutMillis;
+            while (true) {
+                PooledBrowser browser;
+                try {
+                    browser = idle.poll();
+                    if (browser == null && permits.tryAcquire()) {
+                        browser = start();
+                    }
+                    if (browser == null) {
+                        // the permit may be freed by a discarded browser rather than by a returned one,
+                        // so the wait is done in slices
+                        browser = idle.poll(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    throw new TestInterruptException("Waiting for a free browser has been interrupted", e);
+                }
+                if (browser != null) {
+                    // an idle browser has been reset on return, it's only checked that it hasn't died meanwhile
+                    if (browser.uses == 0 || browser.isAlive()) {
+                        browser.uses++;
+                        replenish();
+                        return browser;
+                    }
+                    discard(browser);
+                } else if (System.currentTimeMillis() > finishTime) {
+                    throw new TestInterruptException(String.format(
+                            "There is no free '%s' browser in %s ms, %s", browserType, leaseTimeoutMillis, this));
+                }
+            }
+        }
+
+        private void release(PooledBrowser browser, boolean isBroken) {
+            // negative permits mean the pool has been shrunk
+            if (closed || isBroken || !isSessionReused || (maxUses > 0 && browser.uses >= maxUses)
+                    || permits.availablePermits() < 0 || !browser.reset()) {
+                logger.debug("'{}' browser is recycled after {} uses", browserType, browser.uses);
+                discard(browser);
+                replenish();
+            } else {
+                idle.offer(browser);
+            }
+        }
+
+        /**
+         * Starts the browser in the current thread, the permit must be already acquired
+         */
+        private PooledBrowser start() {
+            try {
+                return new PooledBrowser(this, BaseWebDriver.createWebDriver(browserType));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Starts the browsers in background until there are enough idle ones
+         */
+        private void replenish() {
+            while (!closed && idle.size() < warm && permits.tryAcquire()) {
+                browserStarter.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            idle.offer(start());
+                        } catch (RuntimeException e) {
+                            logger.warn(String.format("'%s' browser cannot be started in background", browserType), e);
+                        }
+                    }
+                });
+            }
+        }
+
+        private void discard(PooledBrowser browser) {
+            try {
+                browser.webDriver.quit();
+            } catch (WebDriverException e) {
+                logger.warn("'{}' browser cannot be quit: {}", browserType, e.getMessage());
+            } finally {
+                permits.release();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            PooledBrowser browser;
+            while ((browser = idle.poll()) != null) {
+                discard(browser);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s idle, %s free slots", browserType, idle.size(), permits.availablePermits());
+        }
+    }
+
+    /**
+     * Semaphore which number of permits may be reduced below the number of acquired ones
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private ResizableSemaphore() {
+            super(0);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
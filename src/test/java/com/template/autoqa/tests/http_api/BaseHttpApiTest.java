@@ -2,19 +2,27 @@ package com.template.autoqa.tests.http_api;
 
 import com.template.autoqa.core.http_api.BaseHttpRequest;
 import com.template.autoqa.core.http_api.BaseHttpResponse;
+import com.template.autoqa.core.http_api.stub.HttpStubServer;
+import com.template.autoqa.core.http_api.stub.QueryRequestMatcher;
+import com.template.autoqa.utils.Config;
+import com.template.autoqa.utils.GeneralUtils;
 import org.testng.annotations.*;
 
+import java.io.File;
 import java.util.*;
 
 
 public class BaseHttpApiTest {
+    private static final String BASE_URL = "http://testme.com";
+
     BaseHttpRequest request;
+    HttpStubServer stubServer;
 
     @BeforeClass
     public void beforeClass() {
         Map headers=new HashMap<String,String>();
         headers.put("accept", "text/json");
-        request = new BaseHttpRequest("http://testme.com", headers);
+        request = new BaseHttpRequest(startStubServer(BASE_URL), headers);
 
     }
 
@@ -36,6 +44,29 @@ public class BaseHttpApiTest {
 
     @AfterClass
     public void tearDown() {
+        request.close();
+        if (stubServer != null) {
+            stubServer.stop();
+        }
+    }
 
+    /**
+     * Starts the stub server if {@code http_stub_mode} is set to {@code record} or {@code replay}
+     *
+     * @param baseUrl base url of the real server
+     * @return base url the requests should be sent to
+     */
+    protected String startStubServer(String baseUrl) {
+        Config config = Config.getInstance();
+        String mode = config.get("http_stub_mode").trim();
+        if (mode.isEmpty()) {
+            return baseUrl;
+        }
+        // the fixtures are recorded to the source tree, so they survive the clean build
+        File fixtures = GeneralUtils.getProjectFile(config.get("http_stub_fixtures").trim());
+        stubServer = new HttpStubServer(HttpStubServer.Mode.valueOf(mode.toUpperCase()), baseUrl, fixtures);
+        stubServer.setRequestMatcher(new QueryRequestMatcher("token_auth"));
+        stubServer.start();
+        return stubServer.getBaseUrl();
     }
 }
@@ -1,26 +1,30 @@
 package com.velti.template.tests.web;
 
+import com.velti.template.core.reporting.ArtifactPipeline;
 import com.velti.template.core.web.pages.BaseWebPage;
 import com.velti.template.core.web.selenium.BaseWebDriver;
+import com.velti.template.core.web.selenium.DomOnly;
+import com.velti.template.core.web.selenium.WebDriverPool;
 import com.velti.template.utils.Config;
 
-import org.apache.commons.io.FileUtils;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.remote.SessionNotFoundException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
 import org.testng.ITestResult;
 import org.testng.Reporter;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
 
 import java.io.File;
-import java.io.IOException;
 
 import static org.testng.Assert.assertTrue;
 
@@ -28,22 +32,50 @@ import static org.testng.Assert.assertTrue;
 public class BaseWebTest {
     private final Logger logger = LoggerFactory.getLogger(BaseWebTest.class);
     private final Config config = Config.getInstance();
+    private static final String SCREENSHOTS_FOLDER = "screenshots";
 
     protected final String SERVER_URL = config.get("web_link");
     protected final String BROWSER_TYPE = config.get("web_driver");
     protected final BaseWebDriver driver;
+    private boolean isBrowserBroken;
 
 
     public BaseWebTest() {
-        driver = BaseWebDriver.getInstance();
+        driver = new BaseWebDriver();
     }
 
     private void initializePages() {
     }
 
+    /**
+     * Starts the in-process browsers of the hybrid mode in background while the suite is being prepared,
+     * if the suite has a class annotated with {@link DomOnly}
+     */
+    @BeforeSuite
+    public void beforeSuite(ITestContext context) {
+        if (!config.getBoolean("web_hybrid", true)) {
+            return;
+        }
+        for (ITestNGMethod method : context.getSuite().getAllMethods()) {
+            Class<?> testClass = method.getRealClass();
+            if (testClass.isAnnotationPresent(DomOnly.class)) {
+                WebDriverPool.getInstance().prestart(BaseWebDriver.HYBRID);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts the browser of the class. The classes annotated with {@link DomOnly} start in the in-process
+     * browser and switch to {@code web_driver} one only if they need it, unless {@code web_hybrid} is off
+     */
     @BeforeClass
     public void beforeClass() {
-        driver.startBrowser(BROWSER_TYPE);
+        if (getClass().isAnnotationPresent(DomOnly.class) && config.getBoolean("web_hybrid", true)) {
+            driver.startHybridBrowser(BROWSER_TYPE, getClass().getName());
+        } else {
+            driver.startBrowser(BROWSER_TYPE);
+        }
         driver.get(SERVER_URL);
         initializePages();
     }
@@ -53,25 +85,41 @@ public class BaseWebTest {
     }
 
     @AfterMethod(alwaysRun = true)
-    public void takeScreenshot(ITestResult result, ITestContext context) throws IOException {
-        String file = "screenshots/" + result.getName() + ".png";
-
+    public void takeScreenshot(ITestResult result, ITestContext context) {
         // output gets lost without this
         Reporter.setCurrentTestResult(result);
         if (result.isSuccess())
             return;
-        File f = ((TakesScreenshot) driver.getWebDriver()).getScreenshotAs(OutputType.FILE);
+        if (result.getThrowable() instanceof UnreachableBrowserException
+                || result.getThrowable() instanceof SessionNotFoundException) {
+            // the browser is dead, there is nothing to take a screenshot of
+            isBrowserBroken = true;
+            return;
+        }
+        // only the capture is done here, the files are written in background
         File outputDir = new File((context.getOutputDirectory()));
-        File saved = new File(outputDir.getParent(), file);
-        FileUtils.copyFile(f, saved);
+        ArtifactPipeline.Artifacts artifacts = ArtifactPipeline.getInstance().capture(
+                driver.getWebDriver(), new File(outputDir.getParent(), SCREENSHOTS_FOLDER), result.getName());
         // post html code to ReportNG with a reference to screenshot
-        Reporter.log("<a href=\"../" + file + "\"> <img src=\"../" + file + "\" width='320px'></a>");
+        Reporter.log(artifacts.toHtml("../" + SCREENSHOTS_FOLDER + "/"));
         Reporter.setCurrentTestResult(null);
     }
 
     @AfterClass
     public void tearDown() {
-        driver.quit();
+        driver.releaseBrowser(isBrowserBroken);
+    }
+
+    @AfterSuite(alwaysRun = true)
+    public void afterSuite() {
+        ArtifactPipeline.getInstance().flush();
+    }
+
+    /**
+     * Returns the page object of the class, created once per test class, see {@link BaseWebDriver#getPage(Class)}
+     */
+    protected <T extends BaseWebPage> T getPage(Class<T> pageClass) {
+        return driver.getPage(pageClass);
     }
 
     /**
@@ -1,21 +1,75 @@
 package com.velti.template.utils;
 
 import com.velti.template.core.exceptions.TestInterruptException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.FileReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 
+/**
+ * Settings of the framework. A value is taken from the first layer having the key:
+ * <ol>
+ * <li>system property, e.g. {@code -Dweb_driver_pool_size=4}</li>
+ * <li>environment variable named as the key or as the key in upper case, e.g. {@code WEB_DRIVER_POOL_SIZE}</li>
+ * <li>profile files {@code /web-<profile>.properties}, the profiles are listed in {@code config_profile} setting
+ * separated by comma, the last one wins</li>
+ * <li>{@code /web.properties}</li>
+ * </ol>
+ * The files are read into an immutable snapshot which also caches the parsed values, so the lookups don't lock.
+ * With {@code config_watch = true} the files are watched and the snapshot is replaced when they change;
+ * the components reading the settings once subscribe with {@link #addChangeListener(Runnable)}.
+ */
 public class Config {
+    private static final Logger logger = LoggerFactory.getLogger(Config.class);
+
     private final String CONFIG_FILE_PATH = "/web.properties";
+    private static final String PROFILE_KEY = "config_profile";
+    private static final String WATCH_KEY = "config_watch";
+    // editors save the file in several steps, the reload waits for the last one
+    private static final long RELOAD_DELAY_MILLIS = 200;
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+)\\s*(ms|s|m|h|d)?", Pattern.CASE_INSENSITIVE);
+    private static final Object ABSENT = new Object();
 
-    private final Properties properties = new Properties();
     private static final Config instance = new Config();
 
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<Runnable>();
+    private volatile Snapshot snapshot;
+
     private Config() {
-        loadConfig();
+        snapshot = loadSnapshot();
+        if (getBoolean(WATCH_KEY, false)) {
+            startWatcher();
+        }
     }
 
     /**
@@ -25,25 +79,123 @@ public class Config {
         return instance;
     }
 
-    private void loadConfig() {
-        String resourcePath = GeneralUtils.getRootFolder() + CONFIG_FILE_PATH;
-        FileReader propertiesFileReader = null;
+    private Snapshot loadSnapshot() {
+        String rootFolder = GeneralUtils.getRootFolder();
+        Map<String, String> values = loadConfig(new File(rootFolder + CONFIG_FILE_PATH));
+        String profiles = new Snapshot(values).getString(PROFILE_KEY);
+        for (String profile : split(profiles)) {
+            File profileFile = new File(rootFolder, getProfileFileName(profile));
+            if (profileFile.isFile()) {
+                values.putAll(loadConfig(profileFile));
+            } else {
+                logger.warn("There is no {} file of '{}' config profile", profileFile, profile);
+            }
+        }
+        return new Snapshot(values);
+    }
+
+    private String getProfileFileName(String profile) {
+        String fileName = new File(CONFIG_FILE_PATH).getName();
+        return fileName.replaceFirst("\\.properties$", "") + "-" + profile + ".properties";
+    }
+
+    private static Map<String, String> loadConfig(File file) {
+        Properties properties = new Properties();
+        Reader propertiesFileReader = null;
         try {
-            propertiesFileReader = new FileReader(resourcePath);
+            propertiesFileReader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
             properties.load(propertiesFileReader);
         } catch (IOException e) {
             throw new TestInterruptException("An exception occurred during the config loading", e);
         } finally {
-            if (propertiesFileReader != null) {
-                try {
-                    propertiesFileReader.close();
-                } catch (IOException ignoredException) {
-                    // do nothing
-                }
+            GeneralUtils.closeStream(propertiesFileReader);
+        }
+        Map<String, String> values = new HashMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key));
+        }
+        return values;
+    }
+
+    /**
+     * Reads the files again. The change listeners are notified if the files have been changed
+     */
+    public void reload() {
+        Snapshot reloaded;
+        try {
+            reloaded = loadSnapshot();
+        } catch (RuntimeException e) {
+            logger.warn("The config hasn't been reloaded, the previous settings are used", e);
+            return;
+        }
+        if (reloaded.fileValues.equals(snapshot.fileValues)) {
+            return;
+        }
+        snapshot = reloaded;
+        logger.info("The config has been reloaded");
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                logger.warn("Config change listener has failed", e);
             }
         }
     }
 
+    /**
+     * Subscribes to the reloads of the config, the listener is called in the watcher thread
+     *
+     * @param listener listener re-reading the settings
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void startWatcher() {
+        final File configFile = new File(GeneralUtils.getRootFolder() + CONFIG_FILE_PATH);
+        final WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            configFile.getParentFile().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warn("The config files cannot be watched, they won't be reloaded", e);
+            return;
+        }
+        final String baseName = configFile.getName().replaceFirst("\\.properties$", "");
+        Thread watcher = new Thread("config-watcher") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        WatchKey key = watchService.take();
+                        boolean isChanged = false;
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            Object context = event.context();
+                            String fileName = context instanceof Path ? ((Path) context).getFileName().toString() : "";
+                            isChanged |= fileName.startsWith(baseName) && fileName.endsWith(".properties");
+                        }
+                        key.reset();
+                        if (isChanged) {
+                            Thread.sleep(RELOAD_DELAY_MILLIS);
+                            reload();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // the watcher is stopped
+                } catch (ClosedWatchServiceException e) {
+                    // the watcher is stopped
+                }
+            }
+        };
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("The config files in {} are watched for changes", configFile.getParent());
+    }
 
     /**
      * Returns a value from properties file by a key. If there is no the key, en empty value is returned
@@ -51,7 +203,171 @@ public class Config {
      * @return a value from properties file by a key
      */
     public String get(String key) {
-        return properties.getProperty(key, "");
+        return snapshot.getString(key);
+    }
+
+    /**
+     * Returns the setting parsed as an integer
+     *
+     * @param key          setting name
+     * @param defaultValue value returned if the setting is empty or isn't a number
+     * @return setting value
+     */
+    public int getInt(String key, int defaultValue) {
+        return getParsed(key, "int", defaultValue, Integer::valueOf);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return getParsed(key, "long", defaultValue, Long::valueOf);
+    }
+
+    /**
+     * Returns the setting parsed as a boolean: true, yes, on or false, no, off
+     *
+     * @param key          setting name
+     * @param defaultValue value returned if the setting is empty or isn't a boolean
+     * @return setting value
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return getParsed(key, "boolean", defaultValue, Config::parseBoolean);
     }
 
+    /**
+     * Returns the setting parsed as a duration. The value is a number with an optional unit suffix
+     * ({@code ms}, {@code s}, {@code m}, {@code h}, {@code d}) or ISO-8601 duration, e.g. {@code PT1M30S}
+     *
+     * @param key          setting name
+     * @param unit         unit of the numbers without suffix
+     * @param defaultValue value returned if the setting is empty or isn't a duration
+     * @return setting value
+     */
+    public Duration getDuration(String key, TimeUnit unit, Duration defaultValue) {
+        return getParsed(key, "duration:" + unit, defaultValue, value -> parseDuration(value, unit));
+    }
+
+    /**
+     * Returns the setting split by commas, the items are trimmed and the empty ones are dropped
+     *
+     * @param key setting name
+     * @return unmodifiable list, empty if there is no such setting
+     */
+    public List<String> getList(String key) {
+        return getParsed(key, "list", Collections.<String>emptyList(), Config::split);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getParsed(String key, String type, T defaultValue, Function<String, T> parser) {
+        Object value = snapshot.getParsed(key, type, parser);
+        return value == ABSENT ? defaultValue : (T) value;
+    }
+
+    private static boolean parseBoolean(String value) {
+        String lowerCase = value.toLowerCase(Locale.ROOT);
+        if ("true".equals(lowerCase) || "yes".equals(lowerCase) || "on".equals(lowerCase)) {
+            return true;
+        }
+        if ("false".equals(lowerCase) || "no".equals(lowerCase) || "off".equals(lowerCase)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+
+    private static Duration parseDuration(String value, TimeUnit unit) {
+        if (value.startsWith("P") || value.startsWith("p")) {
+            try {
+                return Duration.parse(value);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Not a duration: " + value, e);
+            }
+        }
+        Matcher matcher = DURATION_PATTERN.matcher(value);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a duration: " + value);
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        String suffix = matcher.group(2) == null ? "" : matcher.group(2).toLowerCase(Locale.ROOT);
+        switch (suffix) {
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            default:
+                return Duration.ofNanos(unit.toNanos(amount));
+        }
+    }
+
+    private static List<String> split(String value) {
+        List<String> items = new ArrayList<String>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Settings read from the files at one moment. The values are resolved through the layers on the first
+     * lookup and cached
+     */
+    private static class Snapshot {
+        private final Map<String, String> fileValues;
+        private final ConcurrentMap<String, Object> cache = new ConcurrentHashMap<String, Object>();
+
+        private Snapshot(Map<String, String> fileValues) {
+            this.fileValues = fileValues;
+        }
+
+        private String getString(String key) {
+            Object value = cache.get(key);
+            if (value == null) {
+                value = cache.computeIfAbsent(key, this::resolve);
+            }
+            return (String) value;
+        }
+
+        private String resolve(String key) {
+            String value = System.getProperty(key);
+            if (value == null) {
+                value = System.getenv(key);
+            }
+            if (value == null) {
+                value = System.getenv(key.toUpperCase(Locale.ROOT));
+            }
+            if (value == null) {
+                value = fileValues.get(key);
+            }
+            return value == null ? "" : value;
+        }
+
+        private Object getParsed(final String key, String type, final Function<String, ?> parser) {
+            String cacheKey = type + ":" + key;
+            Object value = cache.get(cacheKey);
+            if (value == null) {
+                // the raw value is resolved outside of computeIfAbsent, the map doesn't allow nested updates
+                final String rawValue = getString(key);
+                value = cache.computeIfAbsent(cacheKey, ignored -> parse(key, rawValue, parser));
+            }
+            return value;
+        }
+
+        private Object parse(String key, String rawValue, Function<String, ?> parser) {
+            String value = rawValue.trim();
+            if (value.isEmpty()) {
+                return ABSENT;
+            }
+            try {
+                return parser.apply(value);
+            } catch (IllegalArgumentException e) {
+                logger.warn("'{}' is a wrong value of '{}' setting, the default value is used instead", value, key);
+                return ABSENT;
+            }
+        }
+    }
 }
@@ -0,0 +1,283 @@
+package com.template.autoqa.utils;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+
+/**
+ * Walks and deletes big directory trees, e.g. the folders of screenshots and downloads.
+ * The directories are read with {@link DirectoryStream}, so no intermediate lists of children are built.
+ * The symbolic links are never followed.
+ */
+public class DirectoryWalker {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWalker.class);
+
+    private static final int DEFAULT_PARALLELISM = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    private static final long PROGRESS_INTERVAL = 10000;
+    private static final int MAX_ERROR_MESSAGES = 20;
+    private static final int DELETE_CHUNK_SIZE = 128;
+
+    private DirectoryWalker() {
+        // do nothing
+    }
+
+    /**
+     * Returns the lazy stream of all the files and directories under the root, the root itself isn't included.
+     * The stream must be closed, an unreadable directory makes it throw {@link UncheckedIOException}
+     *
+     * @param root root directory
+     * @return paths in depth-first order, a directory goes before its content
+     */
+    public static Stream<Path> stream(Path root) {
+        try {
+            return Files.walk(root).skip(1);
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot walk " + root, e);
+        }
+    }
+
+    /**
+     * Visits all the files and directories under the root, the root itself isn't visited.
+     * Unreadable directories are skipped with a warning
+     *
+     * @param root    root directory
+     * @param visitor receives the paths with their attributes in depth-first order, a directory goes before
+     *                its content
+     */
+    public static void walk(final Path root, final BiConsumer<Path, BasicFileAttributes> visitor) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    if (!dir.equals(root)) {
+                        visitor.accept(dir, attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    visitor.accept(file, attributes);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.warn("Cannot read {}: {}", file, e.toString());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot walk " + root, e);
+        }
+    }
+
+    /**
+     * Deletes the file or the directory tree with default parallelism
+     *
+     * @param root file or directory to delete
+     * @return counters of the deletion
+     */
+    public static DeleteResult delete(Path root) {
+        return delete(root, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Deletes the file or the directory tree. The subdirectories are deleted in parallel by a fork-join pool,
+     * the errors don't stop the deletion and are counted in the result
+     *
+     * @param root        file or directory to delete
+     * @param parallelism maximum number of threads deleting the files
+     * @return counters of the deletion
+     */
+    public static DeleteResult delete(Path root, int parallelism) {
+        DeleteResult result = new DeleteResult(root);
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return result;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        try {
+            pool.invoke(new DeleteTask(root, result));
+        } finally {
+            pool.shutdown();
+        }
+        if (result.getErrorCount() > 0) {
+            logger.warn("{}, first errors: {}", result, result.getErrors());
+        } else {
+            logger.debug("{}", result);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the content of a directory, forking a task per subdirectory and per {@value #DELETE_CHUNK_SIZE} files,
+     * and the directory itself once all of them are done
+     */
+    private static class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        private final DeleteResult result;
+
+        private DeleteTask(Path path, DeleteResult result) {
+            this.path = path;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                List<RecursiveAction> subtasks = new ArrayList<RecursiveAction>();
+                List<Path> files = new ArrayList<Path>(DELETE_CHUNK_SIZE);
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                    for (Path child : children) {
+                        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            subtasks.add(start(new DeleteTask(child, result)));
+                        } else {
+                            files.add(child);
+                            if (files.size() == DELETE_CHUNK_SIZE) {
+                                subtasks.add(start(new DeleteFilesTask(files, result)));
+                                files = new ArrayList<Path>(DELETE_CHUNK_SIZE);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    result.addError(path, e);
+                }
+                // the last chunk is deleted by this thread while the others are running
+                for (Path file : files) {
+                    deletePath(file, false, result);
+                }
+                for (RecursiveAction subtask : subtasks) {
+                    subtask.join();
+                }
+                deletePath(path, true, result);
+            } else {
+                deletePath(path, false, result);
+            }
+        }
+
+        private static RecursiveAction start(RecursiveAction task) {
+            task.fork();
+            return task;
+        }
+    }
+
+    /**
+     * Deletes a chunk of the files of a directory
+     */
+    private static class DeleteFilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final DeleteResult result;
+
+        private DeleteFilesTask(List<Path> files, DeleteResult result) {
+            this.files = files;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path file : files) {
+                deletePath(file, false, result);
+            }
+        }
+    }
+
+    private static void deletePath(Path file, boolean isDirectory, DeleteResult result) {
+        try {
+            Files.delete(file);
+            result.addDeleted(isDirectory);
+        } catch (NoSuchFileException e) {
+            // deleted by someone else
+        } catch (IOException e) {
+            result.addError(file, e);
+        }
+    }
+
+    /**
+     * Counters of a deletion, the progress is logged every {@value #PROGRESS_INTERVAL} deleted paths
+     */
+    public static class DeleteResult {
+        private final Path root;
+        private final long startMillis = System.currentTimeMillis();
+        private final AtomicLong deletedFiles = new AtomicLong();
+        private final AtomicLong deletedDirectories = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        private DeleteResult(Path root) {
+            this.root = root;
+        }
+
+        private void addDeleted(boolean isDirectory) {
+            long deleted = (isDirectory ? deletedDirectories : deletedFiles).incrementAndGet();
+            if (deleted % PROGRESS_INTERVAL == 0) {
+                logger.info("Deleting {}: {} files and {} directories deleted so far",
+                        root, deletedFiles.get(), deletedDirectories.get());
+            }
+        }
+
+        private void addError(Path path, IOException e) {
+            if (errorCount.incrementAndGet() <= MAX_ERROR_MESSAGES) {
+                errors.add(path + ": " + e);
+            }
+        }
+
+        public long getDeletedFiles() {
+            return deletedFiles.get();
+        }
+
+        public long getDeletedDirectories() {
+            return deletedDirectories.get();
+        }
+
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        /**
+         * Returns the messages of the first {@value #MAX_ERROR_MESSAGES} errors
+         */
+        public List<String> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<String>(errors);
+            }
+        }
+
+        /**
+         * Returns true if the root doesn't exist anymore
+         */
+        public boolean isDeleted() {
+            return !Files.exists(root, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s files and %s directories deleted, %s errors in %s ms", root,
+                    deletedFiles.get(), deletedDirectories.get(), errorCount.get(),
+                    System.currentTimeMillis() - startMillis);
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package com.velti.template.utils;
 
 import com.velti.template.core.exceptions.TestInterruptException;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 
 
@@ -17,6 +29,9 @@ public class GeneralUtils {
     private static final Logger logger = LoggerFactory.getLogger(GeneralUtils.class);
     private static String os = System.getProperty("os.name").toLowerCase();
     private static String rootFolder;
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int SEARCH_WINDOW_SIZE = 1024 * 1024;
+    private static final int LINE_BLOCK_SIZE = 8 * 1024;
 
 
     /**
@@ -42,8 +57,8 @@ public class GeneralUtils {
         if (rootFolder != null) {
             return rootFolder;
         }
-        // get path from the class loader for any object
-        String path = "".getClass().getResource("/").getPath();
+        // get path from the class loader of the framework classes, the system classes have no class loader on Java 9+
+        String path = GeneralUtils.class.getResource("/").getPath();
         // On Windows the path returns as "/<Disk>:/<folders>" - so weed to remove first slash
         if (path.contains(":") && path.startsWith("/")) {
             path = path.replaceFirst("/", "");
@@ -51,38 +66,60 @@ public class GeneralUtils {
         if (path.endsWith("/")) {
             path = path.substring(0, path.length() - 1);
         }
+        rootFolder = path;
         return path;
     }
 
+    /**
+     * Returns the project folder, the one holding the {@code target} folder of {@link #getRootFolder()},
+     * or the working folder if the classes aren't run from the build folder of the project
+     *
+     * @return path to the project folder
+     */
+    public static String getProjectFolder() {
+        File target = new File(getRootFolder()).getParentFile();
+        if (target != null && "target".equals(target.getName()) && target.getParentFile() != null) {
+            return target.getParent();
+        }
+        return System.getProperty("user.dir");
+    }
+
+    /**
+     * Resolves the path against the project folder unless it's absolute, so the files kept between the runs
+     * can be placed outside of the {@code target} folder cleaned by the build
+     *
+     * @param path relative or absolute path
+     * @return the file
+     */
+    public static File getProjectFile(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(getProjectFolder(), path);
+    }
+
     /**
      * Gets the files and dirs hierarchy of specified folder on local machine
      *
      * @param path to the folder on local machine
-     * @return List<String> with paths relative to specified folder
+     * @return List<String> with paths relative to specified folder, the folders end with slash
      */
     public static List<String> listHierarchy(String path) {
-        List<String> list = new ArrayList<String>();
-        File[] childFiles = new File(path).listFiles();
-        if (childFiles == null) {
+        final Path root = Paths.get(path);
+        final List<String> list = new ArrayList<String>();
+        if (!Files.isDirectory(root)) {
             return list;
         }
-        for (File file : childFiles) {
-            list.addAll(listHierarchyRecursive(file, ""));
-        }
-        return list;
-    }
-
-    private static List<String> listHierarchyRecursive(File currentFile, String path) {
-        String currentPath = ("".equals(path) ? "" : path + "/") + currentFile.getName();
-        List<String> list = new ArrayList<String>();
-        if (currentFile.isDirectory()) {
-            list.add(currentPath + "/");
-            for (File file : currentFile.listFiles()) {
-                list.addAll(listHierarchyRecursive(file, currentPath));
+        DirectoryWalker.walk(root, new BiConsumer<Path, BasicFileAttributes>() {
+            public void accept(Path file, BasicFileAttributes attributes) {
+                StringBuilder relativePath = new StringBuilder();
+                for (Path name : root.relativize(file)) {
+                    relativePath.append(relativePath.length() == 0 ? "" : "/").append(name);
+                }
+                if (attributes.isDirectory()) {
+                    relativePath.append('/');
+                }
+                list.add(relativePath.toString());
             }
-        } else {
-            list.add(currentPath);
-        }
+        });
         return list;
     }
 
@@ -113,26 +150,14 @@ public class GeneralUtils {
     }
 
     /**
-     * Deletes folder recursively
+     * Deletes folder recursively, the subfolders are deleted in parallel. See {@link DirectoryWalker#delete(Path)}
+     * for the counters of the deletion
      *
-     * @param file - File object to deleteRecursive
+     * @param file - File object to delete
      * @return true if folder is deleted
      */
     public static boolean delete(File file) {
-        try {
-            deleteRecursive(file);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    private static void deleteRecursive(File file) {
-        if (file.isDirectory()) {
-            for (File c : file.listFiles())
-                deleteRecursive(c);
-        }
-        file.delete();
+        return DirectoryWalker.delete(file.toPath()).isDeleted();
     }
 
     /**
@@ -163,44 +188,77 @@ public class GeneralUtils {
     }
 
     /**
-     * Writes the data from the input stream to the output stream
+     * Writes the data from the input stream to the output stream. File streams are copied by the file channels
+     * without copying the data to the heap
      *
      * @param inputStream  input stream
      * @param outputStream output stream
      * @throws IOException
      */
     public static void writeFromInputToOutputStream(InputStream inputStream, OutputStream outputStream) throws IOException {
-        byte[] buffer = new byte[4096 * 4];
-        int readBytes;
-        while (true) {
-            readBytes = inputStream.read(buffer);
-            if (readBytes == -1) {
-                return;
+        if (inputStream instanceof FileInputStream) {
+            FileChannel input = ((FileInputStream) inputStream).getChannel();
+            WritableByteChannel output = outputStream instanceof FileOutputStream
+                    ? ((FileOutputStream) outputStream).getChannel()
+                    : Channels.newChannel(outputStream);
+            // transferTo doesn't move the position of the channel; it transfers nothing if the file has shrunk
+            long position = input.position();
+            long transferredBytes;
+            while (position < input.size()
+                    && (transferredBytes = input.transferTo(position, input.size() - position, output)) > 0) {
+                position += transferredBytes;
             }
-            // for last read iteration we should write only read number of bytes
-            if (readBytes < buffer.length) {
-                buffer = Arrays.copyOf(buffer, readBytes);
+            input.position(position);
+            return;
+        }
+        if (outputStream instanceof FileOutputStream) {
+            FileChannel output = ((FileOutputStream) outputStream).getChannel();
+            ReadableByteChannel input = Channels.newChannel(inputStream);
+            long position = output.position();
+            long transferredBytes;
+            while ((transferredBytes = output.transferFrom(input, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                position += transferredBytes;
             }
-            outputStream.write(buffer);
+            output.position(position);
+            return;
+        }
+        byte[] buffer = new byte[4096 * 4];
+        int readBytes;
+        while ((readBytes = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, readBytes);
         }
     }
 
     /**
-     * Reads the file content and returns it as a string
+     * Reads the UTF-8 file content and returns it as a string
      *
      * @param file file path
      * @return text from a file
      */
     public static String readFromFile(String file) {
+        return readFromFile(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the file content and returns it as a string. The file is read by its channel and decoded at once,
+     * the line separators are converted to "\n"
+     *
+     * @param file    file path
+     * @param charset charset of the file
+     * @return text from a file
+     */
+    public static String readFromFile(String file, Charset charset) {
+        FileInputStream inputStream;
         try {
-            return readInputStream(new FileInputStream(file));
+            inputStream = new FileInputStream(file);
         } catch (FileNotFoundException e) {
             throw new TestInterruptException("There is no '" + file + "' file", e);
         }
+        return readInputStream(inputStream, 0, charset);
     }
 
     /**
-     * Reads data from input stream and returns it as a string
+     * Reads UTF-8 data from input stream and returns it as a string
      *
      * @param inputStream input stream
      * @return text from input stream
@@ -210,56 +268,221 @@ public class GeneralUtils {
     }
 
     /**
-     * Reads data from input stream and returns it as a string
+     * Reads UTF-8 data from input stream and returns it as a string
      *
      * @param inputStream input stream
      * @param bytesToSkip bytes to skip
      * @return text from input stream
      */
     public static String readInputStream(InputStream inputStream, long bytesToSkip) {
-        BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-        StringBuilder builder = new StringBuilder();
-        String line;
+        return readInputStream(inputStream, bytesToSkip, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads data from input stream and returns it as a string. The line separators are converted to "\n",
+     * the malformed bytes are replaced like {@link InputStreamReader} does.
+     * A file stream is read into one buffer by its channel
+     *
+     * @param inputStream input stream, it's closed
+     * @param bytesToSkip bytes to skip
+     * @param charset     charset of the data
+     * @return text from input stream
+     */
+    public static String readInputStream(InputStream inputStream, long bytesToSkip, Charset charset) {
         try {
+            if (inputStream instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) inputStream).getChannel();
+                long start = Math.min(channel.position() + bytesToSkip, channel.size());
+                if (start - channel.position() != bytesToSkip) {
+                    logger.warn("We expect that there should be {} bytes skipped, instead it was {} bytes skipped",
+                            bytesToSkip, start - channel.position());
+                }
+                if (channel.size() - start > Integer.MAX_VALUE) {
+                    throw new TestInterruptException("The file is too big to be read to a string: " + channel.size());
+                }
+                // the file isn't memory-mapped, a mapping keeps the file locked on Windows until it's garbage collected
+                ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - start));
+                readFully(channel, buffer, start);
+                buffer.flip();
+                return toLines(newDecoder(charset).decode(buffer));
+            }
             if (bytesToSkip != 0) {
                 long skippedBytes = inputStream.skip(bytesToSkip);
                 if (skippedBytes != bytesToSkip) {
                     logger.warn("We expect that there should be {} bytes skipped, instead it was {} bytes skipped", bytesToSkip, skippedBytes);
                 }
             }
-            while ((line = br.readLine()) != null) {
-                builder.append(line).append("\n");
-            }
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            writeFromInputToOutputStream(inputStream, data);
+            return toLines(newDecoder(charset).decode(ByteBuffer.wrap(data.toByteArray())));
         } catch (IOException e) {
             throw new TestInterruptException("An exception occurred", e);
         } finally {
-            closeStream(br);
+            closeStream(inputStream);
+        }
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Converts "\r\n" and "\r" line separators to "\n" and terminates the last line
+     */
+    private static String toLines(CharSequence text) {
+        StringBuilder builder = new StringBuilder(text.length() + 1);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                builder.append('\n');
+                if (i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n') {
+            builder.append('\n');
         }
         return builder.toString();
     }
 
     /**
-     * Gets the line from file that contains specified matchString
+     * Gets the line from UTF-8 file that contains specified matchString
      *
      * @param filePath    file path
      * @param matchString String to match
      * @return String
      */
     public static String getMatchLineFromFile(String filePath, String matchString) {
-        LineIterator it = null;
+        return getMatchLineFromFile(filePath, matchString, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the first line from file that contains specified matchString. The file is read by windows and searched
+     * for the encoded bytes of the string, only the matching line is decoded. The charset must encode
+     * the line separators as single bytes, e.g. UTF-8 or ISO-8859-1
+     *
+     * @param filePath    file path
+     * @param matchString String to match
+     * @param charset     charset of the file
+     * @return the line without line separator or empty string if there is no such line
+     */
+    public static String getMatchLineFromFile(String filePath, String matchString, Charset charset) {
+        if (matchString.indexOf('\n') >= 0 || matchString.indexOf('\r') >= 0) {
+            return "";
+        }
+        byte[] pattern = matchString.getBytes(charset);
+        FileInputStream inputStream = null;
         try {
-            it = FileUtils.lineIterator(new File(filePath));
-            while (it.hasNext()) {
-                String line = it.nextLine();
-                if (line.contains(matchString)) {
-                    return line;
+            inputStream = new FileInputStream(filePath);
+            FileChannel channel = inputStream.getChannel();
+            long size = channel.size();
+            long windowStart = 0;
+            // the window is read rather than memory-mapped, a mapping keeps the file locked on Windows
+            ByteBuffer window = ByteBuffer.allocate((int) Math.min(Math.max(SEARCH_WINDOW_SIZE, pattern.length), size));
+            while (windowStart < size) {
+                long windowSize = Math.min(window.capacity(), size - windowStart);
+                window.clear().limit((int) windowSize);
+                readFully(channel, window, windowStart);
+                int index = indexOf(window, pattern);
+                if (index >= 0) {
+                    return readLine(channel, windowStart + index, charset);
+                }
+                if (windowStart + windowSize == size) {
+                    break;
                 }
+                // the windows overlap so that the string crossing the window border is found
+                windowStart += windowSize - Math.max(pattern.length - 1, 0);
             }
         } catch (IOException e) {
             throw new TestInterruptException("Cannot work with file " + filePath, e);
         } finally {
-            LineIterator.closeQuietly(it);
+            closeStream(inputStream);
         }
         return "";
     }
+
+    /**
+     * Finds the bytes in the buffer with Boyer-Moore-Horspool search: the pattern is compared from the end
+     * and the mismatches skip by up to the pattern length
+     *
+     * @return index of the first occurrence or -1
+     */
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        int limit = buffer.limit();
+        if (pattern.length == 0) {
+            return 0;
+        }
+        int last = pattern.length - 1;
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, pattern.length);
+        for (int i = 0; i < last; i++) {
+            shifts[pattern[i] & 0xff] = last - i;
+        }
+        int position = 0;
+        while (position + last < limit) {
+            byte tail = buffer.get(position + last);
+            if (tail == pattern[last]) {
+                int i = last - 1;
+                while (i >= 0 && buffer.get(position + i) == pattern[i]) {
+                    i--;
+                }
+                if (i < 0) {
+                    return position;
+                }
+            }
+            position += shifts[tail & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the line containing specified byte of the file
+     */
+    static String readLine(FileChannel channel, long offset, Charset charset) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(LINE_BLOCK_SIZE);
+        long start = offset;
+        search:
+        while (start > 0) {
+            long blockStart = Math.max(start - LINE_BLOCK_SIZE, 0);
+            block.clear().limit((int) (start - blockStart));
+            readFully(channel, block, blockStart);
+            for (int i = block.limit() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n' || block.get(i) == '\r') {
+                    start = blockStart + i + 1;
+                    break search;
+                }
+            }
+            start = blockStart;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long position = start;
+        long size = channel.size();
+        while (position < size) {
+            block.clear().limit((int) Math.min(LINE_BLOCK_SIZE, size - position));
+            readFully(channel, block, position);
+            int end = 0;
+            while (end < block.limit() && block.get(end) != '\n' && block.get(end) != '\r') {
+                end++;
+            }
+            line.write(block.array(), 0, end);
+            if (end < block.limit()) {
+                break;
+            }
+            position += block.limit();
+        }
+        return new String(line.toByteArray(), charset);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("The file has been truncated");
+            }
+        }
+    }
 }
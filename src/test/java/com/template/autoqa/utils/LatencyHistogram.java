@@ -0,0 +1,197 @@
+package com.template.autoqa.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Lock-free histogram of latencies with log-linear buckets (the layout used by HdrHistogram).
+ * The values are kept with the precision of about 1% in the range from 1 to {@code highestTrackableValue};
+ * larger values are clamped. Recording doesn't allocate and may be called from any number of threads.
+ * <br/>The histogram is unit agnostic, the callers in this framework record microseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 7;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT * 2;
+    private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int LEADING_ZERO_COUNT_BASE = 64 - SUB_BUCKET_HALF_COUNT_MAGNITUDE - 1;
+
+    /**
+     * One hour in microseconds
+     */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 60L * 60 * 1000 * 1000;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+
+    public LatencyHistogram() {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    /**
+     * Creates the histogram able to track values from 1 up to specified one
+     *
+     * @param highestTrackableValue the highest value to be tracked
+     */
+    public LatencyHistogram(long highestTrackableValue) {
+        this.highestTrackableValue = Math.max(SUB_BUCKET_COUNT, highestTrackableValue);
+        counts = new AtomicLongArray(getCountsIndex(this.highestTrackableValue) + 1);
+    }
+
+    /**
+     * Records the value
+     *
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long clampedValue = Math.min(Math.max(0, value), highestTrackableValue);
+        counts.incrementAndGet(getCountsIndex(clampedValue));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(clampedValue);
+        updateMax(clampedValue);
+        updateMin(clampedValue);
+    }
+
+    /**
+     * Records the value and corrects the coordinated omission: if the value is greater than the expected interval
+     * between samples, the samples that would have been taken while the recorded one was stalled are recorded too
+     * with linearly decreasing values
+     *
+     * @param value            the value
+     * @param expectedInterval expected interval between samples, 0 disables the correction
+     */
+    public void recordWithExpectedInterval(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missingValue = value - expectedInterval; missingValue >= expectedInterval;
+             missingValue -= expectedInterval) {
+            record(missingValue);
+        }
+    }
+
+    /**
+     * Adds all the values of another histogram to this one
+     *
+     * @param other another histogram
+     */
+    public void add(LatencyHistogram other) {
+        int length = Math.min(counts.length(), other.counts.length());
+        for (int i = 0; i < length; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        for (int i = length; i < other.counts.length(); i++) {
+            counts.addAndGet(counts.length() - 1, other.counts.get(i));
+        }
+        totalCount.addAndGet(other.getTotalCount());
+        totalSum.addAndGet(other.totalSum.get());
+        if (other.getTotalCount() > 0) {
+            updateMax(other.getMaxValue());
+            updateMin(other.getMinValue());
+        }
+    }
+
+    /**
+     * Returns the value that the given percentage of recorded values are less than or equal to
+     *
+     * @param percentile percentile from 0 to 100, e.g. 99.9
+     * @return value at the percentile or 0 if there are no recorded values
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long accumulated = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            accumulated += counts.get(i);
+            if (accumulated >= countAtPercentile) {
+                return Math.min(getHighestEquivalentValue(i), getMaxValue());
+            }
+        }
+        return getMaxValue();
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    public long getMinValue() {
+        long value = minValue.get();
+        return value == Long.MAX_VALUE ? 0 : value;
+    }
+
+    public double getMean() {
+        long total = totalCount.get();
+        return total == 0 ? 0 : (double) totalSum.get() / total;
+    }
+
+    /**
+     * Clears all the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        maxValue.set(0);
+        minValue.set(Long.MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count: %s, mean: %.1f, p50: %s, p90: %s, p99: %s, p99.9: %s, max: %s",
+                getTotalCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getValueAtPercentile(99.9), getMaxValue());
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = maxValue.get())) {
+            if (maxValue.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private void updateMin(long value) {
+        long current;
+        while (value < (current = minValue.get())) {
+            if (minValue.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static int getCountsIndex(long value) {
+        int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+    }
+
+    private static long getHighestEquivalentValue(int countsIndex) {
+        int bucketIndex = (countsIndex >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+        int subBucketIndex = (countsIndex & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucketIndex < 0) {
+            subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+            bucketIndex = 0;
+        }
+        long lowestValue = ((long) subBucketIndex) << bucketIndex;
+        return lowestValue + (1L << bucketIndex) - 1;
+    }
+}
@@ -0,0 +1,591 @@
+package com.template.autoqa.utils;
+
+import com.template.autoqa.core.exceptions.TestInterruptException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+
+/**
+ * Searches a growing log file, e.g. a server log checked by the tests many times. Unlike
+ * {@link GeneralUtils#getMatchLineFromFile} the file isn't scanned from the start on every call: the searcher remembers
+ * how far it has read and scans only the bytes appended since the previous call.
+ * <br/>Every searched string is remembered; all of them are looked for in the new bytes at once by Aho-Corasick
+ * automaton and the offsets of their lines are kept, so repeated searches don't read the file. A string searched
+ * for the first time needs one scan of the already read part, or with the token index (see
+ * {@link #LogSearcher(String, Charset, boolean)}) only the lines containing its words are read.
+ * <br/>Only complete lines are remembered; the last line without line separator is searched on every call until it's
+ * finished. If another file appears at the path (e.g. the log is rotated by renaming, the file key changes) or the
+ * file gets shorter (it's truncated in place) it's opened and read again from the start. The file is read through
+ * a heap buffer rather than memory-mapped, a mapping would keep the file locked on Windows.
+ */
+public class LogSearcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LogSearcher.class);
+
+    private static final int READ_WINDOW_SIZE = 1024 * 1024;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int LINE_BLOCK_SIZE = 8 * 1024;
+    private static final int MAX_INDEX_CANDIDATES = 100000;
+
+    private final String filePath;
+    private final Charset charset;
+    private FileInputStream inputStream;
+    private FileChannel channel;
+    private Object fileKey;
+
+    private final Map<String, LongList> matches = new LinkedHashMap<String, LongList>();
+    private final Map<String, LongList> tokens;
+    private Automaton automaton;
+    private long scannedOffset;
+    private ByteBuffer verifiedWindow;
+    private long verifiedWindowStart;
+
+    /**
+     * Creates the searcher of UTF-8 file without the token index
+     *
+     * @param filePath path to the log
+     */
+    public LogSearcher(String filePath) {
+        this(filePath, StandardCharsets.UTF_8, false);
+    }
+
+    /**
+     * Creates the searcher
+     *
+     * @param filePath  path to the log
+     * @param charset   charset of the log, it must encode the line separators as single bytes, e.g. UTF-8
+     * @param isIndexed true to keep the offsets of the lines of every word (letters, digits and underscores)
+     *                  in memory, it makes the first search of a string containing a whole word fast but
+     *                  takes memory proportional to the size of the log
+     */
+    public LogSearcher(String filePath, Charset charset, boolean isIndexed) {
+        this.filePath = filePath;
+        this.charset = charset;
+        this.tokens = isIndexed ? new HashMap<String, LongList>() : null;
+        open();
+    }
+
+    /**
+     * Returns the first line containing the string
+     *
+     * @param matchString string to search for
+     * @return the line without line separator or empty string if there is no such line
+     */
+    public String getMatchLine(String matchString) {
+        return getMatchLine(matchString, 0);
+    }
+
+    /**
+     * Returns the first line containing the string which starts at specified offset or later, e.g. to check
+     * that the event has been logged after the offset returned by {@link #getOffset()}
+     *
+     * @param matchString string to search for
+     * @param fromOffset  offset in bytes
+     * @return the line without line separator or empty string if there is no such line
+     */
+    public synchronized String getMatchLine(String matchString, long fromOffset) {
+        return getMatchLines(Collections.singletonList(matchString), fromOffset).get(matchString);
+    }
+
+    /**
+     * Returns the first line containing each of the strings. The strings are searched at once
+     *
+     * @param matchStrings strings to search for
+     * @return the lines by the strings, empty string if there is no such line
+     */
+    public synchronized Map<String, String> getMatchLines(String... matchStrings) {
+        return getMatchLines(Arrays.asList(matchStrings), 0);
+    }
+
+    /**
+     * Returns the number of lines containing the string
+     *
+     * @param matchString string to search for
+     * @return number of lines
+     */
+    public synchronized int getMatchCount(String matchString) {
+        List<String> matchStrings = Collections.singletonList(matchString);
+        watch(matchStrings);
+        update();
+        int count = matches.get(matchString).size();
+        return count + (readPendingLine(matchStrings, 0).get(matchString) == null ? 0 : 1);
+    }
+
+    /**
+     * Reads the new lines and returns the size of the read part of the file
+     *
+     * @return offset of the end of the last complete line
+     */
+    public synchronized long getOffset() {
+        update();
+        return scannedOffset;
+    }
+
+    public synchronized void close() {
+        GeneralUtils.closeStream(inputStream);
+    }
+
+    private Map<String, String> getMatchLines(List<String> matchStrings, long fromOffset) {
+        watch(matchStrings);
+        update();
+        Map<String, String> lines = new LinkedHashMap<String, String>();
+        List<String> notFound = new ArrayList<String>();
+        for (String matchString : matchStrings) {
+            long lineOffset = matches.get(matchString).firstFrom(fromOffset);
+            if (lineOffset >= 0) {
+                lines.put(matchString, readLine(lineOffset));
+            } else {
+                notFound.add(matchString);
+            }
+        }
+        if (!notFound.isEmpty()) {
+            Map<String, String> pending = readPendingLine(notFound, fromOffset);
+            for (String matchString : notFound) {
+                String line = pending.get(matchString);
+                lines.put(matchString, line == null ? "" : line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Adds the new strings to the automaton, they are searched in the already read part of the file once
+     */
+    private void watch(List<String> matchStrings) {
+        List<String> added = new ArrayList<String>();
+        for (String matchString : matchStrings) {
+            if (matchString.indexOf('\n') >= 0 || matchString.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("The string to search for must be within a line: " + matchString);
+            }
+            if (!matches.containsKey(matchString) && !added.contains(matchString)) {
+                added.add(matchString);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        for (String matchString : added) {
+            matches.put(matchString, new LongList());
+        }
+        if (scannedOffset > 0) {
+            List<String> unindexed = new ArrayList<String>();
+            for (String matchString : added) {
+                if (!searchIndex(matchString)) {
+                    unindexed.add(matchString);
+                }
+            }
+            if (!unindexed.isEmpty()) {
+                scan(0, scannedOffset, new Automaton(unindexed, charset), null);
+            }
+        }
+        automaton = new Automaton(new ArrayList<String>(matches.keySet()), charset);
+    }
+
+    /**
+     * Finds the lines of the string through the lines of its rarest whole word
+     *
+     * @return false if there is no index or the string has no whole words
+     */
+    private boolean searchIndex(String matchString) {
+        if (tokens == null) {
+            return false;
+        }
+        byte[] bytes = matchString.getBytes(charset);
+        LongList candidates = null;
+        int start = -1;
+        for (int i = 0; i <= bytes.length; i++) {
+            boolean isTokenByte = i < bytes.length && isTokenByte(bytes[i]);
+            if (isTokenByte && start < 0) {
+                start = i;
+            } else if (!isTokenByte && start >= 0) {
+                // the words at the edges of the string may be parts of longer words in the line
+                if (start > 0 && i < bytes.length) {
+                    LongList lines = tokens.get(toToken(bytes, start, i - start));
+                    if (lines == null) {
+                        // the word isn't in the read part at all
+                        return true;
+                    }
+                    if (candidates == null || lines.size() < candidates.size()) {
+                        candidates = lines;
+                    }
+                }
+                start = -1;
+            }
+        }
+        if (candidates == null || candidates.size() > MAX_INDEX_CANDIDATES) {
+            // the word is too common, a scan is faster
+            return false;
+        }
+        LongList found = matches.get(matchString);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (lineContains(candidates.get(i), bytes)) {
+                found.add(candidates.get(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the line of the read part contains the bytes, the line is compared in the window of the file read
+     * last
+     */
+    private boolean lineContains(long lineStart, byte[] bytes) {
+        try {
+            long windowStart = lineStart / READ_WINDOW_SIZE * READ_WINDOW_SIZE;
+            int windowSize = (int) Math.min(READ_WINDOW_SIZE + LINE_BLOCK_SIZE, scannedOffset - windowStart);
+            if (verifiedWindow == null || verifiedWindowStart != windowStart || verifiedWindow.limit() < windowSize) {
+                if (verifiedWindow == null) {
+                    verifiedWindow = ByteBuffer.allocate(READ_WINDOW_SIZE + LINE_BLOCK_SIZE);
+                }
+                verifiedWindowStart = -1;
+                verifiedWindow.clear().limit(windowSize);
+                GeneralUtils.readFully(channel, verifiedWindow, windowStart);
+                verifiedWindowStart = windowStart;
+            }
+            int lineEnd = (int) (lineStart - windowStart);
+            while (lineEnd < verifiedWindow.limit() && verifiedWindow.get(lineEnd) != '\n'
+                    && verifiedWindow.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            if (lineEnd == verifiedWindow.limit() && windowStart + lineEnd < scannedOffset) {
+                // the line is longer than the overlap of the windows
+                return readLine(lineStart).contains(new String(bytes, charset));
+            }
+            for (int i = (int) (lineStart - windowStart); i + bytes.length <= lineEnd; i++) {
+                int j = 0;
+                while (j < bytes.length && verifiedWindow.get(i + j) == bytes[j]) {
+                    j++;
+                }
+                if (j == bytes.length) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+    }
+
+    /**
+     * Scans the bytes appended since the previous call up to the last line separator
+     */
+    private void update() {
+        long size;
+        try {
+            Object currentKey = readFileKey();
+            if (currentKey != null && !currentKey.equals(fileKey)) {
+                logger.info("{} has been replaced, it's read from the start", filePath);
+                reopen();
+            } else if (channel.size() < scannedOffset) {
+                logger.info("{} has been truncated, it's read from the start", filePath);
+                reopen();
+            }
+            size = channel.size();
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+        if (size > scannedOffset) {
+            scannedOffset = scan(scannedOffset, size, automaton, tokens);
+        }
+    }
+
+    private void open() {
+        try {
+            inputStream = new FileInputStream(filePath);
+            fileKey = readFileKey();
+        } catch (IOException e) {
+            GeneralUtils.closeStream(inputStream);
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+        channel = inputStream.getChannel();
+    }
+
+    /**
+     * Opens the file at the path again and forgets everything found in the previous one
+     */
+    private void reopen() {
+        GeneralUtils.closeStream(inputStream);
+        open();
+        scannedOffset = 0;
+        verifiedWindowStart = -1;
+        for (LongList lines : matches.values()) {
+            lines.clear();
+        }
+        if (tokens != null) {
+            tokens.clear();
+        }
+    }
+
+    /**
+     * Returns the identity of the file at the path, null if there is no file now (e.g. in the middle of a rotation)
+     * or the file system has no file keys, then only the truncation is noticed
+     */
+    private Object readFileKey() {
+        try {
+            return Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs the automaton over the complete lines of the range, the matches are added to {@link #matches}
+     *
+     * @return the end of the last complete line
+     */
+    private long scan(long start, long end, Automaton scanner, Map<String, LongList> index) {
+        end = findLinesEnd(start, end);
+        long lineStart = start;
+        int state = 0;
+        byte[] token = new byte[MAX_TOKEN_LENGTH];
+        int tokenLength = 0;
+        try {
+            ByteBuffer window = ByteBuffer.allocate((int) Math.min(READ_WINDOW_SIZE, Math.max(end - start, 0)));
+            byte[] bytes = window.array();
+            for (long windowStart = start; windowStart < end; windowStart += READ_WINDOW_SIZE) {
+                int windowSize = (int) Math.min(READ_WINDOW_SIZE, end - windowStart);
+                window.clear().limit(windowSize);
+                GeneralUtils.readFully(channel, window, windowStart);
+                for (int i = 0; i < windowSize; i++) {
+                    byte b = bytes[i];
+                    if (index != null) {
+                        if (isTokenByte(b)) {
+                            if (tokenLength < MAX_TOKEN_LENGTH) {
+                                token[tokenLength] = b;
+                            }
+                            tokenLength++;
+                        } else if (tokenLength > 0) {
+                            addToken(index, toToken(token, 0, Math.min(tokenLength, MAX_TOKEN_LENGTH)), lineStart);
+                            tokenLength = 0;
+                        }
+                    }
+                    if (b == '\n' || b == '\r') {
+                        lineStart = windowStart + i + 1;
+                        state = 0;
+                    } else if (scanner != null) {
+                        state = scanner.next(state, b);
+                        for (String matchString : scanner.getOutputs(state)) {
+                            matches.get(matchString).addLine(lineStart);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+        return lineStart;
+    }
+
+    /**
+     * Returns the position after the last line separator of the range or the start of the range if there is none
+     */
+    private long findLinesEnd(long start, long end) {
+        ByteBuffer block = ByteBuffer.allocate(LINE_BLOCK_SIZE);
+        long blockEnd = end;
+        try {
+            while (blockEnd > start) {
+                long blockStart = Math.max(blockEnd - LINE_BLOCK_SIZE, start);
+                block.clear().limit((int) (blockEnd - blockStart));
+                while (block.hasRemaining() && channel.read(block, blockStart + block.position()) >= 0) {
+                    // read the whole block
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n' || block.get(i) == '\r') {
+                        return blockStart + i + 1;
+                    }
+                }
+                blockEnd = blockStart;
+            }
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+        return start;
+    }
+
+    /**
+     * Searches the line after the last line separator, it's re-read every time until it's complete
+     */
+    private Map<String, String> readPendingLine(List<String> matchStrings, long fromOffset) {
+        Map<String, String> lines = new HashMap<String, String>();
+        try {
+            if (scannedOffset < fromOffset || scannedOffset >= channel.size()) {
+                return lines;
+            }
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+        String line = readLine(scannedOffset);
+        for (String matchString : matchStrings) {
+            if (line.contains(matchString)) {
+                lines.put(matchString, line);
+            }
+        }
+        return lines;
+    }
+
+    private String readLine(long offset) {
+        try {
+            return GeneralUtils.readLine(channel, offset, charset);
+        } catch (IOException e) {
+            throw new TestInterruptException("Cannot work with file " + filePath, e);
+        }
+    }
+
+    private static void addToken(Map<String, LongList> index, String token, long lineStart) {
+        LongList lines = index.get(token);
+        if (lines == null) {
+            lines = new LongList();
+            index.put(token, lines);
+        }
+        lines.addLine(lineStart);
+    }
+
+    private static boolean isTokenByte(byte b) {
+        // the bytes of multi-byte characters are parts of the words too
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b < 0;
+    }
+
+    private static String toToken(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, Math.min(length, MAX_TOKEN_LENGTH), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Growing sorted list of line offsets
+     */
+    private static class LongList {
+        private long[] values = new long[4];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Adds the line unless it's already the last one
+         */
+        private void addLine(long lineStart) {
+            if (size == 0 || values[size - 1] != lineStart) {
+                add(lineStart);
+            }
+        }
+
+        private long get(int index) {
+            return values[index];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        /**
+         * Returns the first value not less than specified one or -1
+         */
+        private long firstFrom(long value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < size ? values[index] : -1;
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over the encoded strings, the transitions are precomputed for every byte
+     */
+    private static class Automaton {
+        private final int[][] transitions;
+        private final String[][] outputs;
+
+        private Automaton(List<String> matchStrings, Charset charset) {
+            List<int[]> gotos = new ArrayList<int[]>();
+            List<List<String>> stateOutputs = new ArrayList<List<String>>();
+            gotos.add(newState());
+            stateOutputs.add(new ArrayList<String>());
+            for (String matchString : matchStrings) {
+                int state = 0;
+                for (byte b : matchString.getBytes(charset)) {
+                    int next = gotos.get(state)[b & 0xff];
+                    if (next < 0) {
+                        next = gotos.size();
+                        gotos.add(newState());
+                        stateOutputs.add(new ArrayList<String>());
+                        gotos.get(state)[b & 0xff] = next;
+                    }
+                    state = next;
+                }
+                stateOutputs.get(state).add(matchString);
+            }
+            // breadth-first: the failure state of a state is shallower, so it's already complete
+            int[] failures = new int[gotos.size()];
+            Queue<Integer> queue = new ArrayDeque<Integer>();
+            int[] root = gotos.get(0);
+            for (int b = 0; b < 256; b++) {
+                if (root[b] < 0) {
+                    root[b] = 0;
+                } else {
+                    failures[root[b]] = 0;
+                    queue.add(root[b]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                stateOutputs.get(state).addAll(stateOutputs.get(failures[state]));
+                int[] transition = gotos.get(state);
+                for (int b = 0; b < 256; b++) {
+                    int next = transition[b];
+                    if (next < 0) {
+                        transition[b] = gotos.get(failures[state])[b];
+                    } else {
+                        failures[next] = gotos.get(failures[state])[b];
+                        queue.add(next);
+                    }
+                }
+            }
+            transitions = gotos.toArray(new int[gotos.size()][]);
+            outputs = new String[stateOutputs.size()][];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = stateOutputs.get(i).toArray(new String[0]);
+            }
+        }
+
+        private static int[] newState() {
+            int[] state = new int[256];
+            Arrays.fill(state, -1);
+            return state;
+        }
+
+        private int next(int state, byte b) {
+            return transitions[state][b & 0xff];
+        }
+
+        private String[] getOutputs(int state) {
+            return outputs[state];
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Runs the steps of a command batch and calls back the WebDriver (executeAsyncScript).
+ * arguments[0] - steps: [name, lookup index, value] lists,
+ * arguments[1] - lookups: [kind, selector, index, parent lookup index, element argument index] lists,
+ *                the kind is id, name, className, cssSelector, tagName, xpath, linkText, partialLinkText
+ *                or element (the element passed as the argument is used as is),
+ * arguments[2] - how long (ms) a step waits for its element to appear,
+ * the rest of arguments - elements found before, used while they are attached to the document.
+ *
+ * The steps run one after another in one turn of the page unless an element has to be waited for.
+ * The first failed step stops the batch, the steps before it have taken effect.
+ * The callback gets {results: [result of every step], failed: index of the failed step or -1, error: message}.
+ * If the engine has no xpath or css selectors for some lookups, no step is run and the callback gets
+ * {unsupported: [indexes of the lookups]} in addition.
+ */
+(function (args) {
+    var steps = args[0];
+    var lookups = args[1];
+    var timeoutMillis = args[2];
+    var callback = args[args.length - 1];
+    // the polling timer must not be counted as page activity by the sync script
+    var setTimeoutFunction = window.__autoqaSync ? window.__autoqaSync.setTimeout : window.setTimeout;
+    var results = [];
+    var found = [];
+
+    var isAttached = function (element) {
+        for (var node = element; node; node = node.parentNode) {
+            if (node == document) {
+                return true;
+            }
+        }
+        return false;
+    };
+
+    var getStyle = function (element) {
+        return window.getComputedStyle ? window.getComputedStyle(element, null) : element.currentStyle;
+    };
+
+    var isDisplayed = function (element) {
+        if (element.type == 'hidden' || !(element.offsetWidth || element.offsetHeight)) {
+            return false;
+        }
+        for (var node = element; node && node.nodeType == 1; node = node.parentNode) {
+            var style = getStyle(node);
+            if (style && (style.display == 'none' || style.visibility == 'hidden')) {
+                return false;
+            }
+        }
+        return true;
+    };
+
+    // the same whitespace rules as WebElement.getText(): spaces are collapsed, lines are trimmed, empty lines dropped
+    var normalizeText = function (text) {
+        var lines = String(text || '').replace(/\u00a0/g, ' ').split(/\r\n|\r|\n/);
+        var normalized = [];
+        for (var i = 0; i < lines.length; i++) {
+            var line = lines[i].replace(/\s+/g, ' ').replace(/^ | $/g, '');
+            if (line) {
+                normalized.push(line);
+            }
+        }
+        return normalized.join('\n');
+    };
+
+    var getText = function (element) {
+        return normalizeText(element.innerText !== undefined ? element.innerText : element.textContent);
+    };
+
+    var toArray = function (nodes) {
+        var array = [];
+        for (var i = 0; i < nodes.length; i++) {
+            array.push(nodes[i]);
+        }
+        return array;
+    };
+
+    // older engines have querySelectorAll on the document only, its result is filtered by the root then
+    var querySelectorAll = function (root, selector) {
+        if (root.querySelectorAll) {
+            return toArray(root.querySelectorAll(selector));
+        }
+        var elements = [];
+        var all = document.querySelectorAll(selector);
+        for (var i = 0; i < all.length; i++) {
+            for (var node = all[i].parentNode; node; node = node.parentNode) {
+                if (node == root) {
+                    elements.push(all[i]);
+                    break;
+                }
+            }
+        }
+        return elements;
+    };
+
+    // the simple locators don't need css selectors, so they work in any engine
+    var filter = function (root, tagName, predicate) {
+        var elements = [];
+        var all = root.getElementsByTagName(tagName);
+        for (var i = 0; i < all.length; i++) {
+            if (predicate(all[i])) {
+                elements.push(all[i]);
+            }
+        }
+        return elements;
+    };
+
+    var findAll = function (kind, selector, root) {
+        switch (kind) {
+            case 'id':
+                return filter(root, '*', function (element) {
+                    return element.id == selector;
+                });
+            case 'name':
+                return filter(root, '*', function (element) {
+                    return element.getAttribute('name') == selector;
+                });
+            case 'className':
+                return filter(root, '*', function (element) {
+                    return (' ' + element.className + ' ').replace(/\s+/g, ' ').indexOf(' ' + selector + ' ') >= 0;
+                });
+            case 'tagName':
+                return toArray(root.getElementsByTagName(selector));
+            case 'cssSelector':
+                return querySelectorAll(root, selector);
+            case 'xpath':
+                var snapshot = document.evaluate(selector, root, null, 7, null);
+                var elements = [];
+                for (var i = 0; i < snapshot.snapshotLength; i++) {
+                    elements.push(snapshot.snapshotItem(i));
+                }
+                return elements;
+            case 'linkText':
+            case 'partialLinkText':
+                var links = [];
+                var anchors = root.getElementsByTagName('a');
+                for (var j = 0; j < anchors.length; j++) {
+                    var text = getText(anchors[j]);
+                    if (kind == 'linkText' ? text == selector : text.indexOf(selector) >= 0) {
+                        links.push(anchors[j]);
+                    }
+                }
+                return links;
+        }
+        throw new Error('unsupported locator ' + kind);
+    };
+
+    // returns the element of the lookup or null, the found elements are reused by the next steps while attached
+    var resolve = function (index) {
+        if (found[index] && isAttached(found[index])) {
+            return found[index];
+        }
+        var lookup = lookups[index];
+        var passed = lookup[4] >= 0 ? args[lookup[4]] : null;
+        if (passed && isAttached(passed)) {
+            return found[index] = passed;
+        }
+        if (lookup[0] == 'element') {
+            throw new Error('the element is stale');
+        }
+        var root = document;
+        if (lookup[3] >= 0) {
+            root = resolve(lookup[3]);
+            if (!root) {
+                return null;
+            }
+        }
+        var elements = findAll(lookup[0], lookup[1], root);
+        return found[index] = elements.length > lookup[2] ? elements[lookup[2]] : null;
+    };
+
+    var fire = function (element, type) {
+        if (document.createEvent) {
+            var event = document.createEvent(/^mouse|click/.test(type) ? 'MouseEvents' : 'HTMLEvents');
+            event.initEvent(type, true, true);
+            return element.dispatchEvent(event);
+        }
+        return element.fireEvent('on' + type);
+    };
+
+    var checkInteractable = function (element) {
+        if (!isDisplayed(element)) {
+            throw new Error('the element isn\'t visible');
+        }
+        if (element.disabled) {
+            throw new Error('the element is disabled');
+        }
+    };
+
+    var click = function (element) {
+        checkInteractable(element);
+        fire(element, 'mousedown');
+        if (element.focus) {
+            element.focus();
+        }
+        fire(element, 'mouseup');
+        if (typeof element.click == 'function') {
+            element.click();
+        } else {
+            fire(element, 'click');
+        }
+    };
+
+    var setValue = function (element, value) {
+        checkInteractable(element);
+        if (element.readOnly) {
+            throw new Error('the element is read-only');
+        }
+        if (element.focus) {
+            element.focus();
+        }
+        element.value = value;
+        fire(element, 'input');
+        fire(element, 'change');
+    };
+
+    var actions = {
+        click: function (element) {
+            click(element);
+        },
+        type: function (element, value) {
+            setValue(element, value);
+        },
+        clear: function (element) {
+            setValue(element, '');
+        },
+        check: function (element, value) {
+            if (!!element.checked != value) {
+                click(element);
+            }
+        },
+        select: function (element, value) {
+            checkInteractable(element);
+            for (var i = 0; i < element.options.length; i++) {
+                if (normalizeText(element.options[i].text) == value) {
+                    element.selectedIndex = i;
+                    fire(element, 'change');
+                    return;
+                }
+            }
+            throw new Error('there is no \'' + value + '\' option');
+        },
+        submit: function (element) {
+            var form = element;
+            while (form && String(form.tagName).toLowerCase() != 'form') {
+                form = form.parentNode;
+            }
+            if (!form) {
+                throw new Error('the element isn\'t in a form');
+            }
+            if (fire(form, 'submit') !== false) {
+                form.submit();
+            }
+        },
+        getText: function (element) {
+            return isDisplayed(element) ? getText(element) : '';
+        },
+        getAttribute: function (element, name) {
+            var value = element[name == 'class' ? 'className' : name];
+            if (value === undefined || value === null || typeof value == 'object' || typeof value == 'function') {
+                value = element.getAttribute(name);
+            }
+            return value === undefined || value === null ? null : String(value);
+        },
+        isDisplayed: function (element) {
+            return isDisplayed(element);
+        },
+        isSelected: function (element) {
+            return !!(element.checked || element.selected);
+        }
+    };
+
+    var run = function (index, deadline) {
+        for (; index < steps.length; index++) {
+            var step = steps[index];
+            try {
+                var element = resolve(step[1]);
+                if (step[0] == 'exists') {
+                    results.push(element != null);
+                    continue;
+                }
+                if (step[0] == 'getTextIfExists') {
+                    results.push(element ? actions.getText(element) : null);
+                    continue;
+                }
+                if (!element) {
+                    if (new Date().getTime() < deadline) {
+                        var retried = index;
+                        setTimeoutFunction.call(window, function () {
+                            run(retried, deadline);
+                        }, 50);
+                        return;
+                    }
+                    throw new Error('there is no element in ' + timeoutMillis + ' ms');
+                }
+                var result = actions[step[0]](element, step[2]);
+                results.push(result === undefined ? null : result);
+            } catch (e) {
+                callback({results: results, failed: index, error: String(e && e.message || e)});
+                return;
+            }
+            // the next step waits for its own element from scratch
+            deadline = new Date().getTime() + timeoutMillis;
+        }
+        callback({results: results, failed: -1, error: ''});
+    };
+
+    // nothing is done if the engine can't run some of the locators, they are resolved by the WebDriver then
+    var unsupported = [];
+    for (var i = 0; i < lookups.length; i++) {
+        if (lookups[i][0] == 'xpath' && !document.evaluate || lookups[i][0] == 'cssSelector' && !document.querySelectorAll) {
+            unsupported.push(i);
+        }
+    }
+    if (unsupported.length > 0) {
+        callback({results: [], failed: -1, error: '', unsupported: unsupported});
+        return;
+    }
+    run(0, new Date().getTime() + timeoutMillis);
+})(arguments);
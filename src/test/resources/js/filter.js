@@ -0,0 +1,16 @@
+/*
+ * Returns the indexes of the elements matching the predicate.
+ * arguments[0] - body of the predicate function (element, index, value), arguments[1] - value passed to the predicate,
+ * the rest of arguments - elements.
+ */
+return (function (args) {
+    var predicate = new Function('element', 'index', 'value', args[0]);
+    var value = args[1];
+    var indexes = [];
+    for (var i = 2; i < args.length; i++) {
+        if (predicate(args[i], i - 2, value)) {
+            indexes.push(i - 2);
+        }
+    }
+    return indexes;
+})(arguments);
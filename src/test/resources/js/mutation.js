@@ -0,0 +1,26 @@
+/*
+ * Waits for the next DOM modification and calls back the WebDriver (executeAsyncScript).
+ * arguments[0] - maximum time to wait (ms).
+ * The callback gets 'changed', 'timeout' or 'unsupported' if the browser has no MutationObserver.
+ */
+(function (args) {
+    var timeoutMillis = args[0];
+    var callback = args[args.length - 1];
+    if (typeof window.MutationObserver != 'function') {
+        callback('unsupported');
+        return;
+    }
+    // the timer must not be counted as page activity by the sync script
+    var setTimeoutFunction = window.__autoqaSync ? window.__autoqaSync.setTimeout : window.setTimeout;
+    var timer;
+    var observer = new window.MutationObserver(function () {
+        observer.disconnect();
+        window.clearTimeout(timer);
+        callback('changed');
+    });
+    observer.observe(document.documentElement, {childList: true, subtree: true, attributes: true, characterData: true});
+    timer = setTimeoutFunction.call(window, function () {
+        observer.disconnect();
+        callback('timeout');
+    }, timeoutMillis);
+})(arguments);
@@ -0,0 +1,109 @@
+/*
+ * Collects the state of several elements in one call.
+ * arguments[0] - names of css properties to read, the rest of arguments - elements
+ * (the elements are passed as separate arguments, some drivers don't convert the elements nested in a list).
+ * Returns a list of objects with text, tagName, displayed, enabled, selected, x, y, width, height,
+ * attributes (name -> value) and css (name -> computed value).
+ * The code runs in a function of its own: top level variables of an injected script leak to the page in some drivers.
+ */
+return (function (args) {
+    var cssProperties = args[0] || [];
+    var elements = Array.prototype.slice.call(args, 1);
+    var scrollX = window.pageXOffset || document.documentElement.scrollLeft || 0;
+    var scrollY = window.pageYOffset || document.documentElement.scrollTop || 0;
+
+    var getStyle = function (element) {
+        return window.getComputedStyle ? window.getComputedStyle(element, null) : element.currentStyle;
+    };
+
+    var isDisplayed = function (element) {
+        if (element.type == 'hidden' || !(element.offsetWidth || element.offsetHeight)) {
+            return false;
+        }
+        for (var node = element; node && node.nodeType == 1; node = node.parentNode) {
+            var style = getStyle(node);
+            if (style && (style.display == 'none' || style.visibility == 'hidden')) {
+                return false;
+            }
+        }
+        return true;
+    };
+
+    // old IE lists every property of the element in the attributes collection and reading it changes the element,
+    // so there the names are taken from the start tag of the markup
+    var getAttributes = function (element) {
+        var names = [];
+        if (typeof element.hasAttributes == 'function') {
+            for (var i = 0; i < element.attributes.length; i++) {
+                names.push(element.attributes[i].name);
+            }
+        } else {
+            var startTag = String(element.outerHTML).match(/^<[^\s>]+([^>]*)>/);
+            var pattern = /([^\s=\/]+)(\s*=\s*("[^"]*"|'[^']*'|[^\s>]*))?/g;
+            var match;
+            while (startTag && (match = pattern.exec(startTag[1])) != null) {
+                names.push(match[1].toLowerCase());
+            }
+        }
+        var attributes = {};
+        for (var j = 0; j < names.length; j++) {
+            var value = element.getAttribute(names[j]);
+            if (value == null && names[j] == 'class') {
+                value = element.className;
+            }
+            attributes[names[j]] = value == null ? '' : String(value);
+        }
+        return attributes;
+    };
+
+    // the same whitespace rules as WebElement.getText(): spaces are collapsed, lines are trimmed, empty lines dropped
+    var normalizeText = function (text) {
+        var lines = String(text || '').replace(/\u00a0/g, ' ').split(/\r\n|\r|\n/);
+        var normalized = [];
+        for (var i = 0; i < lines.length; i++) {
+            var line = lines[i].replace(/\s+/g, ' ').replace(/^ | $/g, '');
+            if (line) {
+                normalized.push(line);
+            }
+        }
+        return normalized.join('\n');
+    };
+
+    var result = [];
+    for (var i = 0; i < elements.length; i++) {
+        var element = elements[i];
+        var rect = element.getBoundingClientRect ? element.getBoundingClientRect() : {left: 0, top: 0};
+        var displayed = isDisplayed(element);
+        var text = element.innerText !== undefined ? element.innerText : element.textContent;
+
+        var attributes = getAttributes(element);
+        var css = {};
+        var style = getStyle(element);
+        for (var k = 0; k < cssProperties.length; k++) {
+            var name = cssProperties[k];
+            var camelName = name.replace(/-([a-z])/g, function (match, letter) {
+                return letter.toUpperCase();
+            });
+            // the computed value like WebElement.getCssValue(), the inline one only if the engine has no computed style
+            var value = style
+                ? (style.getPropertyValue ? style.getPropertyValue(name) : style[camelName])
+                : element.style && element.style[camelName];
+            css[name] = value ? String(value) : '';
+        }
+
+        result.push({
+            text: displayed ? normalizeText(text) : '',
+            tagName: element.tagName.toLowerCase(),
+            displayed: displayed,
+            enabled: !element.disabled,
+            selected: !!(element.checked || element.selected),
+            x: Math.round(rect.left + scrollX),
+            y: Math.round(rect.top + scrollY),
+            width: element.offsetWidth,
+            height: element.offsetHeight,
+            attributes: attributes,
+            css: css
+        });
+    }
+    return result;
+})(arguments);
@@ -0,0 +1,145 @@
+/*
+ * Waits until the page goes quiet and calls back the WebDriver (executeAsyncScript).
+ * arguments[0] - quiet window: how long (ms) there must be no activity before the page is considered idle.
+ *
+ * On the first call on a page a tracker is installed: it counts pending XMLHttpRequest and fetch calls
+ * and short timers (setTimeout below 1 s) and remembers the time of the last activity. The timers set from the handlers
+ * of the tracked timers are tracked up to MAX_TIMER_DEPTH levels, so a chain of animation steps is waited for
+ * while a polling loop re-arming itself keeps the page busy for a few rounds only.
+ * The page-specific isAjax() function is still respected if the page defines it.
+ *
+ * The callback gets the page token '<tracker id>:<DOM mutations count>', it changes when a new document is loaded
+ * or the DOM is modified. Where MutationObserver isn't supported (HtmlUnit, old IE) the count is increased on every
+ * call, so the token never repeats.
+ */
+(function (args) {
+    var quietMillis = args[0];
+    var callback = args[args.length - 1];
+    var w = window;
+    var MAX_TIMER_DEPTH = 5;
+    var tracker = w.__autoqaSync;
+
+    if (!tracker) {
+        tracker = w.__autoqaSync = {
+            id: new Date().getTime() + '-' + Math.floor(Math.random() * 1000000),
+            mutations: 0,
+            requests: [],
+            fetches: 0,
+            timers: {},
+            timerDepth: 0,
+            isObserved: false,
+            lastActivity: new Date().getTime(),
+            setTimeout: w.setTimeout
+        };
+        var touch = function () {
+            tracker.lastActivity = new Date().getTime();
+        };
+
+        if (typeof w.MutationObserver == 'function') {
+            new w.MutationObserver(function (records) {
+                tracker.mutations += records.length;
+            }).observe(document.documentElement, {childList: true, subtree: true, attributes: true,
+                characterData: true, attributeFilter: ['class', 'style', 'hidden', 'disabled', 'value', 'checked',
+                    'selected', 'aria-hidden', 'aria-expanded', 'aria-selected', 'aria-disabled']});
+            tracker.isObserved = true;
+        }
+
+        try {
+            var send = w.XMLHttpRequest.prototype.send;
+            w.XMLHttpRequest.prototype.send = function () {
+                tracker.requests.push(this);
+                touch();
+                return send.apply(this, arguments);
+            };
+        } catch (e) {
+            // the requests aren't tracked, the quiet window and isAjax() still work
+        }
+
+        if (typeof w.fetch == 'function') {
+            var fetch = w.fetch;
+            w.fetch = function () {
+                var done = function () {
+                    tracker.fetches--;
+                    touch();
+                };
+                tracker.fetches++;
+                touch();
+                var promise = fetch.apply(this, arguments);
+                promise.then(done, done);
+                return promise;
+            };
+        }
+
+        try {
+            var setTimeoutOriginal = w.setTimeout;
+            var clearTimeoutOriginal = w.clearTimeout;
+            w.setTimeout = function (handler, delay) {
+                var depth = tracker.timerDepth + 1;
+                if (typeof handler != 'function' || delay >= 1000 || depth > MAX_TIMER_DEPTH) {
+                    return setTimeoutOriginal.apply(w, arguments);
+                }
+                var id;
+                var timerArgs = Array.prototype.slice.call(arguments);
+                timerArgs[0] = function () {
+                    delete tracker.timers[id];
+                    touch();
+                    var outerDepth = tracker.timerDepth;
+                    tracker.timerDepth = depth;
+                    try {
+                        return handler.apply(this, arguments);
+                    } finally {
+                        tracker.timerDepth = outerDepth;
+                    }
+                };
+                id = setTimeoutOriginal.apply(w, timerArgs);
+                tracker.timers[id] = true;
+                return id;
+            };
+            w.clearTimeout = function (id) {
+                delete tracker.timers[id];
+                return clearTimeoutOriginal.apply(w, arguments);
+            };
+        } catch (e) {
+            // the timers aren't tracked
+        }
+    }
+
+    var isBusy = function () {
+        for (var i = tracker.requests.length - 1; i >= 0; i--) {
+            var state = tracker.requests[i].readyState;
+            // 4 - done, 0 - aborted
+            if (state == 4 || state == 0) {
+                tracker.requests.splice(i, 1);
+                tracker.lastActivity = new Date().getTime();
+            }
+        }
+        if (tracker.requests.length > 0 || tracker.fetches > 0 || document.readyState != 'complete') {
+            return true;
+        }
+        for (var id in tracker.timers) {
+            if (tracker.timers.hasOwnProperty(id)) {
+                return true;
+            }
+        }
+        try {
+            return typeof isAjax == 'function' && String(isAjax()) == 'true';
+        } catch (e) {
+            return false;
+        }
+    };
+
+    var check = function () {
+        if (isBusy()) {
+            tracker.lastActivity = new Date().getTime();
+        } else if (new Date().getTime() - tracker.lastActivity >= quietMillis) {
+            if (!tracker.isObserved) {
+                // the modifications can't be seen, so the elements found before are assumed stale
+                tracker.mutations++;
+            }
+            callback(tracker.id + ':' + tracker.mutations);
+            return;
+        }
+        tracker.setTimeout.call(w, check, 10);
+    };
+    check();
+})(arguments);